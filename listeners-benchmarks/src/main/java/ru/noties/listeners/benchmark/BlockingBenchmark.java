@@ -0,0 +1,89 @@
+package ru.noties.listeners.benchmark;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures notification latency (sampled, so percentiles are reported) when each listener
+ * blocks for `blockMicros` (emulates I/O). Sequential iteration takes a sum of all listener latencies,
+ * fan-out takes as long as the slowest listener (plus overhead of starting a thread for each one).
+ * Run on Java 21+ to measure virtual threads (multi-release jar), older runtimes use platform threads:
+ * `./gradlew :listeners-benchmarks:jmh -PjmhArgs='BlockingBenchmark'`
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockingBenchmark {
+
+    private static final Listeners.Action<Listener> BLOCK = new Listeners.Action<Listener>() {
+        @Override
+        public void apply(@NonNull Listener listener) {
+            block(listener);
+        }
+    };
+
+    @Param({"1", "10", "100"})
+    int size;
+
+    @Param({"100", "1000"})
+    int blockMicros;
+
+    private Listeners<Listener> listeners;
+
+    @Setup
+    public void setUp() {
+        listeners = Listeners.create(size);
+        for (int i = 0; i < size; i++) {
+            listeners.add(new BlockingListener(blockMicros));
+        }
+    }
+
+    @Benchmark
+    public void sequential_begin() {
+        for (Listener listener : listeners.begin()) {
+            block(listener);
+        }
+    }
+
+    @Benchmark
+    public void fanOut() throws InterruptedException {
+        listeners.fanOut(BLOCK);
+    }
+
+    private static void block(@NonNull Listener listener) {
+        final long micros = ((BlockingListener) listener).blockMicros;
+        try {
+            Thread.sleep(micros / 1000L, (int) (micros % 1000L) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        listener.onEvent(1L);
+    }
+
+    private static class BlockingListener extends Listener {
+
+        final long blockMicros;
+
+        BlockingListener(long blockMicros) {
+            this.blockMicros = blockMicros;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.noties.listeners.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures a teardown of a screen: half of listeners (every other one) are removed and then added back.
+ * Compares removal one by one (each removal searches for an element and shifts the tail) with
+ * a single {@link Listeners#removeAll(java.util.Collection)} pass followed by {@link Listeners#addAll(java.util.Collection)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkMutationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int size;
+
+    private List<Listener> removed;
+
+    private Listeners<Listener> listeners;
+
+    @Setup
+    public void setUp() {
+
+        removed = new ArrayList<>(size / 2);
+        listeners = Listeners.create(size);
+
+        for (int i = 0; i < size; i++) {
+            final Listener listener = new Listener();
+            listeners.add(listener);
+            if (i % 2 == 0) {
+                removed.add(listener);
+            }
+        }
+    }
+
+    @Benchmark
+    public void removeEach_addEach() {
+        for (Listener listener : removed) {
+            listeners.remove(listener);
+        }
+        for (Listener listener : removed) {
+            listeners.add(listener);
+        }
+    }
+
+    @Benchmark
+    public void removeAll_addAll() {
+        listeners.removeAll(removed);
+        listeners.addAll(removed);
+    }
+}
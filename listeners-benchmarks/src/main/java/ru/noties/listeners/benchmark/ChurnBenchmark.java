@@ -0,0 +1,159 @@
+package ru.noties.listeners.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Notification pass where listeners remove themselves whilst being notified (as in README example).
+ * Every `removeEvery`-th listener removes self. Before each invocation all containers are filled again
+ * in the original order (not measured), so removing listeners are always interleaved with others.
+ * Plain `ArrayList` is not present as it cannot be modified during iteration.
+ * <p>
+ * Sizes are capped at 10_000 as copy-on-write removal of every listener is quadratic. As the state
+ * is restored for each invocation, results for the smallest sizes include timing overhead of JMH
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChurnBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    int size;
+
+    @Param({"1", "2", "10"})
+    int removeEvery;
+
+    // in original order
+    private Listener[] all;
+
+    private Listeners<Listener> listeners;
+    private Listeners<Listener> deferred;
+    private Listeners<Listener> weak;
+    private List<Listener> copyOnWrite;
+    private List<Listener> arrayList;
+
+    @Setup
+    public void setUp() {
+
+        all = new Listener[size];
+
+        for (int i = 0; i < size; i++) {
+            all[i] = new Listener(i % removeEvery == 0);
+        }
+
+        listeners = Listeners.create(size);
+        deferred = Listeners.createDeferredRemoval(size);
+        weak = Listeners.createWeak(size);
+        arrayList = new ArrayList<>(size);
+        copyOnWrite = new CopyOnWriteArrayList<>();
+    }
+
+    // removed listeners cannot be just added back, as they would be placed at the end (and
+    // the next pass would remove from the tail only)
+    @Setup(Level.Invocation)
+    public void restore() {
+
+        final List<Listener> all = Arrays.asList(this.all);
+
+        listeners.clear();
+        listeners.addAll(all);
+
+        deferred.clear();
+        deferred.addAll(all);
+
+        weak.clear();
+        weak.addAll(all);
+
+        arrayList.clear();
+        arrayList.addAll(all);
+
+        copyOnWrite.clear();
+        copyOnWrite.addAll(all);
+    }
+
+    @Benchmark
+    public void listeners_begin() {
+
+        final Listeners<Listener> listeners = this.listeners;
+
+        for (Listener listener : listeners.begin()) {
+            listener.onEvent(1L);
+            if (listener.removesSelf) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    @Benchmark
+    public void deferred_begin() {
+
+        final Listeners<Listener> listeners = this.deferred;
+
+        for (Listener listener : listeners.begin()) {
+            listener.onEvent(1L);
+            if (listener.removesSelf) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    @Benchmark
+    public void weak_begin() {
+
+        final Listeners<Listener> listeners = this.weak;
+
+        for (Listener listener : listeners.begin()) {
+            listener.onEvent(1L);
+            if (listener.removesSelf) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    @Benchmark
+    public void copyOnWrite_iterate() {
+
+        final List<Listener> copyOnWrite = this.copyOnWrite;
+
+        for (Listener listener : copyOnWrite) {
+            listener.onEvent(1L);
+            if (listener.removesSelf) {
+                copyOnWrite.remove(listener);
+            }
+        }
+    }
+
+    @Benchmark
+    public void arrayList_copyThenIterate() {
+
+        final List<Listener> arrayList = this.arrayList;
+
+        for (Listener listener : new ArrayList<>(arrayList)) {
+            listener.onEvent(1L);
+            if (listener.removesSelf) {
+                arrayList.remove(listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ru.noties.listeners.benchmark;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.EventBus;
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures a single notification pass (no mutation) over {@link Listeners} and collections
+ * commonly used to store listeners. Run with `-prof gc` to see per-dispatch allocation
+ * (`gc.alloc.rate.norm`), which must be 0 for {@link Listeners}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    private static final Listeners.Action<Listener> ON_EVENT = new Listeners.Action<Listener>() {
+        @Override
+        public void apply(@NonNull Listener listener) {
+            listener.onEvent(1L);
+        }
+    };
+
+    private static final Listeners.BiAction<Listener, Long> ON_EVENT_ARGUMENT = new Listeners.BiAction<Listener, Long>() {
+        @Override
+        public void apply(@NonNull Listener listener, Long argument) {
+            listener.onEvent(argument);
+        }
+    };
+
+    // boxed once, so dispatch does not allocate
+    private static final Long EVENT = 1L;
+
+    @Param({"1", "10", "100", "1000", "10000", "100000"})
+    int size;
+
+    private Listeners<Listener> listeners;
+    private Listeners<Listener> weak;
+    private Listeners<Listener> concurrent;
+    private EventBus eventBus;
+    private List<Listener> copyOnWrite;
+    private List<Listener> arrayList;
+
+    @Setup
+    public void setUp() {
+
+        // listeners are allocated before adding, so they are placed in memory the same way for all
+        // collections (adding to some collections allocates, for example copy-on-write ones)
+        arrayList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            arrayList.add(new Listener());
+        }
+
+        listeners = Listeners.create(size);
+        weak = Listeners.createWeak(size);
+        concurrent = Listeners.createConcurrent();
+        eventBus = EventBus.create();
+
+        for (final Listener listener : arrayList) {
+            listeners.add(listener);
+            weak.add(listener);
+            concurrent.add(listener);
+            eventBus.register(Long.class, new EventBus.Subscriber<Long>() {
+                @Override
+                public void onEvent(@NonNull Long event) {
+                    listener.onEvent(event);
+                }
+            });
+        }
+
+        copyOnWrite = new CopyOnWriteArrayList<>(arrayList);
+    }
+
+    @Benchmark
+    public void listeners_begin() {
+        for (Listener listener : listeners.begin()) {
+            listener.onEvent(1L);
+        }
+    }
+
+    @Benchmark
+    public void listeners_beginReversed() {
+        for (Listener listener : listeners.beginReversed()) {
+            listener.onEvent(1L);
+        }
+    }
+
+    @Benchmark
+    public void listeners_forEach() {
+        listeners.forEach(ON_EVENT);
+    }
+
+    @Benchmark
+    public void listeners_dispatch() {
+        listeners.dispatch(ON_EVENT_ARGUMENT, EVENT);
+    }
+
+    @Benchmark
+    public void weak_begin() {
+        for (Listener listener : weak.begin()) {
+            listener.onEvent(1L);
+        }
+    }
+
+    @Benchmark
+    public void weak_forEach() {
+        weak.forEach(ON_EVENT);
+    }
+
+    @Benchmark
+    public void concurrent_begin() {
+        for (Listener listener : concurrent.begin()) {
+            listener.onEvent(1L);
+        }
+    }
+
+    // an extra call to a subscriber (that notifies a listener) for each element
+    @Benchmark
+    public void eventBus_post() {
+        eventBus.post(EVENT);
+    }
+
+    @Benchmark
+    public void copyOnWrite_iterate() {
+        for (Listener listener : copyOnWrite) {
+            listener.onEvent(1L);
+        }
+    }
+
+    @Benchmark
+    public void arrayList_copyThenIterate() {
+        for (Listener listener : new ArrayList<>(arrayList)) {
+            listener.onEvent(1L);
+        }
+    }
+
+    // baseline, not safe if listener modifies collection
+    @Benchmark
+    public void arrayList_iterate() {
+        for (Listener listener : arrayList) {
+            listener.onEvent(1L);
+        }
+    }
+}
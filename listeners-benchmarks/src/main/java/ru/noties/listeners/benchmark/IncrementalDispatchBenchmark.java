@@ -0,0 +1,84 @@
+package ru.noties.listeners.benchmark;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures time of a frame (sampled, so percentiles are reported) that notifies CPU-bound listeners
+ * (each one burns `work` tokens): a full pass in each frame vs a pass that is resumed in each frame
+ * with a budget of `budgetMicros` ({@link Listeners#forEachIncrementally(Listeners.Action)}), a new pass
+ * is started when previous one has finished. A frame of an incremental pass must not exceed the budget
+ * by more than a single listener, whilst a full pass takes time proportional to `size`
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IncrementalDispatchBenchmark {
+
+    private static final Listeners.Action<Listener> ON_EVENT = new Listeners.Action<Listener>() {
+        @Override
+        public void apply(@NonNull Listener listener) {
+            Blackhole.consumeCPU(WORK);
+            listener.onEvent(1L);
+        }
+    };
+
+    // about a microsecond per listener
+    private static final int WORK = 250;
+
+    @Param({"1000", "10000"})
+    int size;
+
+    @Param({"100", "1000"})
+    int budgetMicros;
+
+    private Listeners<Listener> listeners;
+
+    private Listeners.IncrementalDispatch dispatch;
+
+    private long budgetNanos;
+
+    @Setup
+    public void setUp() {
+
+        listeners = Listeners.create(size);
+
+        for (int i = 0; i < size; i++) {
+            listeners.add(new Listener());
+        }
+
+        dispatch = listeners.forEachIncrementally(ON_EVENT);
+        budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+    }
+
+    @Benchmark
+    public void full_pass() {
+        listeners.forEach(ON_EVENT);
+    }
+
+    @Benchmark
+    public void incremental() {
+        if (dispatch.resume(budgetNanos)) {
+            dispatch = listeners.forEachIncrementally(ON_EVENT);
+        }
+    }
+}
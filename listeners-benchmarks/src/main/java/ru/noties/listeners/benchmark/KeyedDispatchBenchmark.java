@@ -0,0 +1,97 @@
+package ru.noties.listeners.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.KeyedListeners;
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures a notification for a single key when listeners are spread between 100 keys
+ * (`size` listeners in total): all listeners are iterated and each one filters by key vs
+ * {@link KeyedListeners#dispatch(Object, Listeners.BiAction, Object)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyedDispatchBenchmark {
+
+    private static final int KEYS = 100;
+
+    private static class KeyedListener {
+
+        final Integer key;
+        final Listener listener = new Listener();
+
+        KeyedListener(Integer key) {
+            this.key = key;
+        }
+    }
+
+    private static final Listeners.BiAction<KeyedListener, Integer> FILTER = new Listeners.BiAction<KeyedListener, Integer>() {
+        @Override
+        public void apply(KeyedListener listener, Integer key) {
+            if (listener.key.equals(key)) {
+                listener.listener.onEvent(1L);
+            }
+        }
+    };
+
+    private static final Listeners.BiAction<KeyedListener, Long> DELIVER = new Listeners.BiAction<KeyedListener, Long>() {
+        @Override
+        public void apply(KeyedListener listener, Long event) {
+            listener.listener.onEvent(event);
+        }
+    };
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    private Listeners<KeyedListener> listeners;
+    private KeyedListeners<Integer, KeyedListener> keyed;
+
+    private int key;
+
+    @Setup
+    public void setUp() {
+
+        listeners = Listeners.create(size);
+        keyed = KeyedListeners.create();
+
+        for (int i = 0; i < size; i++) {
+            final KeyedListener listener = new KeyedListener(i % KEYS);
+            listeners.add(listener);
+            keyed.add(listener.key, listener);
+        }
+    }
+
+    @Benchmark
+    public void filter() {
+        listeners.dispatch(FILTER, nextKey());
+    }
+
+    @Benchmark
+    public void keyed() {
+        keyed.dispatch(nextKey(), DELIVER, 1L);
+    }
+
+    // keys are boxed from cache
+    private Integer nextKey() {
+        key = (key + 1) % KEYS;
+        return key;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.noties.listeners.benchmark;
+
+/**
+ * Listener used by all benchmarks. Does a minimal amount of work, so dispatch cost is
+ * dominated by the container being measured
+ */
+class Listener {
+
+    // if this listener must remove itself whilst being notified (churn benchmarks)
+    final boolean removesSelf;
+
+    long value;
+
+    Listener() {
+        this(false);
+    }
+
+    Listener(boolean removesSelf) {
+        this.removesSelf = removesSelf;
+    }
+
+    void onEvent(long event) {
+        value += event;
+    }
+}
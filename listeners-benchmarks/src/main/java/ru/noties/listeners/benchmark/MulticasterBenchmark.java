@@ -0,0 +1,71 @@
+package ru.noties.listeners.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures a notification pass with {@link Listeners#multicaster(Class)} vs a hand-written
+ * {@link Listeners#begin()} loop (the same code that a generated dispatcher contains)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MulticasterBenchmark {
+
+    public interface OnEvent {
+        void onEvent(long event);
+    }
+
+    @Param({"1", "10", "100", "1000"})
+    int size;
+
+    private Listeners<OnEvent> listeners;
+    private OnEvent multicaster;
+
+    @Setup
+    public void setUp() {
+
+        listeners = Listeners.create(size);
+
+        for (int i = 0; i < size; i++) {
+            final Listener listener = new Listener();
+            listeners.add(new OnEvent() {
+                @Override
+                public void onEvent(long event) {
+                    listener.onEvent(event);
+                }
+            });
+        }
+
+        multicaster = listeners.multicaster(OnEvent.class);
+    }
+
+    @Benchmark
+    public void begin() {
+        for (OnEvent onEvent : listeners.begin()) {
+            onEvent.onEvent(1L);
+        }
+    }
+
+    // an argument is boxed (cached Long, so nothing is allocated) into an array for each call
+    @Benchmark
+    public void multicaster() {
+        multicaster.onEvent(1L);
+    }
+}
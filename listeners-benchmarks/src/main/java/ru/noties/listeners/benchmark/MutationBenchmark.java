@@ -0,0 +1,143 @@
+package ru.noties.listeners.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+import ru.noties.listeners.PriorityListeners;
+
+/**
+ * Measures add/remove outside of iteration. Size of each collection stays the same
+ * between invocations:
+ * <ul>
+ * <li>`addRemoveLast` adds a listener and removes it right away (removal of the tail element)</li>
+ * <li>`removeFirstAddLast` removes current head and adds it back (removal of the head element,
+ * the whole tail is shifted)</li>
+ * <li>`registration_removeFirstAddLast` the same, but removes via {@link Listeners.Registration}</li>
+ * <li>`priority_addRemoveFirst` adds a listener with the highest priority to {@link PriorityListeners}
+ * (stored separately from listeners with default priority, nothing is shifted) and removes it right away</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MutationBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000", "100000"})
+    int size;
+
+    private Listener[] elements;
+    private Listener extra;
+
+    // index of current head in `elements`
+    private int head;
+
+    private Listeners<Listener> listeners;
+    private Listeners<Listener> registered;
+    private Listeners.Registration[] registrations;
+    private PriorityListeners<Listener> priority;
+    private List<Listener> copyOnWrite;
+    private List<Listener> arrayList;
+
+    @Setup
+    public void setUp() {
+
+        elements = new Listener[size];
+        extra = new Listener();
+
+        listeners = Listeners.create(size + 1);
+        registered = Listeners.create(size + 1);
+        registrations = new Listeners.Registration[size];
+        priority = Listeners.createPriority(size + 1);
+        arrayList = new ArrayList<>(size + 1);
+
+        for (int i = 0; i < size; i++) {
+            final Listener listener = new Listener();
+            elements[i] = listener;
+            listeners.add(listener);
+            registrations[i] = registered.register(listener);
+            priority.add(listener);
+            arrayList.add(listener);
+        }
+
+        copyOnWrite = new CopyOnWriteArrayList<>(arrayList);
+    }
+
+    @Benchmark
+    public void listeners_addRemoveLast() {
+        listeners.add(extra);
+        listeners.remove(extra);
+    }
+
+    @Benchmark
+    public void priority_addRemoveFirst() {
+        priority.add(extra, 1);
+        priority.remove(extra);
+    }
+
+    @Benchmark
+    public void copyOnWrite_addRemoveLast() {
+        copyOnWrite.add(extra);
+        copyOnWrite.remove(extra);
+    }
+
+    @Benchmark
+    public void arrayList_addRemoveLast() {
+        arrayList.add(extra);
+        arrayList.remove(extra);
+    }
+
+    @Benchmark
+    public void listeners_removeFirstAddLast() {
+        final Listener listener = nextHead();
+        listeners.remove(listener);
+        listeners.add(listener);
+    }
+
+    @Benchmark
+    public void registration_removeFirstAddLast() {
+        final int head = this.head;
+        final Listener listener = nextHead();
+        registrations[head].remove();
+        registrations[head] = registered.register(listener);
+    }
+
+    @Benchmark
+    public void copyOnWrite_removeFirstAddLast() {
+        final Listener listener = nextHead();
+        copyOnWrite.remove(listener);
+        copyOnWrite.add(listener);
+    }
+
+    @Benchmark
+    public void arrayList_removeFirstAddLast() {
+        final Listener listener = nextHead();
+        arrayList.remove(listener);
+        arrayList.add(listener);
+    }
+
+    // each benchmark keeps own collection rotating, so after moving head to the end
+    //  the next element in `elements` becomes new head
+    private Listener nextHead() {
+        final Listener listener = elements[head];
+        head = (head + 1) % size;
+        return listener;
+    }
+}
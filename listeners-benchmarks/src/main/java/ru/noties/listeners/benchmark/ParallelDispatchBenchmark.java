@@ -0,0 +1,87 @@
+package ru.noties.listeners.benchmark;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * Measures a notification pass over CPU-bound listeners (each one burns `work` tokens),
+ * single-thread {@link Listeners#forEach(Listeners.Action)} vs {@link Listeners#parallelDispatch(Listeners.Action)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelDispatchBenchmark {
+
+    private static final Listeners.Action<Listener> ON_EVENT = new Listeners.Action<Listener>() {
+        @Override
+        public void apply(@NonNull Listener listener) {
+            Blackhole.consumeCPU(((CpuListener) listener).work);
+            listener.onEvent(1L);
+        }
+    };
+
+    @Param({"1000", "10000", "100000"})
+    int size;
+
+    @Param({"10", "100"})
+    int work;
+
+    private Listeners<Listener> listeners;
+    private Listeners<Listener> concurrent;
+
+    @Setup
+    public void setUp() {
+
+        listeners = Listeners.create(size);
+        concurrent = Listeners.createConcurrent();
+
+        for (int i = 0; i < size; i++) {
+            final Listener listener = new CpuListener(work);
+            listeners.add(listener);
+            concurrent.add(listener);
+        }
+    }
+
+    @Benchmark
+    public void listeners_forEach() {
+        listeners.forEach(ON_EVENT);
+    }
+
+    @Benchmark
+    public void listeners_parallelDispatch() {
+        listeners.parallelDispatch(ON_EVENT);
+    }
+
+    @Benchmark
+    public void concurrent_parallelDispatch() {
+        concurrent.parallelDispatch(ON_EVENT);
+    }
+
+    private static class CpuListener extends Listener {
+
+        final long work;
+
+        CpuListener(long work) {
+            this.work = work;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ru.noties.listeners.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a dispatcher for each interface annotated with `ru.noties.listeners.Dispatchable`
+ * (see {@link DispatcherWriter}). The annotation is referenced by name, so the processor
+ * does not depend on the library.
+ */
+public class DispatchableProcessor extends AbstractProcessor {
+
+    static final String DISPATCHABLE = "ru.noties.listeners.Dispatchable";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(DISPATCHABLE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                process(element);
+            }
+        }
+        return true;
+    }
+
+    private void process(Element element) {
+
+        if (element.getKind() != ElementKind.INTERFACE) {
+            error(element, "@Dispatchable can be applied only to an interface");
+            return;
+        }
+
+        final TypeElement type = (TypeElement) element;
+
+        // dispatcher is generated in the same package, so interface must be accessible from it
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(element, "@Dispatchable interface must not be private");
+                return;
+            }
+        }
+
+        final List<DispatcherWriter.Method> methods = methods(type);
+        if (methods == null) {
+            return;
+        }
+
+        final DispatcherWriter writer = new DispatcherWriter(
+                processingEnv.getElementUtils(),
+                type,
+                methods);
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.qualifiedName(), type);
+            try (Writer out = file.openWriter()) {
+                out.write(writer.write());
+            }
+        } catch (IOException e) {
+            error(element, "Cannot write dispatcher: " + e.getMessage());
+        }
+    }
+
+    // returns null if an interface contains a method that cannot be dispatched (an error is reported)
+    private List<DispatcherWriter.Method> methods(TypeElement type) {
+
+        final DeclaredType declaredType = (DeclaredType) type.asType();
+
+        final List<DispatcherWriter.Method> methods = new ArrayList<>();
+        final Set<String> signatures = new HashSet<>();
+
+        boolean valid = true;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+
+            // methods of java.lang.Object (interface can redeclare them), static and private ones
+            // are not dispatched
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                    || isObjectMethod(method)
+                    || method.getModifiers().contains(Modifier.STATIC)
+                    || method.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+
+            // type arguments of super-interfaces are resolved
+            final ExecutableType executableType = (ExecutableType) processingEnv.getTypeUtils()
+                    .asMemberOf(declaredType, method);
+
+            if (executableType.getReturnType().getKind() != TypeKind.VOID) {
+                error(method, "@Dispatchable interface methods must return void, "
+                        + type.getSimpleName() + "#" + method.getSimpleName() + " returns "
+                        + executableType.getReturnType());
+                valid = false;
+                continue;
+            }
+
+            // the same method can be inherited from multiple interfaces
+            final DispatcherWriter.Method m = new DispatcherWriter.Method(method, executableType);
+            if (signatures.add(m.signature(processingEnv.getTypeUtils()))) {
+                methods.add(m);
+            }
+        }
+
+        return valid ? methods : null;
+    }
+
+    // if method has the same signature as a public method of java.lang.Object (equals, hashCode, toString)
+    private boolean isObjectMethod(ExecutableElement method) {
+
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement object = processingEnv.getElementUtils().getTypeElement(Object.class.getName());
+
+        for (ExecutableElement objectMethod : ElementFilter.methodsIn(object.getEnclosedElements())) {
+            if (objectMethod.getModifiers().contains(Modifier.PUBLIC)
+                    && objectMethod.getSimpleName().contentEquals(method.getSimpleName())
+                    && types.isSubsignature((ExecutableType) method.asType(), (ExecutableType) objectMethod.asType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
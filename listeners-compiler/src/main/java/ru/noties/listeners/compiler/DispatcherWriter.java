@@ -0,0 +1,245 @@
+package ru.noties.listeners.compiler;
+
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Writes source of a dispatcher: a class that implements a listener interface and calls the same method
+ * of each element of {@link ru.noties.listeners.Listeners}. Each method iterates with `begin()`
+ * (no action or arguments array is allocated) and, if a listener throws, finishes iteration with `end()`.
+ * <p>
+ * All types are written fully qualified, so no imports are required (and there are no name clashes).
+ * Local variables are prefixed with `$`, so they do not clash with parameter names.
+ */
+class DispatcherWriter {
+
+    private static final String LISTENERS = "ru.noties.listeners.Listeners";
+
+    static class Method {
+
+        final ExecutableElement element;
+
+        // resolved with the type arguments of annotated interface
+        final ExecutableType type;
+
+        Method(ExecutableElement element, ExecutableType type) {
+            this.element = element;
+            this.type = type;
+        }
+
+        // name and erasure of parameters
+        String signature(Types types) {
+            final StringBuilder builder = new StringBuilder()
+                    .append(element.getSimpleName())
+                    .append('(');
+            for (TypeMirror parameter : type.getParameterTypes()) {
+                builder.append(types.erasure(parameter)).append(',');
+            }
+            return builder.append(')').toString();
+        }
+    }
+
+    private final Elements elements;
+    private final TypeElement type;
+    private final List<Method> methods;
+
+    DispatcherWriter(Elements elements, TypeElement type, List<Method> methods) {
+        this.elements = elements;
+        this.type = type;
+        this.methods = methods;
+    }
+
+    String qualifiedName() {
+        final String packageName = packageName();
+        return packageName.isEmpty()
+                ? simpleName()
+                : packageName + "." + simpleName();
+    }
+
+    String write() {
+
+        final String packageName = packageName();
+        final String simpleName = simpleName();
+
+        final String listener = type.getQualifiedName() + typeArguments(type.getTypeParameters());
+        final String listeners = LISTENERS + "<? extends " + listener + ">";
+
+        final StringBuilder out = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+
+        out.append("/**\n")
+                .append(" * Delivers each call to every element of {@link ").append(LISTENERS).append("}.\n")
+                .append(" * Generated by ").append(DispatchableProcessor.class.getName())
+                .append(" for {@link ").append(type.getQualifiedName()).append("}, do not modify\n")
+                .append(" */\n");
+
+        if (type.getModifiers().contains(Modifier.PUBLIC)) {
+            out.append("public ");
+        }
+
+        out.append("final class ").append(simpleName).append(typeParameters(type.getTypeParameters()))
+                .append(" implements ").append(listener).append(" {\n\n");
+
+        out.append("    private final ").append(listeners).append(" listeners;\n\n");
+
+        out.append("    public ").append(simpleName).append("(").append(listeners).append(" listeners) {\n")
+                .append("        this.listeners = listeners;\n")
+                .append("    }\n");
+
+        for (Method method : methods) {
+            out.append('\n');
+            writeMethod(out, method, listener, listeners);
+        }
+
+        out.append("}\n");
+
+        return out.toString();
+    }
+
+    private void writeMethod(StringBuilder out, Method method, String listener, String listeners) {
+
+        final ExecutableElement element = method.element;
+        final List<? extends TypeMirror> parameterTypes = method.type.getParameterTypes();
+        final List<? extends TypeMirror> thrownTypes = method.type.getThrownTypes();
+
+        out.append("    @Override\n")
+                .append("    public ");
+
+        final String typeParameters = typeParameters(element.getTypeParameters());
+        if (!typeParameters.isEmpty()) {
+            out.append(typeParameters).append(' ');
+        }
+
+        out.append("void ").append(element.getSimpleName()).append('(');
+
+        for (int i = 0, size = parameterTypes.size(); i < size; i++) {
+
+            if (i > 0) {
+                out.append(", ");
+            }
+
+            final TypeMirror parameterType = parameterTypes.get(i);
+
+            out.append("final ");
+
+            if (element.isVarArgs() && i == size - 1) {
+                out.append(((ArrayType) parameterType).getComponentType()).append("...");
+            } else {
+                out.append(parameterType);
+            }
+
+            out.append(' ').append(parameterName(element, i));
+        }
+
+        out.append(')');
+
+        for (int i = 0, size = thrownTypes.size(); i < size; i++) {
+            out.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+
+        out.append(" {\n")
+                .append("        final ").append(listeners).append(" $listeners = this.listeners;\n")
+                .append("        boolean $completed = false;\n")
+                .append("        try {\n")
+                .append("            for (").append(listener).append(" $listener : $listeners.begin()) {\n")
+                .append("                $listener.").append(element.getSimpleName()).append('(');
+
+        for (int i = 0, size = parameterTypes.size(); i < size; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(parameterName(element, i));
+        }
+
+        out.append(");\n")
+                .append("            }\n")
+                .append("            $completed = true;\n")
+                .append("        } finally {\n")
+                .append("            // a listener has thrown, iteration must be finished explicitly\n")
+                .append("            if (!$completed) {\n")
+                .append("                $listeners.end();\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    private String packageName() {
+        return elements.getPackageOf(type).getQualifiedName().toString();
+    }
+
+    // `Outer_InnerDispatcher` for a nested interface
+    private String simpleName() {
+        final StringBuilder builder = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            builder.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return builder.append("Dispatcher").toString();
+    }
+
+    // name as declared (a compiled super-interface can have synthetic names like `arg0`, they are unique anyway)
+    private static String parameterName(ExecutableElement element, int index) {
+        return element.getParameters().get(index).getSimpleName().toString();
+    }
+
+    // `<T, R>`
+    private static String typeArguments(List<? extends TypeParameterElement> parameters) {
+
+        if (parameters.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder builder = new StringBuilder("<");
+        for (int i = 0, size = parameters.size(); i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(parameters.get(i).getSimpleName());
+        }
+        return builder.append('>').toString();
+    }
+
+    // `<T extends java.lang.Number & java.lang.Comparable<T>, R>`
+    private static String typeParameters(List<? extends TypeParameterElement> parameters) {
+
+        if (parameters.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder builder = new StringBuilder("<");
+
+        for (int i = 0, size = parameters.size(); i < size; i++) {
+
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            final TypeParameterElement parameter = parameters.get(i);
+            builder.append(parameter.getSimpleName());
+
+            final List<? extends TypeMirror> bounds = parameter.getBounds();
+            if (bounds.size() == 1 && Object.class.getName().equals(bounds.get(0).toString())) {
+                continue;
+            }
+
+            for (int j = 0, length = bounds.size(); j < length; j++) {
+                builder.append(j == 0 ? " extends " : " & ").append(bounds.get(j));
+            }
+        }
+
+        return builder.append('>').toString();
+    }
+}
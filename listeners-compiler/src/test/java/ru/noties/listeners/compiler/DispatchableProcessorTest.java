@@ -0,0 +1,310 @@
+package ru.noties.listeners.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// compiles sources with the processor, then runs `test.Main` (Callable<String> that returns a log of calls)
+public class DispatchableProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dispatch() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Listener.java",
+                "package test;\n" +
+                        "@ru.noties.listeners.Dispatchable\n" +
+                        "public interface Listener {\n" +
+                        "    void onEvent(int value, String name);\n" +
+                        "    void onEmpty();\n" +
+                        "    void onVarargs(String... values);\n" +
+                        "}\n",
+                "test/Main.java",
+                "package test;\n" +
+                        "import ru.noties.listeners.Listeners;\n" +
+                        "public class Main implements java.util.concurrent.Callable<String> {\n" +
+                        "    public String call() {\n" +
+                        "        final StringBuilder log = new StringBuilder();\n" +
+                        "        final Listeners<Listener> listeners = Listeners.create();\n" +
+                        "        listeners.add(new Recorder(\"a\", log, listeners));\n" +
+                        "        listeners.add(new Recorder(\"b\", log, listeners));\n" +
+                        "        final Listener dispatcher = new ListenerDispatcher(listeners);\n" +
+                        "        dispatcher.onEvent(1, \"one\");\n" +
+                        "        dispatcher.onVarargs(\"x\", \"y\");\n" +
+                        "        dispatcher.onEmpty();\n" +
+                        "        dispatcher.onEvent(2, \"two\");\n" +
+                        "        return log.append(listeners.isIterating()).toString();\n" +
+                        "    }\n" +
+                        "    static class Recorder implements Listener {\n" +
+                        "        final String name;\n" +
+                        "        final StringBuilder log;\n" +
+                        "        final Listeners<Listener> listeners;\n" +
+                        "        Recorder(String name, StringBuilder log, Listeners<Listener> listeners) {\n" +
+                        "            this.name = name;\n" +
+                        "            this.log = log;\n" +
+                        "            this.listeners = listeners;\n" +
+                        "        }\n" +
+                        "        public void onEvent(int value, String name) {\n" +
+                        "            log.append(this.name).append(':').append(value).append(name).append(',');\n" +
+                        "        }\n" +
+                        "        public void onEmpty() {\n" +
+                        "            log.append(name).append(\":empty,\");\n" +
+                        "            listeners.remove(this);\n" +
+                        "        }\n" +
+                        "        public void onVarargs(String... values) {\n" +
+                        "            log.append(name).append(':').append(values.length).append(',');\n" +
+                        "        }\n" +
+                        "    }\n" +
+                        "}\n");
+
+        compilation.assertSuccess();
+        assertEquals("a:1one,b:1one,a:2,b:2,a:empty,b:empty,false", compilation.run("test.Main"));
+    }
+
+    @Test
+    public void listener_throws_iteration_finished() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Outer.java",
+                "package test;\n" +
+                        "public class Outer {\n" +
+                        "    @ru.noties.listeners.Dispatchable\n" +
+                        "    interface Listener {\n" +
+                        "        void onEvent(String value) throws java.io.IOException;\n" +
+                        "    }\n" +
+                        "}\n",
+                "test/Main.java",
+                "package test;\n" +
+                        "import ru.noties.listeners.Listeners;\n" +
+                        "public class Main implements java.util.concurrent.Callable<String> {\n" +
+                        "    public String call() throws Exception {\n" +
+                        "        final StringBuilder log = new StringBuilder();\n" +
+                        "        final Listeners<Outer.Listener> listeners = Listeners.create();\n" +
+                        "        final Outer.Listener dispatcher = new Outer_ListenerDispatcher(listeners);\n" +
+                        "        listeners.add(new Outer.Listener() {\n" +
+                        "            public void onEvent(String value) throws java.io.IOException {\n" +
+                        "                log.append(value).append(',');\n" +
+                        "                if (\"nested\".equals(value)) {\n" +
+                        "                    throw new java.io.IOException(value);\n" +
+                        "                }\n" +
+                        "                try {\n" +
+                        "                    dispatcher.onEvent(\"nested\");\n" +
+                        "                } catch (java.io.IOException e) {\n" +
+                        "                    // outer iteration is still active\n" +
+                        "                    log.append(listeners.isIterating()).append(',');\n" +
+                        "                    throw e;\n" +
+                        "                }\n" +
+                        "            }\n" +
+                        "        });\n" +
+                        "        try {\n" +
+                        "            dispatcher.onEvent(\"outer\");\n" +
+                        "        } catch (java.io.IOException e) {\n" +
+                        "            log.append(e.getMessage()).append(',');\n" +
+                        "        }\n" +
+                        "        return log.append(listeners.isIterating()).toString();\n" +
+                        "    }\n" +
+                        "}\n");
+
+        compilation.assertSuccess();
+        assertEquals("outer,nested,true,nested,false", compilation.run("test.Main"));
+    }
+
+    @Test
+    public void generics_and_inherited_methods() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Base.java",
+                "package test;\n" +
+                        "public interface Base<V> {\n" +
+                        "    void onValue(V value);\n" +
+                        "    boolean equals(Object o);\n" +
+                        "}\n",
+                "test/Listener.java",
+                "package test;\n" +
+                        "@ru.noties.listeners.Dispatchable\n" +
+                        "public interface Listener<N extends Number & Comparable<N>> extends Base<String> {\n" +
+                        "    void onNumber(N number);\n" +
+                        "    <E extends Enum<E>> void onEnum(E value);\n" +
+                        "    void onValue(String value);\n" +
+                        "}\n",
+                "test/Main.java",
+                "package test;\n" +
+                        "import ru.noties.listeners.Listeners;\n" +
+                        "public class Main implements java.util.concurrent.Callable<String> {\n" +
+                        "    public String call() {\n" +
+                        "        final StringBuilder log = new StringBuilder();\n" +
+                        "        final Listeners<Impl> listeners = Listeners.create();\n" +
+                        "        listeners.add(new Impl(log));\n" +
+                        "        final Listener<Integer> dispatcher = new ListenerDispatcher<>(listeners);\n" +
+                        "        dispatcher.onNumber(42);\n" +
+                        "        dispatcher.onEnum(java.util.concurrent.TimeUnit.SECONDS);\n" +
+                        "        dispatcher.onValue(\"value\");\n" +
+                        "        return log.toString();\n" +
+                        "    }\n" +
+                        "    static class Impl implements Listener<Integer> {\n" +
+                        "        final StringBuilder log;\n" +
+                        "        Impl(StringBuilder log) {\n" +
+                        "            this.log = log;\n" +
+                        "        }\n" +
+                        "        public void onNumber(Integer number) {\n" +
+                        "            log.append(number).append(',');\n" +
+                        "        }\n" +
+                        "        public <E extends Enum<E>> void onEnum(E value) {\n" +
+                        "            log.append(value).append(',');\n" +
+                        "        }\n" +
+                        "        public void onValue(String value) {\n" +
+                        "            log.append(value);\n" +
+                        "        }\n" +
+                        "    }\n" +
+                        "}\n");
+
+        compilation.assertSuccess();
+        assertEquals("42,SECONDS,value", compilation.run("test.Main"));
+    }
+
+    @Test
+    public void non_void_method() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Listener.java",
+                "package test;\n" +
+                        "@ru.noties.listeners.Dispatchable\n" +
+                        "public interface Listener {\n" +
+                        "    boolean onEvent();\n" +
+                        "}\n");
+
+        compilation.assertError("must return void");
+    }
+
+    @Test
+    public void not_interface() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Listener.java",
+                "package test;\n" +
+                        "@ru.noties.listeners.Dispatchable\n" +
+                        "public abstract class Listener {\n" +
+                        "    public abstract void onEvent();\n" +
+                        "}\n");
+
+        compilation.assertError("can be applied only to an interface");
+    }
+
+    @Test
+    public void private_interface() throws Exception {
+
+        final Compilation compilation = compile(
+                "test/Outer.java",
+                "package test;\n" +
+                        "public class Outer {\n" +
+                        "    @ru.noties.listeners.Dispatchable\n" +
+                        "    private interface Listener {\n" +
+                        "        void onEvent();\n" +
+                        "    }\n" +
+                        "}\n");
+
+        compilation.assertError("must not be private");
+    }
+
+    // pairs of path and content
+    private Compilation compile(String... sources) throws IOException {
+
+        final File src = folder.newFolder("src");
+        final File out = folder.newFolder("out");
+
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < sources.length; i += 2) {
+            final File file = new File(src, sources[i]);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            Files.write(file.toPath(), sources[i + 1].getBytes(Charset.forName("UTF-8")));
+            files.add(file);
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+
+            final JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    Arrays.asList(
+                            "-classpath", System.getProperty("java.class.path"),
+                            "-d", out.getAbsolutePath(),
+                            "-Xlint:all",
+                            "-Werror"),
+                    null,
+                    fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections.singletonList(new DispatchableProcessor()));
+
+            final boolean success = task.call();
+            return new Compilation(success, diagnostics.getDiagnostics(), out);
+        }
+    }
+
+    private static class Compilation {
+
+        final boolean success;
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        final File out;
+
+        Compilation(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, File out) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.out = out;
+        }
+
+        void assertSuccess() {
+            assertTrue(diagnostics.toString(), success);
+        }
+
+        void assertError(String message) {
+            assertFalse(success);
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR
+                        && diagnostic.getMessage(Locale.ROOT).contains(message)) {
+                    return;
+                }
+            }
+            assertTrue(diagnostics.toString(), false);
+        }
+
+        @SuppressWarnings("unchecked")
+        String run(String name) throws Exception {
+            try (URLClassLoader classLoader = new URLClassLoader(
+                    new URL[]{out.toURI().toURL()},
+                    DispatchableProcessorTest.class.getClassLoader())) {
+                final Class<?> type = classLoader.loadClass(name);
+                return ((Callable<String>) type.newInstance()).call();
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package ru.noties.listeners.flow;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.noties.listeners.Listeners;
+
+/**
+ * {@link Flow.Publisher} of items that are submitted with {@link #submit(Object)}. Subscriptions are
+ * stored in {@link Listeners#createConcurrent()}, so subscribing and cancelling are lock-free and
+ * can happen from any thread (including from subscriber callbacks whilst an item is delivering).
+ * <p>
+ * Each subscription tracks own demand ({@link Flow.Subscription#request(long)}). An item is delivered
+ * right away (on a thread that submits it) to a subscriber that has outstanding demand and no buffered
+ * items, this path does not allocate. Otherwise an item is put into a bounded buffer of the subscription
+ * (see {@link OverflowPolicy} for a full buffer) and is delivered when demand is requested.
+ * Signals to a subscriber are never concurrent.
+ * <p>
+ * If a subscriber throws, its subscription is cancelled and the exception is delivered with `onError`.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ListenersPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * What to do with an item submitted to a subscription whose buffer is full
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * The oldest buffered item is dropped
+         */
+        DROP_OLDEST,
+
+        /**
+         * Submitted item is dropped
+         */
+        DROP_NEWEST,
+
+        /**
+         * Only the latest item is kept, buffered item is replaced with each submitted one
+         * (capacity of a buffer is ignored)
+         */
+        LATEST
+    }
+
+    /**
+     * Factory method to create a publisher
+     *
+     * @param capacity maximum number of buffered items of each subscription
+     * @param policy   for a full buffer
+     * @return an instance of {@link ListenersPublisher}
+     */
+    @NonNull
+    public static <T> ListenersPublisher<T> create(int capacity, @NonNull OverflowPolicy policy) {
+        return new ListenersPublisher<>(capacity, policy);
+    }
+
+    // actions are typed with a publisher type argument, so each publisher creates own (no raw types or casts)
+    @NonNull
+    private static <T> Listeners.BiAction<SubscriptionImpl<T>, T> offerAction() {
+        return new Listeners.BiAction<SubscriptionImpl<T>, T>() {
+            @Override
+            public void apply(@NonNull SubscriptionImpl<T> subscription, T item) {
+                subscription.offer(item);
+            }
+        };
+    }
+
+    @NonNull
+    private static <T> Listeners.Action<SubscriptionImpl<T>> completeAction() {
+        return new Listeners.Action<SubscriptionImpl<T>>() {
+            @Override
+            public void apply(@NonNull SubscriptionImpl<T> subscription) {
+                subscription.terminate();
+            }
+        };
+    }
+
+    // terminal value of a publisher that was closed normally
+    private static final Throwable CLOSED = new Throwable("closed");
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final Listeners<SubscriptionImpl<T>> subscriptions;
+
+    private final Listeners.BiAction<SubscriptionImpl<T>, T> offer;
+    private final Listeners.Action<SubscriptionImpl<T>> complete;
+
+    // null until closed, CLOSED if closed normally
+    private volatile Throwable terminal;
+
+    ListenersPublisher(int capacity, @NonNull OverflowPolicy policy) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+
+        this.capacity = policy == OverflowPolicy.LATEST
+                ? 1
+                : capacity;
+        this.policy = policy;
+        this.subscriptions = Listeners.createConcurrent();
+        this.offer = offerAction();
+        this.complete = completeAction();
+    }
+
+    @Override
+    public void subscribe(@NonNull Flow.Subscriber<? super T> subscriber) {
+
+        final SubscriptionImpl<T> subscription = new SubscriptionImpl<>(this, subscriber);
+
+        subscription.registration = subscriptions.register(subscription);
+
+        // subscription holds `wip` until onSubscribe has returned, so no other signal is concurrent with it
+        subscription.subscribe();
+
+        // closed whilst subscribing or before, subscription could have missed terminal iteration
+        if (terminal != null) {
+            subscription.terminate();
+        }
+    }
+
+    /**
+     * Delivers an item to each current subscriber (or buffers it), can be called from any thread
+     *
+     * @param item to deliver
+     */
+    public void submit(@NonNull T item) {
+
+        if (terminal != null) {
+            throw new IllegalStateException("Publisher is closed");
+        }
+
+        subscriptions.dispatch(offer, item);
+    }
+
+    /**
+     * Completes each subscriber after its buffered items have been delivered
+     */
+    public void close() {
+        terminate(CLOSED);
+    }
+
+    /**
+     * Delivers an error to each subscriber (buffered items are dropped)
+     *
+     * @param throwable to deliver
+     */
+    public void closeExceptionally(@NonNull Throwable throwable) {
+        terminate(throwable);
+    }
+
+    /**
+     * @return number of current subscribers
+     */
+    public int subscribers() {
+        return subscriptions.size();
+    }
+
+    private void terminate(@NonNull Throwable throwable) {
+
+        synchronized (this) {
+            if (terminal != null) {
+                return;
+            }
+            terminal = throwable;
+        }
+
+        subscriptions.forEach(complete);
+    }
+
+    // Signals are serialized with `wip` (work in progress): whoever increments it from 0 delivers,
+    // others only increment it, so the one who delivers runs another pass
+    private static class SubscriptionImpl<T> implements Flow.Subscription {
+
+        private final ListenersPublisher<T> publisher;
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger(1);
+
+        // ring buffer, guarded by `items`
+        private final Object[] items;
+        private int head;
+        private volatile int size;
+
+        Listeners.Registration registration;
+
+        private volatile boolean cancelled;
+        private volatile boolean terminated;
+
+        // set by a call to #request with non-positive value
+        private volatile Throwable invalidRequest;
+
+        // if a terminal signal has been delivered, accessed only by an owner of `wip`
+        private boolean done;
+
+        SubscriptionImpl(@NonNull ListenersPublisher<T> publisher, @NonNull Flow.Subscriber<? super T> subscriber) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+            this.items = new Object[publisher.capacity];
+        }
+
+        @Override
+        public void request(long n) {
+
+            if (n <= 0L) {
+                invalidRequest = new IllegalArgumentException("Requested number of items must be positive: " + n);
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = requested.get();
+                    updated = current + n;
+                    // unbounded
+                    if (updated < 0L) {
+                        updated = Long.MAX_VALUE;
+                    }
+                } while (!requested.compareAndSet(current, updated));
+            }
+
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                registration.remove();
+                signal();
+            }
+        }
+
+        void subscribe() {
+
+            try {
+                subscriber.onSubscribe(this);
+            } catch (Throwable t) {
+                fail(t);
+            }
+
+            drain(1);
+        }
+
+        void offer(@NonNull T item) {
+
+            // fast path: owns delivery, has demand and nothing is buffered
+            if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+
+                if (size == 0 && !done && !cancelled && requested.get() > 0L) {
+
+                    deliver(item);
+
+                    if (wip.decrementAndGet() == 0) {
+                        return;
+                    }
+
+                    drain(1);
+                    return;
+                }
+
+                buffer(item);
+                drain(1);
+                return;
+            }
+
+            buffer(item);
+            signal();
+        }
+
+        void terminate() {
+            terminated = true;
+            signal();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                drain(1);
+            }
+        }
+
+        // must be called by an owner of `wip`
+        private void drain(int missed) {
+
+            while (true) {
+
+                if (!done) {
+                    deliverPending();
+                } else if (size > 0) {
+                    // buffered after a terminal signal
+                    clear();
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliverPending() {
+
+            final Throwable invalidRequest = this.invalidRequest;
+            if (invalidRequest != null) {
+                fail(invalidRequest);
+                return;
+            }
+
+            if (cancelled) {
+                clear();
+                done = true;
+                return;
+            }
+
+            while (requested.get() > 0L) {
+
+                final Object item = poll();
+                if (item == null) {
+                    break;
+                }
+
+                deliver((T) item);
+
+                if (cancelled) {
+                    return;
+                }
+            }
+
+            if (terminated) {
+                final Throwable terminal = publisher.terminal;
+                if (terminal != CLOSED) {
+                    clear();
+                    complete(terminal);
+                } else if (size == 0) {
+                    complete(null);
+                }
+            }
+        }
+
+        private void deliver(@NonNull T item) {
+
+            // demand is decremented before delivery, so `request` from onNext adds to actual value
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.decrementAndGet();
+            }
+
+            try {
+                subscriber.onNext(item);
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        private void complete(@Nullable Throwable throwable) {
+            done = true;
+            registration.remove();
+            if (throwable == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(throwable);
+            }
+        }
+
+        private void fail(@NonNull Throwable throwable) {
+            if (!done) {
+                cancelled = true;
+                clear();
+                complete(throwable);
+            }
+        }
+
+        private void buffer(@NonNull Object item) {
+
+            final Object[] items = this.items;
+
+            synchronized (items) {
+
+                final int capacity = items.length;
+
+                if (size == capacity) {
+                    switch (publisher.policy) {
+                        case DROP_NEWEST:
+                            return;
+                        case DROP_OLDEST:
+                        case LATEST:
+                            items[head] = null;
+                            head = (head + 1) % capacity;
+                            size -= 1;
+                            break;
+                    }
+                }
+
+                items[(head + size) % capacity] = item;
+                size += 1;
+            }
+        }
+
+        @Nullable
+        private Object poll() {
+
+            final Object[] items = this.items;
+
+            synchronized (items) {
+
+                if (size == 0) {
+                    return null;
+                }
+
+                final Object item = items[head];
+                items[head] = null;
+                head = (head + 1) % items.length;
+                size -= 1;
+
+                return item;
+            }
+        }
+
+        private void clear() {
+            synchronized (items) {
+                Arrays.fill(items, null);
+                head = 0;
+                size = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package ru.noties.listeners.flow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListenersPublisherTest {
+
+    private static class Recorder implements Flow.Subscriber<Integer> {
+
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        final long initial;
+
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0L) {
+                subscription.request(initial);
+            }
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    public void delivered_with_demand() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final Recorder recorder = new Recorder(2);
+        publisher.subscribe(recorder);
+
+        publisher.submit(1);
+        publisher.submit(2);
+        publisher.submit(3);
+        publisher.submit(4);
+
+        // no demand, buffered
+        assertEquals(Arrays.asList(1, 2), recorder.items);
+
+        recorder.subscription.request(1);
+        assertEquals(Arrays.asList(1, 2, 3), recorder.items);
+
+        recorder.subscription.request(10);
+        publisher.submit(5);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), recorder.items);
+    }
+
+    @Test
+    public void drop_newest() {
+        assertEquals(Arrays.asList(0, 1, 2), overflow(ListenersPublisher.OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    public void drop_oldest() {
+        assertEquals(Arrays.asList(3, 4, 5), overflow(ListenersPublisher.OverflowPolicy.DROP_OLDEST));
+    }
+
+    @Test
+    public void latest() {
+        assertEquals(Collections.singletonList(5), overflow(ListenersPublisher.OverflowPolicy.LATEST));
+    }
+
+    // capacity 3, 6 items are submitted without demand
+    private static List<Integer> overflow(ListenersPublisher.OverflowPolicy policy) {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(3, policy);
+        final Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        for (int i = 0; i < 6; i++) {
+            publisher.submit(i);
+        }
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        return recorder.items;
+    }
+
+    @Test
+    public void request_from_on_next() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicBoolean nested = new AtomicBoolean();
+
+        final Recorder recorder = new Recorder(1) {
+            @Override
+            public void onNext(Integer item) {
+                if (depth.incrementAndGet() > 1) {
+                    nested.set(true);
+                }
+                super.onNext(item);
+                subscription.request(1);
+                depth.decrementAndGet();
+            }
+        };
+
+        publisher.subscribe(recorder);
+
+        // buffered, then delivered one by one when requested from onNext
+        final Recorder other = new Recorder(0);
+        publisher.subscribe(other);
+        for (int i = 0; i < 5; i++) {
+            publisher.submit(i);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), recorder.items);
+        assertFalse(nested.get());
+        assertTrue(other.items.isEmpty());
+    }
+
+    @Test
+    public void close_after_buffered_delivered() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        publisher.submit(1);
+        publisher.close();
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(1);
+        assertEquals(Collections.singletonList(1), recorder.items);
+        assertTrue(recorder.completed);
+        assertEquals(0, publisher.subscribers());
+
+        // subscribed after close
+        final Recorder late = new Recorder(1);
+        publisher.subscribe(late);
+        assertTrue(late.completed);
+
+        try {
+            publisher.submit(2);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void close_exceptionally() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        publisher.submit(1);
+
+        final RuntimeException exception = new RuntimeException();
+        publisher.closeExceptionally(exception);
+
+        assertEquals(exception, recorder.error);
+        assertTrue(recorder.items.isEmpty());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void cancel() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                subscription.cancel();
+            }
+        };
+        final Recorder other = new Recorder(Long.MAX_VALUE);
+
+        publisher.subscribe(recorder);
+        publisher.subscribe(other);
+
+        publisher.submit(1);
+        publisher.submit(2);
+
+        assertEquals(Collections.singletonList(1), recorder.items);
+        assertEquals(Arrays.asList(1, 2), other.items);
+        assertEquals(1, publisher.subscribers());
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void non_positive_request() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(0);
+
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertEquals(0, publisher.subscribers());
+    }
+
+    @Test
+    public void subscriber_throws() {
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(8, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final IllegalStateException exception = new IllegalStateException();
+        final Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Integer item) {
+                throw exception;
+            }
+        };
+        final Recorder other = new Recorder(Long.MAX_VALUE);
+
+        publisher.subscribe(recorder);
+        publisher.subscribe(other);
+
+        publisher.submit(1);
+        publisher.submit(2);
+
+        assertEquals(exception, recorder.error);
+        assertEquals(Arrays.asList(1, 2), other.items);
+        assertEquals(1, publisher.subscribers());
+    }
+
+    // a subscriber requests from another thread whilst items are submitted, each item
+    // must be delivered exactly once, in order and never concurrently
+    @Test
+    public void concurrent_request() throws InterruptedException {
+
+        final int count = 100000;
+
+        final ListenersPublisher<Integer> publisher = ListenersPublisher.create(count, ListenersPublisher.OverflowPolicy.DROP_NEWEST);
+        final AtomicBoolean concurrent = new AtomicBoolean();
+        final AtomicInteger active = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final Recorder recorder = new Recorder(0) {
+
+            @Override
+            public void onNext(Integer item) {
+                if (active.incrementAndGet() > 1) {
+                    concurrent.set(true);
+                }
+                super.onNext(item);
+                active.decrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                latch.countDown();
+            }
+        };
+        publisher.subscribe(recorder);
+
+        final Thread requester = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    recorder.subscription.request(1);
+                }
+            }
+        });
+        requester.start();
+
+        for (int i = 0; i < count; i++) {
+            publisher.submit(i);
+        }
+        publisher.close();
+
+        requester.join();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertFalse(concurrent.get());
+        assertEquals(count, recorder.items.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) recorder.items.get(i));
+        }
+    }
+}
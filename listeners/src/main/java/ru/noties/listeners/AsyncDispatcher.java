@@ -0,0 +1,274 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// executes asynchronous dispatches of a Listeners instance strictly one after another (in order of
+// requests, even if an executor is multi-threaded or different executors are used). A delivery is
+// a Runnable that notifies elements, if it throws its Future is completed exceptionally.
+// Instances that are not thread-safe deliver a copy of elements (see #dispatch(Executor, Object[], Action)),
+// removals are reported by an owner (see #onRemoved and #onCleared), so a removed element is not notified
+final class AsyncDispatcher {
+
+    // dispatches in order of requests, the head one is executing
+    private final Queue<AsyncDispatch> dispatches = new ConcurrentLinkedQueue<>();
+
+    // number of dispatches in queue, whoever increments it from 0 executes the head
+    private final AtomicInteger dispatchesCount = new AtomicInteger();
+
+    @NonNull
+    Future<Void> dispatch(@NonNull Executor executor, @NonNull Runnable delivery) {
+
+        final AsyncDispatch dispatch = new AsyncDispatch(executor, delivery);
+
+        dispatches.offer(dispatch);
+
+        if (dispatchesCount.getAndIncrement() == 0) {
+            execute(dispatches.peek());
+        }
+
+        return dispatch;
+    }
+
+    // elements of an instance that is not thread-safe cannot be read on another thread, so elements that
+    // are present when dispatch is requested are copied. Empty (null) entries are skipped
+    @NonNull
+    <T> Future<Void> dispatch(
+            @NonNull Executor executor,
+            @NonNull Object[] snapshot,
+            @NonNull Listeners.Action<? super T> action) {
+        return dispatch(executor, new SnapshotDelivery<>(snapshot, action));
+    }
+
+    // must be called by an owner thread when an element is removed, so pending (and executing)
+    // dispatches skip it. Is no-op if there are no dispatches
+    void onRemoved(@NonNull Object element) {
+        for (AsyncDispatch dispatch : dispatches) {
+            if (dispatch.delivery instanceof SnapshotDelivery) {
+                ((SnapshotDelivery<?>) dispatch.delivery).onRemoved(element);
+            }
+        }
+    }
+
+    // must be called by an owner thread when all elements are removed
+    void onCleared() {
+        for (AsyncDispatch dispatch : dispatches) {
+            if (dispatch.delivery instanceof SnapshotDelivery) {
+                ((SnapshotDelivery<?>) dispatch.delivery).cleared = true;
+            }
+        }
+    }
+
+    // called when the head dispatch has finished on a thread of its executor
+    private void executeNext() {
+
+        dispatches.poll();
+
+        if (dispatchesCount.decrementAndGet() > 0) {
+            execute(dispatches.peek());
+        }
+    }
+
+    // an executor can run a dispatch inline (on calling thread), then the dispatch does not call #executeNext
+    // (which would call this method recursively, once per queued dispatch), the next one is executed by this loop
+    private void execute(@NonNull AsyncDispatch dispatch) {
+
+        final Thread thread = Thread.currentThread();
+
+        while (true) {
+
+            dispatch.submitter = thread;
+
+            try {
+                dispatch.executor.execute(dispatch);
+                if (!dispatch.ranInline) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // rejected (a dispatch that has already finished is not changed)
+                dispatch.complete(e);
+            } finally {
+                dispatch.submitter = null;
+            }
+
+            dispatches.poll();
+
+            if (dispatchesCount.decrementAndGet() == 0) {
+                return;
+            }
+
+            dispatch = dispatches.peek();
+        }
+    }
+
+    // an element removed by an owner is replaced with null (a tombstone), each element
+    // is read right before it is notified
+    private static class SnapshotDelivery<T> implements Runnable {
+
+        private final AtomicReferenceArray<Object> snapshot;
+        private final Listeners.Action<? super T> action;
+
+        volatile boolean cleared;
+
+        SnapshotDelivery(@NonNull Object[] snapshot, @NonNull Listeners.Action<? super T> action) {
+            this.snapshot = new AtomicReferenceArray<>(snapshot);
+            this.action = action;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+            final AtomicReferenceArray<Object> snapshot = this.snapshot;
+            for (int i = 0, length = snapshot.length(); i < length && !cleared; i++) {
+                final Object o = snapshot.get(i);
+                if (o != null) {
+                    action.apply((T) o);
+                }
+            }
+        }
+
+        // an element can be added multiple times, each removal marks one occurrence
+        void onRemoved(@NonNull Object element) {
+            final AtomicReferenceArray<Object> snapshot = this.snapshot;
+            for (int i = 0, length = snapshot.length(); i < length; i++) {
+                if (snapshot.get(i) == element
+                        && snapshot.compareAndSet(i, element, null)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private class AsyncDispatch implements Runnable, Future<Void> {
+
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        final Executor executor;
+
+        final Runnable delivery;
+
+        // a thread that is executing #execute for this dispatch, if it is the one that runs
+        // this dispatch, then executor runs it inline and #ranInline is read by the same thread
+        volatile Thread submitter;
+        boolean ranInline;
+
+        // guarded by this
+        private int status;
+        private Throwable error;
+
+        AsyncDispatch(@NonNull Executor executor, @NonNull Runnable delivery) {
+            this.executor = executor;
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void run() {
+
+            if (start()) {
+
+                Throwable throwable = null;
+
+                try {
+                    delivery.run();
+                } catch (Throwable t) {
+                    throwable = t;
+                }
+
+                complete(throwable);
+            }
+
+            if (submitter == Thread.currentThread()) {
+                ranInline = true;
+            } else {
+                executeNext();
+            }
+        }
+
+        private synchronized boolean start() {
+            if (status != PENDING) {
+                return false;
+            }
+            status = RUNNING;
+            return true;
+        }
+
+        synchronized void complete(@Nullable Throwable throwable) {
+            if (status < DONE) {
+                status = DONE;
+                error = throwable;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (status != PENDING) {
+                return false;
+            }
+            status = CANCELLED;
+            notifyAll();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return status == CANCELLED;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return status >= DONE;
+        }
+
+        @Override
+        public synchronized Void get() throws InterruptedException, ExecutionException {
+            while (status < DONE) {
+                wait();
+            }
+            return result();
+        }
+
+        @Override
+        public synchronized Void get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+
+            final long end = System.nanoTime() + unit.toNanos(timeout);
+
+            while (status < DONE) {
+                final long remaining = end - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+
+            return result();
+        }
+
+        // must be called when holding the lock
+        @Nullable
+        private Void result() throws ExecutionException {
+            if (status == CANCELLED) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return null;
+        }
+    }
+}
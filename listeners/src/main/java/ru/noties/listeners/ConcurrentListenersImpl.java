@@ -0,0 +1,939 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe implementation. Elements are stored in an immutable array that is replaced (with CAS)
+ * on each modification, so {@link #add(Object)} and {@link #remove(Object)} never block and iteration
+ * does not require locking or copying. In order to keep the same semantics as {@link ListenersImpl}:
+ * <ul>
+ * <li>each removed element is marked, so iterations that still hold previous array skip it</li>
+ * <li>each element has an id (ascending in array order), so an iteration that has reached
+ * the end of own array can continue with elements that were added after it had started</li>
+ * </ul>
+ * Iteration state is kept per thread, so {@link #isIterating()} and {@link #end()} refer to
+ * iterations of the calling thread.
+ * <p>
+ * Asynchronous dispatch holds the array that is actual when it is requested (immutable, so
+ * it is not copied) and skips marked elements, so an element removed before its delivery has
+ * started is not notified. Dispatches are queued and executed strictly one after another
+ * <p>
+ * {@link DispatchMonitor} can be changed at any time, each dispatch reads it once when it starts
+ * (an iteration keeps it until finished). As a monitor is called from multiple threads, all calls
+ * to it are synchronized on it (see {@link MonitoredAction})
+ */
+class ConcurrentListenersImpl<T> extends Listeners<T> {
+
+    private final AtomicReference<State> state;
+
+    private final ThreadLocal<Iterations<T>> iterations;
+
+    private final AsyncDispatcher dispatcher;
+
+    private volatile DispatchMonitor monitor;
+
+    ConcurrentListenersImpl() {
+        this.state = new AtomicReference<>(new State(new Node[0], 0L, 0));
+        this.iterations = new IterationsLocal<>();
+        this.dispatcher = new AsyncDispatcher();
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        addNode(t);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+        return new RegistrationImpl(addNode(t));
+    }
+
+    @Override
+    public void remove(@NonNull T t) {
+
+        while (true) {
+
+            final State current = state.get();
+            final Node[] nodes = current.nodes;
+
+            int index = -1;
+            for (int i = 0, length = nodes.length; i < length; i++) {
+                if (t.equals(nodes[i].item)) {
+                    index = i;
+                    break;
+                }
+            }
+
+            if (index < 0
+                    || removeAt(current, index)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(@NonNull T t) {
+        for (Node node : state.get().nodes) {
+            if (t.equals(node.item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<? extends T> collection) {
+
+        final Object[] items = collection.toArray();
+        if (items.length == 0) {
+            return;
+        }
+
+        State current;
+        State updated;
+
+        do {
+            current = state.get();
+            final Node[] nodes = current.nodes;
+            final int length = nodes.length;
+            final Node[] array = Arrays.copyOf(nodes, length + items.length);
+            long id = current.nextId;
+            for (int i = 0; i < items.length; i++) {
+                array[length + i] = new Node(items[i], id++);
+            }
+            updated = new State(array, id, current.clears);
+        } while (!state.compareAndSet(current, updated));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int removeIf(@NonNull Predicate<? super T> predicate) {
+
+        while (true) {
+
+            final State current = state.get();
+            final Node[] nodes = current.nodes;
+            final int length = nodes.length;
+
+            // created with the first element to remove
+            Node[] kept = null;
+            int position = 0;
+
+            for (int i = 0; i < length; i++) {
+                final Node node = nodes[i];
+                if (predicate.test((T) node.item)) {
+                    if (kept == null) {
+                        kept = new Node[length - 1];
+                        System.arraycopy(nodes, 0, kept, 0, i);
+                        position = i;
+                    }
+                } else if (kept != null) {
+                    kept[position++] = node;
+                }
+            }
+
+            if (kept == null) {
+                return 0;
+            }
+
+            final Node[] array = position == kept.length
+                    ? kept
+                    : Arrays.copyOf(kept, position);
+
+            if (state.compareAndSet(current, new State(array, current.nextId, current.clears))) {
+
+                // iterations that hold previous array must skip removed elements (kept ones
+                // are in the same order)
+                int k = 0;
+                for (Node node : nodes) {
+                    if (k < position && array[k] == node) {
+                        k += 1;
+                    } else {
+                        node.removed = true;
+                    }
+                }
+
+                onRemoved(length - position);
+
+                return length - position;
+            }
+        }
+    }
+
+    @NonNull
+    private Node addNode(@NonNull T t) {
+
+        State current;
+        State updated;
+        Node node;
+
+        do {
+            current = state.get();
+            final Node[] nodes = current.nodes;
+            final int length = nodes.length;
+            final Node[] array = Arrays.copyOf(nodes, length + 1);
+            node = new Node(t, current.nextId);
+            array[length] = node;
+            updated = new State(array, current.nextId + 1, current.clears);
+        } while (!state.compareAndSet(current, updated));
+
+        return node;
+    }
+
+    private void removeNode(@NonNull Node node) {
+
+        while (!node.removed) {
+
+            final State current = state.get();
+            final Node[] nodes = current.nodes;
+
+            // array is sorted by id
+            final int index = indexAfter(nodes, node.id - 1);
+
+            if (index == nodes.length
+                    || nodes[index] != node
+                    || removeAt(current, index)) {
+                return;
+            }
+        }
+    }
+
+    // returns false if state was modified concurrently
+    private boolean removeAt(@NonNull State current, int index) {
+
+        final Node[] nodes = current.nodes;
+        final int length = nodes.length;
+
+        final Node[] array = new Node[length - 1];
+        System.arraycopy(nodes, 0, array, 0, index);
+        System.arraycopy(nodes, index + 1, array, index, length - index - 1);
+
+        if (state.compareAndSet(current, new State(array, current.nextId, current.clears))) {
+            // iterations that hold previous array must skip this element
+            nodes[index].removed = true;
+            onRemoved(1);
+            return true;
+        }
+
+        return false;
+    }
+
+    // reported only for iterations of calling thread (the same as ListenersImpl)
+    private void onRemoved(int removed) {
+        final DispatchMonitor monitor = this.monitor;
+        if (monitor != null
+                && iterations.get().depth > 0) {
+            for (int i = 0; i < removed; i++) {
+                MonitoredAction.onRemovedWhilstIterating(monitor);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+
+        State current;
+
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, new State(new Node[0], current.nextId, current.clears + 1)));
+
+        for (Node node : current.nodes) {
+            node.removed = true;
+        }
+
+        // finish iterations of calling thread, the same as ListenersImpl
+        iterations.get().finish(0);
+    }
+
+    @Override
+    public int size() {
+        return state.get().nodes.length;
+    }
+
+    @Override
+    public boolean isIterating() {
+        return iterations.get().depth > 0;
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> begin() {
+
+        return startIteration(state.get().nodes, 0, -1L, false);
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> beginReversed() {
+
+        final Node[] nodes = state.get().nodes;
+
+        return startIteration(nodes, nodes.length - 1, -1L, true);
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+
+        final IteratorImpl<T> iterator = startIteration(state.get().nodes, 0, -1L, false);
+        final DispatchMonitor monitor = iterator.monitor;
+
+        try {
+            while (iterator.isActive()
+                    && iterator.seek()) {
+                final T t = iterator.advance();
+                if (monitor == null) {
+                    action.apply(t);
+                } else {
+                    final long started = System.nanoTime();
+                    action.apply(t);
+                    MonitoredAction.onDelivered(monitor, t, System.nanoTime() - started);
+                }
+            }
+        } finally {
+            if (iterator.isActive()) {
+                iterator.finish();
+            }
+        }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
+
+        final IteratorImpl<T> iterator = startIteration(state.get().nodes, 0, -1L, false);
+        final DispatchMonitor monitor = iterator.monitor;
+
+        try {
+            while (iterator.isActive()
+                    && iterator.seek()) {
+                final T t = iterator.advance();
+                if (monitor == null) {
+                    action.apply(t, argument);
+                } else {
+                    final long started = System.nanoTime();
+                    action.apply(t, argument);
+                    MonitoredAction.onDelivered(monitor, t, System.nanoTime() - started);
+                }
+            }
+        } finally {
+            if (iterator.isActive()) {
+                iterator.finish();
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action) {
+        return new IncrementalDispatchImpl(action, state.get().clears);
+    }
+
+    // iterations that have already started keep previous monitor
+    @Override
+    public void setDispatchMonitor(@Nullable DispatchMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold) {
+
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0: " + threshold);
+        }
+
+        final Node[] nodes = state.get().nodes;
+
+        // deliveries are reported from pool threads, started and finished from calling one
+        final DispatchMonitor monitor = this.monitor;
+        final long started;
+        if (monitor != null) {
+            MonitoredAction.onDispatchStarted(monitor, nodes.length);
+            started = System.nanoTime();
+        } else {
+            started = 0L;
+        }
+
+        final ParallelDispatch dispatch = new ParallelDispatch(
+                nodes,
+                0,
+                nodes.length,
+                MonitoredAction.wrap(action, monitor),
+                threshold);
+
+        try {
+            if (nodes.length <= threshold) {
+                dispatch.compute();
+            } else {
+                pool.invoke(dispatch);
+            }
+        } finally {
+            if (monitor != null) {
+                MonitoredAction.onDispatchFinished(monitor, System.nanoTime() - started);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public Future<Void> dispatchAsync(@NonNull Executor executor, @NonNull Action<? super T> action) {
+
+        return dispatcher.dispatch(executor, new AsyncDelivery(state.get().nodes, action));
+    }
+
+    @Override
+    public void end() {
+        final Iterations<T> iterations = this.iterations.get();
+        if (iterations.depth > 0) {
+            iterations.finish(iterations.depth - 1);
+        }
+    }
+
+    @NonNull
+    private IteratorImpl<T> startIteration(@NonNull Node[] nodes, int index, long lastId, boolean reversed) {
+        final IteratorImpl<T> iterator = iterations.get().push();
+        iterator.start(state, nodes, index, lastId, reversed, monitor);
+        return iterator;
+    }
+
+    private static class Node {
+
+        final Object item;
+        final long id;
+
+        volatile boolean removed;
+
+        Node(@NonNull Object item, long id) {
+            this.item = item;
+            this.id = id;
+        }
+    }
+
+    private class RegistrationImpl implements Registration {
+
+        private final Node node;
+
+        RegistrationImpl(@NonNull Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public void remove() {
+            removeNode(node);
+        }
+
+        @Override
+        public void close() {
+            remove();
+        }
+    }
+
+    // processes nodes of the array that was actual when dispatch started, skipping removed ones
+    private class ParallelDispatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Node[] nodes;
+        private final int from;
+        private final int to;
+        private final Action<? super T> action;
+        private final int threshold;
+
+        ParallelDispatch(
+                @NonNull Node[] nodes,
+                int from,
+                int to,
+                @NonNull Action<? super T> action,
+                int threshold) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.threshold = threshold;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void compute() {
+
+            if (to - from <= threshold) {
+                for (int i = from; i < to; i++) {
+                    final Node node = nodes[i];
+                    if (!node.removed) {
+                        action.apply((T) node.item);
+                    }
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            final ParallelDispatch right = new ParallelDispatch(nodes, middle, to, action, threshold);
+            right.fork();
+
+            try {
+                new ParallelDispatch(nodes, from, middle, action, threshold).compute();
+            } finally {
+                right.join();
+            }
+        }
+    }
+
+    // notifies nodes of the array that was actual when dispatch was requested, skipping removed ones
+    private class AsyncDelivery implements Runnable {
+
+        private final Node[] nodes;
+        private final Action<? super T> action;
+
+        AsyncDelivery(@NonNull Node[] nodes, @NonNull Action<? super T> action) {
+            this.nodes = nodes;
+            this.action = action;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+
+            // read when dispatch starts executing
+            final DispatchMonitor monitor = ConcurrentListenersImpl.this.monitor;
+            final long started;
+            if (monitor != null) {
+                MonitoredAction.onDispatchStarted(monitor, nodes.length);
+                started = System.nanoTime();
+            } else {
+                started = 0L;
+            }
+
+            try {
+                for (Node node : nodes) {
+                    if (node.removed) {
+                        continue;
+                    }
+                    final T t = (T) node.item;
+                    if (monitor == null) {
+                        action.apply(t);
+                    } else {
+                        final long deliveryStarted = System.nanoTime();
+                        action.apply(t);
+                        MonitoredAction.onDelivered(monitor, t, System.nanoTime() - deliveryStarted);
+                    }
+                }
+            } finally {
+                if (monitor != null) {
+                    MonitoredAction.onDispatchFinished(monitor, System.nanoTime() - started);
+                }
+            }
+        }
+    }
+
+    private static class State {
+
+        final Node[] nodes;
+
+        // id of the next added element
+        final long nextId;
+
+        // number of calls to #clear, an incremental pass is finished by a call after it has started
+        final int clears;
+
+        State(@NonNull Node[] nodes, long nextId, int clears) {
+            this.nodes = nodes;
+            this.nextId = nextId;
+            this.clears = clears;
+        }
+    }
+
+    // a value of a thread local is strongly referenced by each thread that has iterated an instance,
+    // so it must not reference the instance (otherwise neither the thread local key nor the instance
+    // could be collected while the thread is alive). Iterations and iterators are static and
+    // an iterator references the state of an instance only until it is finished
+    private static class IterationsLocal<T> extends ThreadLocal<Iterations<T>> {
+        @Override
+        protected Iterations<T> initialValue() {
+            return new Iterations<>();
+        }
+    }
+
+    // stack of iterations of a single thread (the same as in ListenersImpl)
+    private static class Iterations<T> {
+
+        @SuppressWarnings("unchecked")
+        IteratorImpl<T>[] iterators = (IteratorImpl<T>[]) new IteratorImpl<?>[]{null};
+
+        int depth;
+
+        @NonNull
+        IteratorImpl<T> push() {
+
+            final int depth = this.depth;
+
+            if (depth == iterators.length) {
+                iterators = Arrays.copyOf(iterators, depth * 2);
+            }
+
+            IteratorImpl<T> iterator = iterators[depth];
+            if (iterator == null) {
+                iterator = new IteratorImpl<>(this, depth);
+                iterators[depth] = iterator;
+            }
+
+            this.depth = depth + 1;
+
+            return iterator;
+        }
+
+        // finishes iteration at specified level and all nested ones
+        void finish(int level) {
+            final int depth = this.depth;
+            this.depth = level;
+            for (int i = depth - 1; i >= level; i--) {
+                iterators[i].onFinished();
+            }
+        }
+    }
+
+    // A pass keeps id of the last notified element (instead of an index), so it does not need to be
+    // updated by modifications. Each call to #resume is an iteration that starts after that element,
+    // elements added after the pass has started have greater ids and are visited
+    private class IncrementalDispatchImpl implements IncrementalDispatch {
+
+        private final Action<? super T> action;
+
+        // State#clears when the pass was started
+        private final int clears;
+
+        private long lastId = -1L;
+
+        private boolean finished;
+        private boolean resuming;
+
+        IncrementalDispatchImpl(@NonNull Action<? super T> action, int clears) {
+            this.action = action;
+            this.clears = clears;
+        }
+
+        @Override
+        public boolean resume(long budgetNanos) {
+
+            if (finished) {
+                return true;
+            }
+
+            if (resuming) {
+                throw new IllegalStateException("IncrementalDispatch cannot be resumed by own action");
+            }
+
+            final State current = state.get();
+            if (current.clears != clears) {
+                finished = true;
+                return true;
+            }
+
+            final Action<? super T> action = this.action;
+
+            final Node[] nodes = current.nodes;
+            final IteratorImpl<T> iterator = startIteration(nodes, indexAfter(nodes, lastId), lastId, false);
+
+            final DispatchMonitor monitor = iterator.monitor;
+            final long started = System.nanoTime();
+
+            resuming = true;
+
+            boolean notified = false;
+
+            try {
+
+                while (iterator.isActive()
+                        && !finished) {
+
+                    if (!iterator.seek()) {
+                        finished = true;
+                        break;
+                    }
+
+                    if (notified
+                            && System.nanoTime() - started >= budgetNanos) {
+                        break;
+                    }
+
+                    final T t = iterator.advance();
+                    lastId = iterator.lastId;
+
+                    notified = true;
+
+                    if (monitor == null) {
+                        action.apply(t);
+                    } else {
+                        final long deliveryStarted = System.nanoTime();
+                        action.apply(t);
+                        MonitoredAction.onDelivered(monitor, t, System.nanoTime() - deliveryStarted);
+                    }
+
+                    // cleared by the action
+                    if (state.get().clears != clears) {
+                        finished = true;
+                    }
+                }
+
+            } finally {
+                resuming = false;
+                if (iterator.isActive()) {
+                    iterator.finish();
+                }
+            }
+
+            return finished;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void cancel() {
+            finished = true;
+        }
+    }
+
+    private static class IteratorImpl<T> implements Iterable<T>, Iterator<T> {
+
+        final Iterations<T> iterations;
+
+        // position in iterations stack
+        final int level;
+
+        // state of an instance that is iterated, null when finished
+        AtomicReference<State> state;
+
+        Node[] nodes;
+        int index;
+
+        // id of the last returned element
+        long lastId;
+
+        boolean reversed;
+
+        // read once when iteration starts, null if not monitored
+        DispatchMonitor monitor;
+
+        private long started;
+
+        // element that is being delivered (returned by #next)
+        private Object delivered;
+        private long deliveredAt;
+
+        IteratorImpl(@NonNull Iterations<T> iterations, int level) {
+            this.iterations = iterations;
+            this.level = level;
+        }
+
+        @Override
+        @NonNull
+        public Iterator<T> iterator() {
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            // early return if this iteration is not active anymore
+            if (!isActive()) {
+                return false;
+            }
+
+            if (monitor != null) {
+                onDeliveryFinished();
+            }
+
+            final boolean result = seek();
+
+            // finish _natural_ iteration
+            if (!result) {
+                finish();
+            }
+
+            return result;
+        }
+
+        @Override
+        public T next() {
+
+            if (!isActive()) {
+                throw new NoSuchElementException();
+            }
+
+            if (monitor != null) {
+                onDeliveryFinished();
+            }
+
+            if (!seek()) {
+                throw new NoSuchElementException();
+            }
+
+            final T next = advance();
+
+            if (monitor != null) {
+                delivered = next;
+                deliveredAt = System.nanoTime();
+            }
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        boolean isActive() {
+            return level < iterations.depth;
+        }
+
+        void start(
+                @NonNull AtomicReference<State> state,
+                @NonNull Node[] nodes,
+                int index,
+                long lastId,
+                boolean reversed,
+                @Nullable DispatchMonitor monitor) {
+
+            this.state = state;
+            this.nodes = nodes;
+            this.index = index;
+            this.lastId = lastId;
+            this.reversed = reversed;
+            this.monitor = monitor;
+
+            if (monitor != null) {
+                delivered = null;
+                MonitoredAction.onDispatchStarted(monitor, nodes.length);
+                started = System.nanoTime();
+            }
+        }
+
+        // finishes this iteration and all nested ones
+        void finish() {
+            iterations.finish(level);
+        }
+
+        // called by Iterations#finish
+        void onFinished() {
+
+            // do not keep a reference to (possibly) stale array and to an instance
+            state = null;
+            nodes = null;
+
+            final DispatchMonitor monitor = this.monitor;
+            if (monitor != null) {
+                onDeliveryFinished();
+                MonitoredAction.onDispatchFinished(monitor, System.nanoTime() - started);
+                this.monitor = null;
+            }
+        }
+
+        private void onDeliveryFinished() {
+            final Object delivered = this.delivered;
+            if (delivered != null) {
+                this.delivered = null;
+                MonitoredAction.onDelivered(monitor, delivered, System.nanoTime() - deliveredAt);
+            }
+        }
+
+        // returns current element and moves to the next one, must be called after #seek
+        @SuppressWarnings("unchecked")
+        @NonNull
+        T advance() {
+
+            final Node node = nodes[index];
+
+            if (!reversed) {
+                index += 1;
+            } else {
+                index -= 1;
+            }
+
+            lastId = node.id;
+
+            return (T) node.item;
+        }
+
+        // moves index to the next not removed element, returns false if there is none
+        boolean seek() {
+
+            Node[] nodes = this.nodes;
+            if (nodes == null) {
+                return false;
+            }
+
+            int index = this.index;
+
+            if (reversed) {
+
+                while (index > -1 && nodes[index].removed) {
+                    index -= 1;
+                }
+
+                this.index = index;
+
+                return index > -1;
+            }
+
+            while (true) {
+
+                final int length = nodes.length;
+
+                while (index < length && nodes[index].removed) {
+                    index += 1;
+                }
+
+                if (index < length) {
+                    this.index = index;
+                    return true;
+                }
+
+                // we have reached the end of array that was actual when iteration started,
+                // check if there are elements that were added after that
+                final Node[] current = state.get().nodes;
+                if (current == nodes) {
+                    this.index = index;
+                    return false;
+                }
+
+                nodes = current;
+                index = indexAfter(nodes, lastId);
+
+                this.nodes = nodes;
+            }
+        }
+    }
+
+    // index of the first element with id greater than specified one (elements are sorted by id)
+    private static int indexAfter(@NonNull Node[] nodes, long id) {
+
+        int low = 0;
+        int high = nodes.length - 1;
+
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (nodes[middle].id <= id) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Receives events of dispatches (iterations) of {@link Listeners}, see
+ * {@link Listeners#setDispatchMonitor(DispatchMonitor)}. A dispatch is an iteration started with
+ * {@link Listeners#begin()}, {@link Listeners#beginReversed()}, {@link Listeners#forEach(Listeners.Action)}
+ * or {@link Listeners#dispatch(Listeners.BiAction, Object)}.
+ * <p>
+ * Callbacks are invoked synchronously on iterating thread, so an implementation must be fast and must not
+ * allocate if dispatch is expected to be allocation-free. For a ready to use implementation see {@link DispatchStats}
+ */
+public interface DispatchMonitor {
+
+    /**
+     * @param size number of elements when dispatch has started
+     */
+    void onDispatchStarted(int size);
+
+    /**
+     * Called after an element has been notified. For {@link Listeners#begin()} this is the time
+     * between an element returned by the Iterator and the next call to the Iterator (or the end of iteration)
+     *
+     * @param listener that was notified
+     * @param nanos    time spent notifying it
+     */
+    void onDelivered(@NonNull Object listener, long nanos);
+
+    /**
+     * @param nanos total duration of dispatch (including nested dispatches)
+     */
+    void onDispatchFinished(long nanos);
+
+    /**
+     * Called when an element is removed whilst iterating
+     */
+    void onRemovedWhilstIterating();
+}
@@ -0,0 +1,238 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DispatchMonitor} that records:
+ * <ul>
+ * <li>number of dispatches and total time spent dispatching (and a histogram of dispatch durations)</li>
+ * <li>latency histogram for each listener</li>
+ * <li>the largest number of listeners at the start of a dispatch (high-water mark)</li>
+ * <li>number of removals whilst iterating</li>
+ * </ul>
+ * Optionally reports listeners that take longer than specified threshold via {@link SlowListenerCallback}.
+ * <p>
+ * Recording does not allocate, except for the first delivery to a listener (its histogram is created).
+ * Listeners are held weakly and compared by identity (so listeners that are equal have own histograms).
+ * Not thread-safe, an instance should be used with a single {@link Listeners} (or with multiple ones that
+ * are iterated in the same thread). Thread-safe instance and parallel dispatch synchronize all calls
+ * on a monitor, so they can use it
+ */
+@SuppressWarnings("WeakerAccess")
+public class DispatchStats implements DispatchMonitor {
+
+    public interface SlowListenerCallback {
+
+        /**
+         * @param listener that took longer than threshold to be notified
+         * @param nanos    time spent notifying it
+         */
+        void onSlowListener(@NonNull Object listener, long nanos);
+    }
+
+    private final long slowThreshold;
+    private final SlowListenerCallback slowListenerCallback;
+
+    private final LatencyHistogram dispatches = new LatencyHistogram();
+    private final Histograms listeners = new Histograms();
+
+    private long totalDispatchNanos;
+    private int sizeHighWaterMark;
+    private long removedWhilstIterating;
+
+    public DispatchStats() {
+        this.slowThreshold = Long.MAX_VALUE;
+        this.slowListenerCallback = null;
+    }
+
+    /**
+     * @param slowThreshold        listener that takes longer than that to be notified is reported
+     * @param unit                 of threshold
+     * @param slowListenerCallback to report slow listeners
+     */
+    public DispatchStats(long slowThreshold, @NonNull TimeUnit unit, @NonNull SlowListenerCallback slowListenerCallback) {
+        this.slowThreshold = unit.toNanos(slowThreshold);
+        this.slowListenerCallback = slowListenerCallback;
+    }
+
+    @Override
+    public void onDispatchStarted(int size) {
+        if (size > sizeHighWaterMark) {
+            sizeHighWaterMark = size;
+        }
+    }
+
+    @Override
+    public void onDelivered(@NonNull Object listener, long nanos) {
+
+        LatencyHistogram histogram = listeners.get(listener);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            listeners.put(listener, histogram);
+        }
+        histogram.record(nanos);
+
+        if (nanos > slowThreshold) {
+            slowListenerCallback.onSlowListener(listener, nanos);
+        }
+    }
+
+    @Override
+    public void onDispatchFinished(long nanos) {
+        dispatches.record(nanos);
+        totalDispatchNanos += nanos;
+    }
+
+    @Override
+    public void onRemovedWhilstIterating() {
+        removedWhilstIterating += 1;
+    }
+
+    public long dispatchCount() {
+        return dispatches.count();
+    }
+
+    public long totalDispatchNanos() {
+        return totalDispatchNanos;
+    }
+
+    /**
+     * @return histogram of dispatch durations
+     */
+    @NonNull
+    public LatencyHistogram dispatchHistogram() {
+        return dispatches;
+    }
+
+    /**
+     * @return latency histogram of specified listener or null if it was not notified yet
+     */
+    @Nullable
+    public LatencyHistogram listenerHistogram(@NonNull Object listener) {
+        return listeners.get(listener);
+    }
+
+    /**
+     * @return the largest number of listeners at the start of a dispatch
+     */
+    public int sizeHighWaterMark() {
+        return sizeHighWaterMark;
+    }
+
+    public long removedWhilstIterating() {
+        return removedWhilstIterating;
+    }
+
+    public void reset() {
+        dispatches.reset();
+        listeners.clear();
+        totalDispatchNanos = 0L;
+        sizeHighWaterMark = 0;
+        removedWhilstIterating = 0L;
+    }
+
+    // histograms keyed by identity of a listener, an entry of a collected listener is removed
+    // when it is enqueued (checked by modifications)
+    private static class Histograms {
+
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+        // length is a power of 2
+        private Entry[] table = new Entry[16];
+        private int size;
+
+        @Nullable
+        LatencyHistogram get(@NonNull Object listener) {
+            final Entry[] table = this.table;
+            for (Entry entry = table[index(listener, table.length)]; entry != null; entry = entry.next) {
+                if (entry.get() == listener) {
+                    return entry.histogram;
+                }
+            }
+            return null;
+        }
+
+        void put(@NonNull Object listener, @NonNull LatencyHistogram histogram) {
+
+            expunge();
+
+            if (size >= table.length - (table.length >>> 2)) {
+                resize();
+            }
+
+            final int index = index(listener, table.length);
+            table[index] = new Entry(listener, queue, histogram, table[index]);
+            size += 1;
+        }
+
+        // entries that are enqueued later are not found by #expunge
+        void clear() {
+            Arrays.fill(table, null);
+            size = 0;
+        }
+
+        private void expunge() {
+            Object reference;
+            while ((reference = queue.poll()) != null) {
+                final Entry entry = (Entry) reference;
+                final int index = entry.hash & (table.length - 1);
+                Entry previous = null;
+                for (Entry e = table[index]; e != null; previous = e, e = e.next) {
+                    if (e == entry) {
+                        if (previous == null) {
+                            table[index] = e.next;
+                        } else {
+                            previous.next = e.next;
+                        }
+                        size -= 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void resize() {
+            final Entry[] table = this.table;
+            final Entry[] resized = new Entry[table.length * 2];
+            for (Entry entry : table) {
+                while (entry != null) {
+                    final Entry next = entry.next;
+                    final int index = entry.hash & (resized.length - 1);
+                    entry.next = resized[index];
+                    resized[index] = entry;
+                    entry = next;
+                }
+            }
+            this.table = resized;
+        }
+
+        private static int index(@NonNull Object listener, int length) {
+            return System.identityHashCode(listener) & (length - 1);
+        }
+    }
+
+    private static class Entry extends WeakReference<Object> {
+
+        final int hash;
+        final LatencyHistogram histogram;
+
+        Entry next;
+
+        Entry(
+                @NonNull Object listener,
+                @NonNull ReferenceQueue<Object> queue,
+                @NonNull LatencyHistogram histogram,
+                @Nullable Entry next) {
+            super(listener, queue);
+            this.hash = System.identityHashCode(listener);
+            this.histogram = histogram;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.noties.listeners;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a listener interface, so `listeners-compiler` annotation processor generates
+ * a dispatcher for it: a class named `{InterfaceName}Dispatcher` (nested interfaces are named
+ * `{Outer}_{Inner}Dispatcher`) in the same package that implements this interface and
+ * delivers each call to every element of a {@link Listeners}:
+ * <pre>
+ * &#64;Dispatchable
+ * interface MyListener {
+ *     void onChanged(int value);
+ * }
+ *
+ * final MyListener dispatcher = new MyListenerDispatcher(listeners);
+ * dispatcher.onChanged(42);
+ * </pre>
+ * Generated methods iterate {@link Listeners#begin()} and call interface method directly (no actions,
+ * arrays or reflection are involved). If a listener throws, iteration is finished with {@link Listeners#end()}
+ * before the exception is propagated.
+ * <p>
+ * All methods of an annotated interface (including inherited ones) must return `void`
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Dispatchable {
+}
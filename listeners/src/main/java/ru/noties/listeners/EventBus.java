@@ -0,0 +1,58 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Typed event bus built on top of {@link Listeners}. Subscribers are registered for an event type
+ * and {@link #post(Object)} delivers an event to subscribers of its class and all its supertypes
+ * (superclasses and interfaces). Types to be notified are resolved once for each event class and cached,
+ * so posting is a single map lookup and iteration (without copying) of underlying {@link Listeners}.
+ * <p>
+ * Subscribers of each type are stored in own {@link Listeners}, so all modifications whilst posting
+ * (including unregistering a subscriber from own callback) and nested posting are handled the same way.
+ * Order of delivery: subscribers of event class, then of its superclasses and then of interfaces.
+ * <p>
+ * Instance is aimed for use in one thread (the same as {@link Listeners#create()}).
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class EventBus {
+
+    /**
+     * Factory method to create an instance of {@link EventBus}
+     *
+     * @return an instance of {@link EventBus}
+     */
+    @NonNull
+    public static EventBus create() {
+        return new EventBusImpl();
+    }
+
+    public interface Subscriber<E> {
+        void onEvent(@NonNull E event);
+    }
+
+    /**
+     * Registers a subscriber for events of specified type (and its subtypes)
+     *
+     * @param type       of events
+     * @param subscriber to be notified
+     * @return {@link Listeners.Registration} that unregisters this subscriber
+     */
+    @NonNull
+    public abstract <E> Listeners.Registration register(@NonNull Class<E> type, @NonNull Subscriber<? super E> subscriber);
+
+    /**
+     * Unregisters a subscriber that was registered for specified type
+     *
+     * @param type       of events
+     * @param subscriber to remove
+     */
+    public abstract <E> void unregister(@NonNull Class<E> type, @NonNull Subscriber<? super E> subscriber);
+
+    /**
+     * Delivers an event to subscribers of its class and all its supertypes
+     *
+     * @param event to deliver
+     */
+    public abstract void post(@NonNull Object event);
+}
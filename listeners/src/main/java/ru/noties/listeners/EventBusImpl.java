@@ -0,0 +1,112 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class EventBusImpl extends EventBus {
+
+    private static final Listeners.BiAction<Subscriber<Object>, Object> DELIVER = new Listeners.BiAction<Subscriber<Object>, Object>() {
+        @Override
+        public void apply(@NonNull Subscriber<Object> subscriber, Object event) {
+            subscriber.onEvent(event);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static final ListenersImpl<Subscriber<Object>>[] EMPTY = (ListenersImpl<Subscriber<Object>>[]) new ListenersImpl<?>[0];
+
+    // subscribers registered for exact type
+    private final Map<Class<?>, ListenersImpl<Subscriber<Object>>> subscribers = new HashMap<>();
+
+    // event class -> subscribers of the class and all its supertypes. Cleared when a type
+    // receives its first subscriber (listeners of a type are never removed, so
+    // unregistering does not affect resolved entries)
+    private final Map<Class<?>, ListenersImpl<Subscriber<Object>>[]> resolved = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    @Override
+    public <E> Listeners.Registration register(@NonNull Class<E> type, @NonNull Subscriber<? super E> subscriber) {
+
+        ListenersImpl<Subscriber<Object>> listeners = subscribers.get(type);
+        if (listeners == null) {
+            listeners = new ListenersImpl<>(0);
+            subscribers.put(type, listeners);
+            resolved.clear();
+        }
+
+        return listeners.register((Subscriber<Object>) subscriber);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <E> void unregister(@NonNull Class<E> type, @NonNull Subscriber<? super E> subscriber) {
+        final ListenersImpl<Subscriber<Object>> listeners = subscribers.get(type);
+        if (listeners != null) {
+            listeners.remove((Subscriber<Object>) subscriber);
+        }
+    }
+
+    @Override
+    public void post(@NonNull Object event) {
+
+        final Class<?> type = event.getClass();
+
+        ListenersImpl<Subscriber<Object>>[] array = resolved.get(type);
+        if (array == null) {
+            array = resolve(type);
+            resolved.put(type, array);
+        }
+
+        for (ListenersImpl<Subscriber<Object>> listeners : array) {
+            listeners.dispatch(DELIVER, event);
+        }
+    }
+
+    @NonNull
+    private ListenersImpl<Subscriber<Object>>[] resolve(@NonNull Class<?> type) {
+
+        final List<ListenersImpl<Subscriber<Object>>> list = new ArrayList<>(3);
+
+        for (Class<?> t : hierarchy(type)) {
+            final ListenersImpl<Subscriber<Object>> listeners = subscribers.get(t);
+            if (listeners != null) {
+                list.add(listeners);
+            }
+        }
+
+        return list.toArray(EMPTY);
+    }
+
+    // class, superclasses and then all interfaces (without duplicates)
+    @NonNull
+    private static Set<Class<?>> hierarchy(@NonNull Class<?> type) {
+
+        final Set<Class<?>> classes = new LinkedHashSet<>();
+        final List<Class<?>> interfaces = new ArrayList<>();
+
+        Class<?> c = type;
+        while (c != null) {
+            classes.add(c);
+            Collections.addAll(interfaces, c.getInterfaces());
+            c = c.getSuperclass();
+        }
+
+        // breadth-first, interfaces can extend other interfaces
+        for (int i = 0; i < interfaces.size(); i++) {
+            final Class<?> parent = interfaces.get(i);
+            if (classes.add(parent)) {
+                Collections.addAll(interfaces, parent.getInterfaces());
+            }
+        }
+
+        return classes;
+    }
+}
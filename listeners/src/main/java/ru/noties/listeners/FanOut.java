@@ -0,0 +1,126 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// runs an action for each element on a separate thread (see FanOutExecutor) and waits for all of them
+final class FanOut {
+
+    // waits until all actions have finished (latch is counted down by each one), returns false if
+    // the deadline was reached before that
+    interface Await {
+        boolean await(@NonNull CountDownLatch latch) throws InterruptedException;
+    }
+
+    // timeout in nanoseconds, negative to wait without a deadline
+    static <T> boolean dispatch(
+            @NonNull Listeners<T> listeners,
+            @NonNull Listeners.Action<? super T> action,
+            final long timeout) throws InterruptedException {
+        return dispatch(listeners, action, new Await() {
+            @Override
+            public boolean await(@NonNull CountDownLatch latch) throws InterruptedException {
+                if (timeout < 0L) {
+                    latch.await();
+                    return true;
+                }
+                return latch.await(timeout, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    static <T> boolean dispatch(
+            @NonNull Listeners<T> listeners,
+            @NonNull Listeners.Action<? super T> action,
+            @NonNull Await await) throws InterruptedException {
+
+        // elements are collected on calling thread, actions can modify listeners only if
+        // the instance is thread-safe
+        final List<T> elements = new ArrayList<>(listeners.size());
+        for (T t : listeners.begin()) {
+            elements.add(t);
+        }
+
+        final int size = elements.size();
+        if (size == 0) {
+            return true;
+        }
+
+        final ExecutorService executor = FanOutExecutor.EXECUTOR;
+        final CountDownLatch latch = new CountDownLatch(size);
+        final List<Future<?>> futures = new ArrayList<>(size);
+
+        for (T t : elements) {
+            futures.add(executor.submit(new Task<>(action, t, latch)));
+        }
+
+        final boolean completed;
+
+        try {
+            completed = await.await(latch);
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        List<Throwable> failures = null;
+
+        for (Future<?> future : futures) {
+
+            // interrupt actions that have not finished before the deadline
+            if (!completed
+                    && future.cancel(true)) {
+                continue;
+            }
+
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failures == null) {
+                    failures = new ArrayList<>(3);
+                }
+                failures.add(e.getCause());
+            }
+        }
+
+        if (failures != null) {
+            throw new FanOutException(failures, size);
+        }
+
+        return completed;
+    }
+
+    private FanOut() {
+    }
+
+    private static class Task<T> implements Runnable {
+
+        private final Listeners.Action<? super T> action;
+        private final T t;
+        private final CountDownLatch latch;
+
+        Task(@NonNull Listeners.Action<? super T> action, @NonNull T t, @NonNull CountDownLatch latch) {
+            this.action = action;
+            this.t = t;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                action.apply(t);
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+}
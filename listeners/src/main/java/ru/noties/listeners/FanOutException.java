@@ -0,0 +1,34 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link Listeners#fanOut(Listeners.Action)} if actions have thrown. Holds all failures,
+ * the first one is also the cause of this exception and others are added as suppressed
+ */
+@SuppressWarnings("WeakerAccess")
+public class FanOutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Throwable> failures;
+
+    FanOutException(@NonNull List<Throwable> failures, int total) {
+        super(failures.size() + " of " + total + " actions have failed", failures.get(0));
+        this.failures = Collections.unmodifiableList(failures);
+        for (int i = 1, size = failures.size(); i < size; i++) {
+            addSuppressed(failures.get(i));
+        }
+    }
+
+    /**
+     * @return all failures in order of elements
+     */
+    @NonNull
+    public List<Throwable> failures() {
+        return failures;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executor for fan-out dispatch (see FanOut). Runtimes before Java 21 use a cached pool of
+// daemon threads. On Java 21+ this class is replaced with the one from `src/main/java21`
+// (multi-release jar entry) that starts a virtual thread for each action
+final class FanOutExecutor {
+
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            final Thread thread = new Thread(runnable, "listeners-fan-out-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private FanOutExecutor() {
+    }
+}
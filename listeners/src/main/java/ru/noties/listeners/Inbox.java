@@ -0,0 +1,104 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Accepts modifications and notifications of a {@link Listeners} instance that is confined to
+ * a single (owner) thread from any thread. Commands are put into a lock-free queue (adding a command
+ * does not block and takes a single atomic operation) and are applied on the owner thread
+ * in order of addition with {@link #drain()}, so underlying {@link Listeners} is not modified
+ * concurrently and its single-threaded operations stay as is.
+ * <p>
+ * {@link #drain()} can be called at any point of the owner thread (for example, before iterating) or
+ * scheduled automatically with an {@link Executor} that executes on the owner thread (see {@link #create(Listeners, Executor)}).
+ * In the latter case a drain is scheduled once for a batch of commands (when a command is added
+ * to an empty inbox), not for each command.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class Inbox<T> {
+
+    /**
+     * Factory method to create an {@link Inbox} that is drained explicitly with {@link #drain()}
+     *
+     * @param listeners to apply commands to, must be accessed only on the owner thread
+     * @return an instance of {@link Inbox}
+     */
+    @NonNull
+    public static <T> Inbox<T> create(@NonNull Listeners<T> listeners) {
+        return new InboxImpl<>(listeners, null);
+    }
+
+    /**
+     * Factory method to create an {@link Inbox} that schedules {@link #drain()} with specified executor
+     * when a command is added to an empty inbox. Explicit {@link #drain()} is still allowed.
+     * An executor can run a drain inline (on calling thread). Then commands that follow a throwing
+     * notification are drained by the same call (not recursively) and the first exception is thrown
+     * after that.
+     *
+     * @param listeners to apply commands to, must be accessed only on the owner thread
+     * @param owner     executor that executes on the owner thread (for example, `handler::post` on Android)
+     * @return an instance of {@link Inbox}
+     */
+    @NonNull
+    public static <T> Inbox<T> create(@NonNull Listeners<T> listeners, @NonNull Executor owner) {
+        return new InboxImpl<>(listeners, owner);
+    }
+
+    /**
+     * Queues {@link Listeners#add(Object)}, can be called from any thread
+     *
+     * @param t to add
+     */
+    public abstract void add(@NonNull T t);
+
+    /**
+     * Queues {@link Listeners#register(Object)}, can be called from any thread. Returned
+     * {@link Listeners.Registration} can be removed from any thread as well (removal is queued)
+     *
+     * @param t to add
+     * @return {@link Listeners.Registration} to remove added element
+     */
+    @NonNull
+    public abstract Listeners.Registration register(@NonNull T t);
+
+    /**
+     * Queues {@link Listeners#remove(Object)}, can be called from any thread
+     *
+     * @param t to remove
+     */
+    public abstract void remove(@NonNull T t);
+
+    /**
+     * Queues {@link Listeners#forEach(Listeners.Action)}, can be called from any thread
+     *
+     * @param action to apply to each element
+     */
+    public abstract void forEach(@NonNull Listeners.Action<? super T> action);
+
+    /**
+     * Queues {@link Listeners#dispatch(Listeners.BiAction, Object)}, can be called from any thread
+     *
+     * @param action   to apply to each element
+     * @param argument to pass to an action
+     */
+    public abstract <A> void dispatch(@NonNull Listeners.BiAction<? super T, ? super A> action, A argument);
+
+    /**
+     * Applies all queued commands (including ones added whilst draining) in order of addition.
+     * Must be called on the owner thread. If a notification throws, commands that follow it
+     * are kept and applied by the next drain. A drain never waits for producers, a command that
+     * is being added concurrently (not linked yet) can be left to the next drain (an inbox with
+     * an executor schedules it).
+     *
+     * @return number of applied commands
+     */
+    public abstract int drain();
+
+    /**
+     * @return underlying {@link Listeners}, must be accessed only on the owner thread
+     */
+    @NonNull
+    public abstract Listeners<T> listeners();
+}
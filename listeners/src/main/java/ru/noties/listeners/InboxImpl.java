@@ -0,0 +1,277 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Commands are stored in an intrusive multi-producer single-consumer linked queue. A producer swaps
+ * the tail (single atomic operation) and then links previous tail to own node, the consumer
+ * follows links from the head (a node that has been consumed last), so it never contends with producers.
+ * <p>
+ * Number of commands that are queued (or are being queued) is counted separately, whoever increments it
+ * from 0 schedules a drain. It also allows the consumer to tell an empty queue from a command that
+ * has swapped the tail, but has not been linked yet. The consumer does not wait for such a command
+ * (it would block the owner thread until a producer thread is scheduled again), it leaves
+ * the command counted and schedules another drain.
+ * <p>
+ * An owner executor can run a drain inline (on calling thread). A drain that is scheduled whilst
+ * a scheduled drain is executed is not run recursively, it is repeated by a loop (see #runScheduled)
+ */
+class InboxImpl<T> extends Inbox<T> {
+
+    private static final int ADD = 0;
+    private static final int REGISTER = 1;
+    private static final int UNREGISTER = 2;
+    private static final int REMOVE = 3;
+    private static final int FOR_EACH = 4;
+    private static final int DISPATCH = 5;
+
+    private final Listeners<T> listeners;
+    private final Executor owner;
+
+    private final AtomicReference<Node> tail;
+    private final AtomicInteger pending;
+
+    private final Runnable drain;
+
+    // accessed only by the consumer
+    private Node head;
+
+    // accessed only by the consumer, set whilst a scheduled drain is executed
+    private boolean draining;
+
+    // a drain was scheduled (executed inline) whilst draining
+    private boolean redrain;
+
+    InboxImpl(@NonNull Listeners<T> listeners, @Nullable Executor owner) {
+        this.listeners = listeners;
+        this.owner = owner;
+        this.head = new Node(ADD, null, null);
+        this.tail = new AtomicReference<>(head);
+        this.pending = new AtomicInteger();
+        this.drain = new Runnable() {
+            @Override
+            public void run() {
+                runScheduled();
+            }
+        };
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        enqueue(new Node(ADD, t, null));
+    }
+
+    @NonNull
+    @Override
+    public Listeners.Registration register(@NonNull T t) {
+        final RegistrationImpl registration = new RegistrationImpl(t);
+        enqueue(new Node(REGISTER, registration, null));
+        return registration;
+    }
+
+    @Override
+    public void remove(@NonNull T t) {
+        enqueue(new Node(REMOVE, t, null));
+    }
+
+    @Override
+    public void forEach(@NonNull Listeners.Action<? super T> action) {
+        enqueue(new Node(FOR_EACH, action, null));
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull Listeners.BiAction<? super T, ? super A> action, A argument) {
+        enqueue(new Node(DISPATCH, action, argument));
+    }
+
+    @Override
+    public int drain() {
+
+        int drained = 0;
+
+        // applied commands that are not yet subtracted from `pending`
+        int applied = 0;
+
+        try {
+            while (true) {
+
+                final Node next = head.next;
+
+                if (next != null) {
+                    // consumed node becomes the head
+                    head = next;
+                    applied += 1;
+                    apply(next);
+                    continue;
+                }
+
+                final int remaining = pending.addAndGet(-applied);
+                drained += applied;
+                applied = 0;
+
+                // a producer has swapped the tail, but has not linked its node yet. The command stays
+                // counted, so producers do not schedule a drain until the next one has applied it
+                if (remaining > 0
+                        && owner != null) {
+                    owner.execute(drain);
+                }
+
+                return drained;
+            }
+        } finally {
+            // a notification has thrown, commands that are left must be drained later
+            if (applied > 0
+                    && pending.addAndGet(-applied) > 0
+                    && owner != null) {
+                owner.execute(drain);
+            }
+        }
+    }
+
+    // a notification that throws leaves the rest of commands to the next drain, with an inline executor
+    // that would be a nested call for each throwing command, so they are drained by this loop and
+    // the first exception is thrown after that (the rest are suppressed)
+    private void runScheduled() {
+
+        if (draining) {
+            redrain = true;
+            return;
+        }
+
+        draining = true;
+
+        RuntimeException exception = null;
+
+        try {
+            do {
+                redrain = false;
+                try {
+                    drain();
+                } catch (RuntimeException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            } while (redrain);
+        } finally {
+            draining = false;
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Listeners<T> listeners() {
+        return listeners;
+    }
+
+    private void enqueue(@NonNull Node node) {
+
+        final Node previous = tail.getAndSet(node);
+
+        // counted before linking, so the consumer never observes less commands than linked
+        final boolean schedule = pending.getAndIncrement() == 0;
+
+        previous.next = node;
+
+        if (schedule
+                && owner != null) {
+            owner.execute(drain);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(@NonNull Node node) {
+
+        // node stays in the queue as the head, so it must not hold references
+        final Object value = node.value;
+        final Object argument = node.argument;
+        node.value = null;
+        node.argument = null;
+
+        switch (node.type) {
+
+            case ADD:
+                listeners.add((T) value);
+                break;
+
+            case REGISTER: {
+                final RegistrationImpl registration = (RegistrationImpl) value;
+                registration.registration = listeners.register((T) registration.element);
+                registration.element = null;
+                break;
+            }
+
+            case UNREGISTER: {
+                final Listeners.Registration registration = ((RegistrationImpl) value).registration;
+                if (registration != null) {
+                    registration.remove();
+                }
+                break;
+            }
+
+            case REMOVE:
+                listeners.remove((T) value);
+                break;
+
+            case FOR_EACH:
+                listeners.forEach((Listeners.Action<? super T>) value);
+                break;
+
+            case DISPATCH:
+                listeners.dispatch((Listeners.BiAction<? super T, Object>) value, argument);
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown command: " + node.type);
+        }
+    }
+
+    private static class Node {
+
+        final int type;
+
+        Object value;
+        Object argument;
+
+        volatile Node next;
+
+        Node(int type, @Nullable Object value, @Nullable Object argument) {
+            this.type = type;
+            this.value = value;
+            this.argument = argument;
+        }
+    }
+
+    // removal is queued after own registration (commands are applied in order)
+    private class RegistrationImpl implements Listeners.Registration {
+
+        // accessed only by the consumer
+        Object element;
+        Listeners.Registration registration;
+
+        RegistrationImpl(@NonNull Object element) {
+            this.element = element;
+        }
+
+        @Override
+        public void remove() {
+            enqueue(new Node(UNREGISTER, this, null));
+        }
+
+        @Override
+        public void close() {
+            remove();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Listeners indexed by a key (for example, an id of an entity), so a notification for a key is
+ * delivered only to listeners of this key (a single map lookup) instead of iterating all listeners
+ * and filtering. Listeners of each key are stored in own {@link Listeners}, so modifications during
+ * notification (including removal of a listener from own callback) and nested notifications are handled
+ * the same way. A key is removed when it has no listeners left (and is not being notified), so keys
+ * that are not listened to anymore do not retain memory.
+ * <p>
+ * Keys are compared with `equals` and `hashCode`. Instance is aimed for use in one thread
+ * (the same as {@link Listeners#create()}).
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class KeyedListeners<K, T> {
+
+    /**
+     * Factory method to create an instance of {@link KeyedListeners}
+     *
+     * @return an instance of {@link KeyedListeners}
+     */
+    @NonNull
+    public static <K, T> KeyedListeners<K, T> create() {
+        return new KeyedListenersImpl<>();
+    }
+
+    /**
+     * Adds element for specified key (at the end)
+     *
+     * @param key of element
+     * @param t   to add
+     * @see Listeners#add(Object)
+     */
+    public abstract void add(@NonNull K key, @NonNull T t);
+
+    /**
+     * Adds element for specified key and returns a {@link Listeners.Registration} that removes it
+     *
+     * @param key of element
+     * @param t   to add
+     * @return {@link Listeners.Registration} to remove added element
+     * @see Listeners#register(Object)
+     */
+    @NonNull
+    public abstract Listeners.Registration register(@NonNull K key, @NonNull T t);
+
+    /**
+     * Removes element that was added for specified key
+     *
+     * @param key of element
+     * @param t   to remove
+     * @see Listeners#remove(Object)
+     */
+    public abstract void remove(@NonNull K key, @NonNull T t);
+
+    /**
+     * Removes all elements of specified key
+     *
+     * @param key to remove elements of
+     * @see Listeners#clear()
+     */
+    public abstract void clear(@NonNull K key);
+
+    /**
+     * Removes all elements
+     */
+    public abstract void clear();
+
+    /**
+     * @param key to count elements of
+     * @return number of elements added for specified key
+     */
+    public abstract int size(@NonNull K key);
+
+    /**
+     * @return unmodifiable view of keys that have elements (or are being notified)
+     */
+    @NonNull
+    public abstract Set<K> keys();
+
+    /**
+     * Applies an action to each element of specified key
+     *
+     * @param key    of elements to notify
+     * @param action to apply
+     * @see Listeners#forEach(Listeners.Action)
+     */
+    public abstract void forEach(@NonNull K key, @NonNull Listeners.Action<? super T> action);
+
+    /**
+     * Applies an action to each element of specified key with an argument
+     *
+     * @param key      of elements to notify
+     * @param action   to apply
+     * @param argument to pass to an action
+     * @see Listeners#dispatch(Listeners.BiAction, Object)
+     */
+    public abstract <A> void dispatch(@NonNull K key, @NonNull Listeners.BiAction<? super T, ? super A> action, A argument);
+}
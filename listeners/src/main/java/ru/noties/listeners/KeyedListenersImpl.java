@@ -0,0 +1,148 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class KeyedListenersImpl<K, T> extends KeyedListeners<K, T> {
+
+    // a bucket is created with the first element of a key and removed when it becomes empty, but
+    // not whilst it is iterating (elements can be added during iteration). A bucket that has been
+    // removed is never reused, so it is removed from the map only if it is still mapped to own key
+    private final Map<K, ListenersImpl<T>> buckets = new HashMap<>();
+
+    @Override
+    public void add(@NonNull K key, @NonNull T t) {
+        bucket(key).add(t);
+    }
+
+    @NonNull
+    @Override
+    public Listeners.Registration register(@NonNull K key, @NonNull T t) {
+        final ListenersImpl<T> bucket = bucket(key);
+        return new RegistrationImpl(key, bucket, bucket.register(t));
+    }
+
+    @Override
+    public void remove(@NonNull K key, @NonNull T t) {
+        final ListenersImpl<T> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(t);
+            reclaim(key, bucket);
+        }
+    }
+
+    @Override
+    public void clear(@NonNull K key) {
+        final ListenersImpl<T> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.clear();
+            reclaim(key, bucket);
+        }
+    }
+
+    @Override
+    public void clear() {
+
+        // clear of a bucket can finish iterations that are currently active
+        final List<ListenersImpl<T>> buckets = new ArrayList<>(this.buckets.values());
+        this.buckets.clear();
+
+        for (ListenersImpl<T> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    @Override
+    public int size(@NonNull K key) {
+        final ListenersImpl<T> bucket = buckets.get(key);
+        return bucket != null
+                ? bucket.size()
+                : 0;
+    }
+
+    @NonNull
+    @Override
+    public Set<K> keys() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+
+    @Override
+    public void forEach(@NonNull K key, @NonNull Listeners.Action<? super T> action) {
+
+        final ListenersImpl<T> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        try {
+            bucket.forEach(action);
+        } finally {
+            // elements could have removed self
+            reclaim(key, bucket);
+        }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull K key, @NonNull Listeners.BiAction<? super T, ? super A> action, A argument) {
+
+        final ListenersImpl<T> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        try {
+            bucket.dispatch(action, argument);
+        } finally {
+            // elements could have removed self
+            reclaim(key, bucket);
+        }
+    }
+
+    @NonNull
+    private ListenersImpl<T> bucket(@NonNull K key) {
+        ListenersImpl<T> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ListenersImpl<>(0);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private void reclaim(@NonNull K key, @NonNull ListenersImpl<T> bucket) {
+        if (bucket.size() == 0
+                && !bucket.isIterating()
+                && buckets.get(key) == bucket) {
+            buckets.remove(key);
+        }
+    }
+
+    private class RegistrationImpl implements Listeners.Registration {
+
+        private final K key;
+        private final ListenersImpl<T> bucket;
+        private final Listeners.Registration registration;
+
+        RegistrationImpl(@NonNull K key, @NonNull ListenersImpl<T> bucket, @NonNull Listeners.Registration registration) {
+            this.key = key;
+            this.bucket = bucket;
+            this.registration = registration;
+        }
+
+        @Override
+        public void remove() {
+            registration.remove();
+            reclaim(key, bucket);
+        }
+
+        @Override
+        public void close() {
+            remove();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.noties.listeners;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies (in nanoseconds) with fixed memory footprint and allocation-free recording.
+ * Values are grouped by magnitude (power of 2) and each magnitude is split into 16 linear sub-buckets
+ * (the same approach as HdrHistogram), so a reported value is within ~6% of recorded one.
+ * Values smaller than 16 are recorded exactly.
+ * <p>
+ * Not thread-safe
+ */
+@SuppressWarnings("WeakerAccess")
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // magnitudes from SUB_BUCKET_BITS to 62 plus exact values below SUB_BUCKETS
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count;
+    private long max;
+
+    /**
+     * @param value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+
+        if (value < 0L) {
+            value = 0L;
+        }
+
+        counts[index(value)] += 1;
+        count += 1;
+
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the largest recorded value (exact) or 0 if nothing was recorded
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * @param percentile in range [0, 100]
+     * @return the largest value (with precision of this histogram) that is greater than or equal
+     * to specified percentage of recorded values or 0 if nothing was recorded
+     */
+    public long valueAtPercentile(double percentile) {
+
+        if (count == 0L) {
+            return 0L;
+        }
+
+        final double p = Math.max(0.0D, Math.min(100.0D, percentile));
+        final long target = Math.max(1L, (long) Math.ceil(count * p / 100.0D));
+
+        long total = 0L;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts[i];
+            if (total >= target) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0L);
+        count = 0L;
+        max = 0L;
+    }
+
+    static int index(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // position of the highest bit (>= SUB_BUCKET_BITS)
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the largest value that is recorded in a bucket
+    static long highestValue(int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = (index / SUB_BUCKETS) - 1;
+        final long sub = index % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -1,14 +1,23 @@
 package ru.noties.listeners;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple data structure aimed at storing listeners or observers, that allow adding/removal of
- * elements whilst iterating without copying underlying collection. This comes at a cost: only one single
- * iteration can happen at a time (no nested ones). So, if your listener doesn\'t just listen but also modifies
- * state so another iteration/notification must happen, this collection won\'t do you any good.
+ * elements whilst iterating without copying underlying collection. Iterations can be nested, so a listener
+ * can trigger another iteration/notification (each nesting level keeps own cached Iterator).
  * Anyway for a simple collection of listeners that operate inside one thread this could be a good
- * solution.
+ * solution. If listeners are added, removed or notified from different threads, use {@link #createConcurrent()}.
  * <p>
  * Please note that as this data structure keeps track of iteration state, methods {@link #begin()} and {@link #end()}
  * must be explicitly called. However if you are planning on iterating on the whole collection calling
@@ -19,20 +28,35 @@ import android.support.annotation.NonNull;
 public abstract class Listeners<T> {
 
     /**
-     * Factory method to create an instance of {@link Listeners} with default capacity
+     * Default number of elements that are processed sequentially by {@link #parallelDispatch(Action)}
+     */
+    public static final int PARALLEL_DISPATCH_THRESHOLD = 1024;
+
+    /**
+     * Default maximum number of queued notifications of an instance created with {@link #createQueuedDispatch()}
+     */
+    public static final int DEFAULT_MAX_QUEUED = 64;
+
+    // maximum size of a collection passed to #removeAll or #retainAll that is searched linearly
+    private static final int BULK_LINEAR_LOOKUP_SIZE = 8;
+
+    /**
+     * Factory method to create an instance of {@link Listeners} with default capacity. Nothing is allocated
+     * until the first element is added, one or two elements are stored in an array of exact size, so
+     * an instance that is rarely listened to takes minimum of memory
      *
      * @return an instance of {@link Listeners}
      * @see #create(int)
      */
     @NonNull
     public static <T> Listeners<T> create() {
-        return create(10);
+        return create(0);
     }
 
     /**
      * Factory method to obtain an instance of {@link Listeners} with specified capacity.
      *
-     * @param initialCapacity initial capacity for underlying collection
+     * @param initialCapacity initial capacity for underlying collection, `0` to allocate lazily (see {@link #create()})
      * @return an instance of {@link Listeners}
      */
     @SuppressWarnings("SameParameterValue")
@@ -41,6 +65,194 @@ public abstract class Listeners<T> {
         return new ListenersImpl<>(initialCapacity);
     }
 
+    /**
+     * Factory method to create an instance of {@link Listeners} with default capacity that defers removal
+     *
+     * @return an instance of {@link Listeners}
+     * @see #createDeferredRemoval(int)
+     */
+    @NonNull
+    public static <T> Listeners<T> createDeferredRemoval() {
+        return createDeferredRemoval(0);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link Listeners} with specified capacity that defers removal.
+     * When {@link #remove(Object)} is called whilst iterating, removed element is just marked (no other
+     * elements are shifted) and underlying collection is compacted once (in a single pass) when
+     * iteration finishes (naturally or with {@link #end()}). So, if a lot of elements remove self during
+     * iteration, removal takes constant time instead of linear. Semantics of iteration and {@link #size()}
+     * are the same as for {@link #create(int)}.
+     * <p>
+     * Please note that if iteration is exited early and {@link #end()} is not called,
+     * collection won\'t be compacted
+     *
+     * @param initialCapacity initial capacity for underlying collection
+     * @return an instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createDeferredRemoval(int initialCapacity) {
+        return new ListenersImpl<>(initialCapacity, true);
+    }
+
+    /**
+     * Factory method to create an instance of {@link Listeners} with default capacity that holds
+     * elements via weak references
+     *
+     * @return an instance of {@link Listeners}
+     * @see #createWeak(int)
+     */
+    @NonNull
+    public static <T> Listeners<T> createWeak() {
+        return createWeak(0);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link Listeners} with specified capacity that holds
+     * elements via weak references, so an element that is not referenced elsewhere is removed automatically
+     * after it has been garbage collected. Collected elements are purged in bulk (without scanning)
+     * before adding and iterating, until then they are skipped by iteration. {@link #size()} purges
+     * as well, so it does not count collected elements and takes constant time (except during
+     * {@link #parallelDispatch(Action)}, when nothing can be removed, so present elements are counted
+     * in linear time). Semantics of modifications during iteration are the same as for {@link #create(int)}.
+     * <p>
+     * Please note that an element must be strongly referenced elsewhere (for example, an anonymous
+     * listener that is referenced only by this collection will be removed after next garbage collection)
+     *
+     * @param initialCapacity initial capacity for underlying collection
+     * @return an instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createWeak(int initialCapacity) {
+        return new WeakListenersImpl<>(initialCapacity);
+    }
+
+    /**
+     * Factory method to create an instance of {@link Listeners} with default capacity that contains
+     * each element at most once
+     *
+     * @return an instance of {@link Listeners}
+     * @see #createUnique(int)
+     */
+    @NonNull
+    public static <T> Listeners<T> createUnique() {
+        return createUnique(0);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link Listeners} with specified capacity that contains
+     * each element at most once (elements are compared by identity). Elements are indexed by identity hash,
+     * so {@link #contains(Object)}, {@link #add(Object)} of an element that is already added (no op)
+     * and {@link #remove(Object)} do not scan elements. {@link #register(Object)} of an already added
+     * element returns its existing {@link Registration}. Order of elements and semantics of modifications
+     * during iteration are the same as for {@link #create(int)}.
+     *
+     * @param initialCapacity initial capacity for underlying collection
+     * @return an instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createUnique(int initialCapacity) {
+        return new UniqueListenersImpl<>(initialCapacity);
+    }
+
+    /**
+     * Factory method to create an instance of {@link Listeners} that queues re-entrant notifications
+     * with {@link #DEFAULT_MAX_QUEUED} limit
+     *
+     * @return an instance of {@link Listeners}
+     * @see #createQueuedDispatch(int)
+     */
+    @NonNull
+    public static <T> Listeners<T> createQueuedDispatch() {
+        return createQueuedDispatch(DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link Listeners} that queues re-entrant notifications.
+     * If {@link #forEach(Action)} or {@link #dispatch(BiAction, Object)} is called whilst one of them
+     * is delivering (for example, a listener triggers a notification), requested notification is not started
+     * as a nested iteration, but is queued and started after current one has finished. So each notification
+     * is delivered to all listeners before the next one starts (in order of requests) and stack depth
+     * does not depend on how many notifications listeners trigger. Queue is allocated once (with this instance).
+     * Iteration with {@link #begin()} is never queued.
+     * <p>
+     * A notification that throws discards all queued ones. An {@link IllegalStateException} is thrown
+     * by a call that exceeds `maxQueued`, which happens if more than `maxQueued` notifications are pending
+     * or if notifications trigger each other more than `maxQueued` times in a row (most likely a feedback loop
+     * between listeners)
+     *
+     * @param maxQueued maximum number of pending notifications and of notifications triggered in a row
+     * @return an instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createQueuedDispatch(int maxQueued) {
+        return new QueuedDispatchListenersImpl<>(maxQueued);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link Listeners} that replays last notifications to
+     * a newly added element (for example, notifications of a current state). Last `replay` notifications
+     * delivered with {@link #forEach(Action)}, {@link #dispatch(BiAction, Object)} or {@link #parallelDispatch(Action)}
+     * (actions and arguments) are kept and are applied to an element (in order they were started) when it is added,
+     * before it is added to this collection.
+     * <p>
+     * A notification is not replayed whilst it is delivering, so an element that is added during delivery
+     * receives it once (via iteration). A notification whose action has thrown is kept (it is still
+     * the latest one, so a previous notification is not replayed instead of it).
+     * Only the methods above are sticky: notifications delivered with {@link #forEachIncrementally(Action)},
+     * {@link #dispatchAsync(Executor, Action)} or by iterating with {@link #begin()}
+     * (including {@link #multicaster(Class)} and {@link #fanOut(Action)}) are not kept. Please note that kept
+     * arguments are strongly referenced until replaced by next notifications
+     *
+     * @param replay number of last notifications to keep
+     * @return an instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createSticky(int replay) {
+        return new StickyListenersImpl<>(replay);
+    }
+
+    /**
+     * Factory method to create an instance of {@link PriorityListeners} with default capacity
+     *
+     * @return an instance of {@link PriorityListeners}
+     * @see #createPriority(int)
+     */
+    @NonNull
+    public static <T> PriorityListeners<T> createPriority() {
+        return createPriority(0);
+    }
+
+    /**
+     * Factory method to obtain an instance of {@link PriorityListeners} with specified capacity.
+     * Elements are kept ordered by priority (see {@link PriorityListeners#add(Object, int)}),
+     * so listeners that must be notified first do not require a separate instance of {@link Listeners}.
+     *
+     * @param initialCapacity initial capacity for underlying collection
+     * @return an instance of {@link PriorityListeners}
+     */
+    @NonNull
+    public static <T> PriorityListeners<T> createPriority(int initialCapacity) {
+        return new PriorityListenersImpl<>(initialCapacity);
+    }
+
+    /**
+     * Factory method to obtain a thread-safe instance of {@link Listeners}. Adding and removal
+     * do not block (underlying array is replaced with compare-and-set) and any number of threads
+     * can iterate at the same time without locking or copying. Semantics of modifications
+     * during iteration are the same as for {@link #create()}: an element removed from any thread
+     * won\'t be delivered if not already visited and an added one will be delivered if iterating normally.
+     * <p>
+     * Iteration state is kept for each thread, so {@link #isIterating()} and {@link #end()}
+     * refer to iterations started by the calling thread
+     *
+     * @return a thread-safe instance of {@link Listeners}
+     */
+    @NonNull
+    public static <T> Listeners<T> createConcurrent() {
+        return new ConcurrentListenersImpl<>();
+    }
+
     /**
      * Adds element to this collection (at the end). If iteration is currently happening this newly
      * added element will be included in it.
@@ -49,6 +261,18 @@ public abstract class Listeners<T> {
      */
     public abstract void add(@NonNull T t);
 
+    /**
+     * Adds element to this collection (the same as {@link #add(Object)}) and returns a {@link Registration}
+     * that can be used to remove it. Unlike {@link #remove(Object)}, removal via {@link Registration} does not
+     * search for the element, so it takes constant time (amortized) and removes exactly this addition
+     * even if the same element was added multiple times.
+     *
+     * @param t to add
+     * @return {@link Registration} to remove added element
+     */
+    @NonNull
+    public abstract Registration register(@NonNull T t);
+
     /**
      * Removes element from this collection. If iteration is currently happening this element (if not already
      * visited) won\'t be delivered to iteration. Currently active element in iteration can safely
@@ -58,6 +282,68 @@ public abstract class Listeners<T> {
      */
     public abstract void remove(@NonNull T t);
 
+    /**
+     * @param t element to check
+     * @return if this collection contains specified element. Linear search unless an instance
+     * is created with {@link #createUnique()}
+     */
+    public abstract boolean contains(@NonNull T t);
+
+    /**
+     * Adds all elements of specified collection (in its iteration order), the same as calling
+     * {@link #add(Object)} for each one, but underlying storage grows at most once
+     *
+     * @param collection elements to add
+     */
+    public abstract void addAll(@NonNull Collection<? extends T> collection);
+
+    /**
+     * Removes all elements that satisfy specified predicate in a single pass (elements are shifted
+     * at most once, no matter how many are removed). Can be called whilst iterating, rules are the same
+     * as for {@link #remove(Object)}. If predicate throws, nothing is removed.
+     * <p>
+     * Predicate must not modify this collection. For a thread-safe instance ({@link #createConcurrent()})
+     * predicate can be called more than once for an element if this instance is modified concurrently
+     *
+     * @param predicate to test each element with
+     * @return number of removed elements
+     */
+    public abstract int removeIf(@NonNull Predicate<? super T> predicate);
+
+    /**
+     * Removes all elements (including all additions of the same element) that are contained
+     * in specified collection, see {@link #removeIf(Predicate)}. A large collection that is not
+     * a {@link Set} is copied to a {@link HashSet} first, so membership check takes constant time
+     *
+     * @param collection elements to remove
+     * @return number of removed elements
+     */
+    public int removeAll(@NonNull Collection<?> collection) {
+        final Collection<?> lookup = lookup(collection);
+        return removeIf(new Predicate<T>() {
+            @Override
+            public boolean test(@NonNull T t) {
+                return lookup.contains(t);
+            }
+        });
+    }
+
+    /**
+     * Removes all elements that are not contained in specified collection, see {@link #removeAll(Collection)}
+     *
+     * @param collection elements to keep
+     * @return number of removed elements
+     */
+    public int retainAll(@NonNull Collection<?> collection) {
+        final Collection<?> lookup = lookup(collection);
+        return removeIf(new Predicate<T>() {
+            @Override
+            public boolean test(@NonNull T t) {
+                return !lookup.contains(t);
+            }
+        });
+    }
+
     /**
      * Clears underlying data structure
      */
@@ -77,21 +363,288 @@ public abstract class Listeners<T> {
      * Starts iteration. {@code for (Element e: list.begin()) {}}. Please note, that if you exit
      * iteration early (with a `break` or some condition) an explicit call to {@link #end()} must follow.
      * <p>
-     * Please note that returned Iterable is cached (so as Iterator), so each call to begin will return
-     * the same instance
+     * If called whilst iterating a nested iteration is started. Please note that returned Iterable
+     * is cached (so as Iterator) for each nesting level, so each call to begin on the same level
+     * will return the same instance
      *
      * @return Iterable to be used in for-in loop
-     * @throws IllegalStateException if there is already another iteration
      * @see #end()
      */
     @NonNull
-    public abstract Iterable<T> begin() throws IllegalStateException;
+    public abstract Iterable<T> begin();
 
     @NonNull
-    public abstract Iterable<T> beginReversed() throws IllegalStateException;
+    public abstract Iterable<T> beginReversed();
 
     /**
-     * Marks as finished previous iteration or finishes current one if called whilst iterating
+     * Marks as finished previous iteration or finishes current one if called whilst iterating.
+     * If iterations are nested, only the innermost one is finished
      */
     public abstract void end();
+
+    /**
+     * Iterates over all elements and applies specified action to each one. Unlike {@link #begin()}
+     * there is no need to call {@link #end()}: iteration is finished even if an action throws.
+     * Modification rules are the same as for {@link #begin()}, action can safely remove
+     * current element, start nested iteration or finish this one with {@link #end()}.
+     * <p>
+     * No objects are created during iteration (no Iterator is involved), so in order to keep
+     * dispatch allocation-free an action must not capture state, for example: a static final instance
+     * or an action stored in a field. If an argument is required use {@link #dispatch(BiAction, Object)}
+     *
+     * @param action to apply to each element
+     * @see #dispatch(BiAction, Object)
+     */
+    public abstract void forEach(@NonNull Action<? super T> action);
+
+    /**
+     * The same as {@link #forEach(Action)}, but additionally passes specified argument to each invocation,
+     * so the same (non-capturing) action instance can be used to deliver different events:
+     * <pre>
+     * {@code
+     * private static final Listeners.BiAction<MyListener, Event> ON_EVENT = new Listeners.BiAction<MyListener, Event>() {
+     *     public void apply(@NonNull MyListener listener, Event event) {
+     *         listener.onEvent(event);
+     *     }
+     * };
+     *
+     * listeners.dispatch(ON_EVENT, event);
+     * }
+     * </pre>
+     *
+     * @param action   to apply to each element
+     * @param argument to pass to action
+     * @see #forEach(Action)
+     */
+    public abstract <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument);
+
+    /**
+     * Starts a pass that applies specified action to each element in portions limited by time, so
+     * a large number of elements can be notified across multiple frames of a UI thread. Nothing is
+     * delivered until {@link IncrementalDispatch#resume(long)} is called. The pass keeps own position
+     * whilst suspended (between calls to resume), it is not an iteration ({@link #isIterating()} is
+     * `false` between calls) and modifications follow the same rules as for {@link #begin()}:
+     * <ul>
+     * <li>an element that is removed before it is visited is not notified</li>
+     * <li>an element that is added before the pass has finished is notified if it is placed after
+     * the position of the pass (always the case for {@link #add(Object)}, for {@link PriorityListeners} only
+     * if its priority is not higher than the priority of the last notified element)</li>
+     * <li>{@link #clear()} finishes the pass</li>
+     * </ul>
+     * A pass must be resumed until it has finished or cancelled with {@link IncrementalDispatch#cancel()},
+     * as each pass that is not finished is updated on each modification. If an action throws,
+     * the pass is suspended after the element that has thrown.
+     *
+     * @param action to apply to each element
+     * @return {@link IncrementalDispatch} to resume the pass
+     */
+    @NonNull
+    public abstract IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action);
+
+    /**
+     * Applies specified action to each element on specified {@link Executor}, so slow listeners
+     * do not block calling thread. Elements that are present at the time of this call are notified.
+     * A thread-safe instance ({@link #createConcurrent()}) does not copy underlying array, an element
+     * that is removed before its delivery has started won\'t be notified. Dispatches are executed one
+     * after another (in order of calls, even if executor is multi-threaded or different executors are used),
+     * so each element receives notifications in order.
+     * <p>
+     * Returned {@link Future} is completed after all elements have been notified. If an action throws,
+     * remaining elements are not notified and {@link Future#get()} throws an ExecutionException.
+     * A dispatch that has not started yet can be cancelled.
+     * <p>
+     * Instances that are not thread-safe cannot be read on another thread, so elements that are present
+     * at the time of this call are copied and the copy is notified. Removal of an element (including
+     * {@link #clear()}) is reported to pending dispatches, so the same as with a thread-safe instance
+     * an element that is removed before its delivery has started won\'t be notified. Such a dispatch
+     * is not reported to a {@link DispatchMonitor}. Cannot be called during parallel dispatch
+     *
+     * @param executor to notify elements on
+     * @param action   to apply to each element
+     * @return {@link Future} that is completed after all elements have been notified
+     */
+    @NonNull
+    public abstract Future<Void> dispatchAsync(@NonNull Executor executor, @NonNull Action<? super T> action);
+
+    /**
+     * Installs a {@link DispatchMonitor} that receives events of each dispatch (duration, time spent
+     * notifying each element, removals whilst iterating), see {@link DispatchStats}. If no monitor
+     * is installed, iteration is not affected (no checks are done for each element).
+     * Cannot be changed whilst iterating, except thread-safe instances ({@link #createConcurrent()})
+     * where each dispatch uses the monitor that was installed when it started.
+     * <p>
+     * Parallel dispatch and thread-safe instances report from multiple threads, all calls to
+     * the monitor are synchronized on it
+     *
+     * @param monitor to install or null to remove current one
+     */
+    public abstract void setDispatchMonitor(@Nullable DispatchMonitor monitor);
+
+    /**
+     * Applies specified action to each element in parallel (on a shared {@link ForkJoinPool}) and waits
+     * until all elements have been processed, see {@link #parallelDispatch(Action, ForkJoinPool, int)}
+     *
+     * @param action to apply to each element
+     */
+    public void parallelDispatch(@NonNull Action<? super T> action) {
+        parallelDispatch(action, DefaultForkJoinPool.POOL, PARALLEL_DISPATCH_THRESHOLD);
+    }
+
+    /**
+     * Applies specified action to each element in parallel and waits until all elements have been
+     * processed (calling thread takes part in processing). Underlying array is split in ranges
+     * that are processed on specified {@link ForkJoinPool}, a range that contains not more elements
+     * than specified threshold is processed sequentially (so if this instance contains not more than
+     * threshold elements no other thread is involved). Order of delivery is not defined.
+     * <p>
+     * As elements are accessed from multiple threads, modifications during parallel dispatch differ
+     * from other iterations:
+     * <ul>
+     * <li>instances that are not thread-safe cannot be modified or iterated (from actions or any other
+     * code) until parallel dispatch has finished, IllegalStateException is thrown</li>
+     * <li>thread-safe instances ({@link #createConcurrent()}) dispatch elements that were present
+     * when dispatch started, an element that is removed before it is processed won\'t be delivered
+     * and added elements are not delivered</li>
+     * </ul>
+     * If an action throws, the exception is rethrown after all started ranges have finished
+     * (some elements may be left not processed)
+     *
+     * @param action    to apply to each element
+     * @param pool      to process ranges on
+     * @param threshold maximum number of elements that are processed sequentially
+     */
+    public abstract void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold);
+
+    /**
+     * Applies specified action to each element on a separate thread and waits until all actions
+     * have finished, so if elements block (on I/O, for example) notification takes as long as
+     * the slowest one instead of a sum of all. On Java 21+ each action runs on a virtual thread,
+     * older runtimes use a shared cached pool of daemon threads.
+     * <p>
+     * Elements are collected on calling thread. If an action modifies this instance
+     * (removes an element, for example), it must be thread-safe ({@link #createConcurrent()})
+     *
+     * @param action to apply to each element
+     * @throws InterruptedException if calling thread was interrupted whilst waiting (all
+     *                              unfinished actions are interrupted)
+     * @throws FanOutException      if any action has thrown, after all actions have finished
+     * @see #fanOut(Action, long, TimeUnit)
+     */
+    public void fanOut(@NonNull Action<? super T> action) throws InterruptedException {
+        FanOut.dispatch(this, action, -1L);
+    }
+
+    /**
+     * The same as {@link #fanOut(Action)}, but waits not longer than specified timeout. Actions
+     * that have not finished before the deadline are interrupted
+     *
+     * @param action  to apply to each element
+     * @param timeout maximum time to wait
+     * @param unit    of timeout
+     * @return true if all actions have finished before the deadline
+     * @throws InterruptedException if calling thread was interrupted whilst waiting
+     * @throws FanOutException      if any of finished actions has thrown
+     */
+    public boolean fanOut(@NonNull Action<? super T> action, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return FanOut.dispatch(this, action, unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns an instance of specified interface that delivers each call to every element (the same
+     * as iterating with {@link #begin()} and calling the method directly). Can be used instead of
+     * a generated dispatcher (see {@link Dispatchable}) if annotation processing is not available.
+     * Methods are resolved once per interface (as method handles, no reflective call is made per element),
+     * but each call passes through a {@link java.lang.reflect.Proxy}, so arguments are boxed
+     * into an array. On Android elements are invoked with core reflection.
+     * <p>
+     * All methods of the interface must return `void`. If an element throws, iteration is finished
+     * (see {@link #end()}) and the exception is propagated as is
+     *
+     * @param type of listener interface
+     * @return an instance of specified interface
+     * @throws IllegalArgumentException if type is not an interface or has a method that does not return `void`
+     */
+    @NonNull
+    public T multicaster(@NonNull Class<T> type) {
+        return Multicaster.create(this, type);
+    }
+
+    // for a small collection linear search is faster than hashing each element
+    @NonNull
+    private static Collection<?> lookup(@NonNull Collection<?> collection) {
+        return collection instanceof Set || collection.size() <= BULK_LINEAR_LOOKUP_SIZE
+                ? collection
+                : new HashSet<>(collection);
+    }
+
+    // created with the first parallel dispatch that does not specify own pool
+    private static class DefaultForkJoinPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * Action to be applied to each element, see {@link #forEach(Action)}
+     */
+    public interface Action<T> {
+        void apply(@NonNull T t);
+    }
+
+    /**
+     * Action to be applied to each element with an argument, see {@link #dispatch(BiAction, Object)}
+     */
+    public interface BiAction<T, A> {
+        void apply(@NonNull T t, A argument);
+    }
+
+    /**
+     * Condition to test each element with, see {@link #removeIf(Predicate)}
+     */
+    public interface Predicate<T> {
+        boolean test(@NonNull T t);
+    }
+
+    /**
+     * Pass started with {@link #forEachIncrementally(Action)}. Must be used on the thread
+     * that modifies {@link Listeners} (any single thread at a time for {@link #createConcurrent()})
+     */
+    public interface IncrementalDispatch {
+
+        /**
+         * Notifies elements until all have been notified or specified time is exhausted. Time is checked
+         * after each element, so at least one element is notified by each call and the call can exceed
+         * specified budget by the time of a single action
+         *
+         * @param budgetNanos time in nanoseconds
+         * @return `true` if the pass has finished (all elements have been notified)
+         */
+        boolean resume(long budgetNanos);
+
+        /**
+         * @return `true` if the pass has finished or was cancelled
+         */
+        boolean isFinished();
+
+        /**
+         * Finishes the pass, remaining elements are not notified
+         */
+        void cancel();
+    }
+
+    /**
+     * Handle of an element added via {@link #register(Object)}. Can be used with try-with-resources statement.
+     */
+    public interface Registration extends Closeable {
+
+        /**
+         * Removes element from {@link Listeners}, the same rules apply as for {@link Listeners#remove(Object)}.
+         * Subsequent calls (or if element was already removed from {@link Listeners}) have no effect
+         */
+        void remove();
+
+        /**
+         * The same as {@link #remove()}
+         */
+        @Override
+        void close();
+    }
 }
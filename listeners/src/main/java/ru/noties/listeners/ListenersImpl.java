@@ -1,23 +1,66 @@
 package ru.noties.listeners;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
-class ListenersImpl<T> extends Listeners<T> implements Iterable<T> {
+class ListenersImpl<T> extends Listeners<T> {
 
-    private final List<T> list;
+    // capacity of an instance created with default factory method. Such an instance does not allocate
+    // anything until the first element is added, then stores elements in an array of exact size
+    // (most of the instances have one or two listeners) and grows to this capacity after that
+    static final int DEFAULT_CAPACITY = 10;
 
-    private final IteratorImpl iterator;
+    private static final Object[] EMPTY = {};
 
-    private boolean isIterating;
+    // elements in order of addition. An element removed via Registration is replaced with `null`
+    // (and is skipped by iteration), so no elements are shifted. Such empty slots are removed
+    // when no iteration is happening (see #compact)
+    private Object[] elements;
+
+    // number of used slots in `elements` (including empty ones)
+    private int count;
+
+    // number of elements
+    private int size;
+
+    // created with first call to #register, each registration is stored at the same
+    // index as own element in `elements`
+    private RegistrationImpl[] registrations;
+
+    // stack of iterators, an iterator at position `i` is active if `i < depth`.
+    // Created with the first iteration. Iterators are cached, so each nesting level is allocated only once
+    private IteratorImpl[] iterators;
+
+    private int depth;
+
+    // state that most of the instances never use (see Extras), created when needed, so an instance
+    // that is only modified and iterated does not pay for it
+    private Extras extras;
 
     ListenersImpl(int initialCapacity) {
-        this.list = new ArrayList<>(initialCapacity);
-        this.iterator = new IteratorImpl();
+        this(initialCapacity, false);
+    }
+
+    ListenersImpl(int initialCapacity, boolean deferRemoval) {
+        this(initialCapacity, deferRemoval, false);
+    }
+
+    ListenersImpl(int initialCapacity, boolean deferRemoval, boolean wrapped) {
+        this.elements = initialCapacity > 0
+                ? new Object[initialCapacity]
+                : EMPTY;
+        if (deferRemoval || wrapped) {
+            this.extras = new Extras(deferRemoval, wrapped);
+        }
     }
 
     @Override
@@ -30,144 +73,1368 @@ class ListenersImpl<T> extends Listeners<T> implements Iterable<T> {
         // if we are iterating backwards - this newly added element will be just
         //      at the end and won't be presented via iteration
 
-        list.add(t);
+        append(t);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+        return registerSlot(t);
+    }
+
+    // subclasses can store elements wrapped (see #unwrap)
+    void append(@NonNull Object slot) {
+
+        checkParallel();
+
+        if (count == elements.length) {
+            grow();
+        }
+
+        elements[count++] = slot;
+        size += 1;
+    }
+
+    @NonNull
+    Registration registerSlot(@NonNull Object slot) {
+        append(slot);
+        return registration(count - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private Registration registration(int index) {
+
+        if (registrations == null) {
+            registrations = (RegistrationImpl[]) new ListenersImpl<?>.RegistrationImpl[elements.length];
+        }
+
+        final RegistrationImpl registration = new RegistrationImpl(index);
+        registrations[index] = registration;
+
+        return registration;
     }
 
     @Override
     public void remove(@NonNull T t) {
 
-        if (isIterating) {
+        checkParallel();
+
+        if (depth > 0
+                && isDeferRemoval()) {
+            removeDeferred(t);
+            return;
+        }
 
-            final int index = list.indexOf(t);
+        final Object[] elements = this.elements;
 
-            if (index > -1) {
+        for (int i = 0, count = this.count; i < count; i++) {
+            if (t.equals(unwrap(elements[i]))) {
+                removeAt(i);
+                break;
+            }
+        }
+    }
+
+    private void removeDeferred(@NonNull T t) {
+
+        final Object[] elements = this.elements;
+
+        // most likely an element removes self, so check the one that was visited last
+        // by the innermost iteration first
+        final IteratorImpl iterator = iterators[depth - 1];
+        final int current = iterator.reversed
+                ? iterator.index + 1
+                : iterator.index - 1;
+
+        if (current > -1
+                && current < count
+                && t.equals(unwrap(elements[current]))) {
+            clearAt(current);
+            return;
+        }
+
+        for (int i = 0, count = this.count; i < count; i++) {
+            if (t.equals(unwrap(elements[i]))) {
+                clearAt(i);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(@NonNull T t) {
+
+        final Object[] elements = this.elements;
+
+        for (int i = 0, count = this.count; i < count; i++) {
+            if (t.equals(unwrap(elements[i]))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<? extends T> collection) {
+
+        checkParallel();
+
+        ensureCapacity(collection.size());
+
+        // subclasses can wrap elements
+        for (T t : collection) {
+            add(t);
+        }
+    }
+
+    @Override
+    public int removeIf(@NonNull Predicate<? super T> predicate) {
+
+        checkParallel();
 
-                list.remove(index);
+        final Object[] elements = this.elements;
+        final int count = this.count;
 
-                // shift iterator position
-                final int iteratorIndex = iterator.index;
-                if (index < iteratorIndex) {
-                    // just decrement the iterator index
-                    iterator.index = iteratorIndex - 1;
+        // predicate is tested for all elements before anything is removed, so if it
+        // throws this instance is not modified
+        long[] marks = null;
+        int removed = 0;
+
+        for (int i = 0; i < count; i++) {
+            final T t = unwrap(elements[i]);
+            if (t != null && predicate.test(t)) {
+                if (marks == null) {
+                    marks = new long[((count - 1) >> 6) + 1];
+                }
+                marks[i >> 6] |= 1L << i;
+                removed += 1;
+            }
+        }
+
+        if (marks == null) {
+            return 0;
+        }
+
+        if (depth > 0
+                && isDeferRemoval()) {
+            for (int i = 0; i < count; i++) {
+                if ((marks[i >> 6] & (1L << i)) != 0L) {
+                    clearAt(i);
                 }
             }
         } else {
-            list.remove(t);
+            removeMarked(marks);
         }
+
+        return removed;
     }
 
     @Override
     public void clear() {
-        list.clear();
-        isIterating = false;
+
+        checkParallel();
+
+        Arrays.fill(elements, 0, count, null);
+
+        if (registrations != null) {
+            for (int i = 0; i < count; i++) {
+                final RegistrationImpl registration = registrations[i];
+                if (registration != null) {
+                    registration.index = -1;
+                    registrations[i] = null;
+                }
+            }
+        }
+
+        count = 0;
+        size = 0;
+
+        for (int i = 0; i < depth; i++) {
+            iterators[i].onFinished();
+        }
+        depth = 0;
+
+        final Extras extras = this.extras;
+        if (extras != null) {
+            final IncrementalDispatchImpl[] passes = extras.passes;
+            for (int i = 0, passesCount = extras.passesCount; i < passesCount; i++) {
+                passes[i].finished = true;
+                passes[i] = null;
+            }
+            extras.passesCount = 0;
+            if (extras.dispatcher != null) {
+                extras.dispatcher.onCleared();
+            }
+        }
     }
 
     @Override
     public int size() {
-        return list.size();
+        return size;
     }
 
     @Override
     public boolean isIterating() {
-        return isIterating;
+        return depth > 0;
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> begin() {
+
+        final IteratorImpl iterator = push();
+        iterator.index = 0;
+        iterator.reversed = false;
+
+        return iterator;
     }
 
     @NonNull
     @Override
-    public Iterable<T> begin() throws IllegalStateException {
+    public Iterable<T> beginReversed() {
+
+        final IteratorImpl iterator = push();
+        iterator.index = count - 1;
+        iterator.reversed = true;
+
+        return iterator;
+    }
+
+    @Override
+    public void end() {
+        checkParallel();
+        if (depth > 0) {
+            finish(depth - 1);
+        }
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+
+        final DispatchMonitor monitor = monitor();
+
+        final IteratorImpl iterator = push();
+        iterator.index = 0;
+        iterator.reversed = false;
+
+        final int level = iterator.level;
+
+        try {
 
-        if (isIterating) {
-            throw new IllegalStateException();
+            // iteration can be finished by an action (#end or #clear)
+            while (level < depth) {
+
+                final T t = iterator.seek();
+                if (t == null) {
+                    break;
+                }
+
+                iterator.index += 1;
+
+                if (monitor == null) {
+                    action.apply(t);
+                } else {
+                    final long started = System.nanoTime();
+                    action.apply(t);
+                    monitor.onDelivered(t, System.nanoTime() - started);
+                }
+            }
+
+        } finally {
+            if (level < depth) {
+                finish(level);
+            }
         }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
 
-        isIterating = true;
+        final DispatchMonitor monitor = monitor();
 
+        final IteratorImpl iterator = push();
         iterator.index = 0;
         iterator.reversed = false;
 
-        return this;
+        final int level = iterator.level;
+
+        try {
+
+            // iteration can be finished by an action (#end or #clear)
+            while (level < depth) {
+
+                final T t = iterator.seek();
+                if (t == null) {
+                    break;
+                }
+
+                iterator.index += 1;
+
+                if (monitor == null) {
+                    action.apply(t, argument);
+                } else {
+                    final long started = System.nanoTime();
+                    action.apply(t, argument);
+                    monitor.onDelivered(t, System.nanoTime() - started);
+                }
+            }
+
+        } finally {
+            if (level < depth) {
+                finish(level);
+            }
+        }
     }
 
     @NonNull
     @Override
-    public Iterable<T> beginReversed() throws IllegalStateException {
+    public IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action) {
+        return forEachIncrementally(action, false);
+    }
+
+    // an open pass is not finished when it has visited all elements (elements added later are visited
+    // by the next call to #resume, which returns `true` each time all elements have been visited),
+    // so it must be cancelled explicitly
+    @SuppressWarnings("unchecked")
+    @NonNull
+    IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action, boolean open) {
+
+        checkParallel();
+
+        final IncrementalDispatchImpl pass = new IncrementalDispatchImpl(action, open);
+
+        final Extras extras = extras();
+        final int passesCount = extras.passesCount;
 
-        if (isIterating) {
-            throw new IllegalStateException();
+        if (extras.passes == null) {
+            extras.passes = (IncrementalDispatchImpl[]) new ListenersImpl<?>.IncrementalDispatchImpl[1];
+        } else if (passesCount == extras.passes.length) {
+            extras.passes = Arrays.copyOf(extras.passes, passesCount * 2);
         }
 
-        isIterating = true;
+        extras.passes[passesCount] = pass;
+        extras.passesCount = passesCount + 1;
 
-        iterator.index = size() - 1;
-        iterator.reversed = true;
+        return pass;
+    }
+
+    @Override
+    public void setDispatchMonitor(@Nullable DispatchMonitor monitor) {
 
-        return this;
+        if (depth > 0) {
+            throw new IllegalStateException("DispatchMonitor cannot be changed whilst iterating");
+        }
+
+        checkParallel();
+
+        if (monitor != null) {
+            extras().monitor = monitor;
+        } else if (extras != null) {
+            extras.monitor = null;
+        }
+
+        // cached iterators must be replaced
+        this.iterators = null;
     }
 
     @Override
-    public void end() {
-        isIterating = false;
+    public void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold) {
+
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0: " + threshold);
+        }
+
+        checkParallel();
+
+        // deliveries are reported from pool threads, started and finished from this one
+        final DispatchMonitor monitor = monitor();
+        final long started;
+        if (monitor != null) {
+            MonitoredAction.onDispatchStarted(monitor, count);
+            started = System.nanoTime();
+        } else {
+            started = 0L;
+        }
+
+        // elements cannot be shifted (or replaced) until dispatch has finished, so all
+        // ranges see the same array
+        final Extras extras = extras();
+        extras.parallel = true;
+
+        try {
+            final ParallelDispatch dispatch = new ParallelDispatch(
+                    elements,
+                    0,
+                    count,
+                    MonitoredAction.wrap(action, monitor),
+                    threshold);
+            if (count <= threshold) {
+                dispatch.compute();
+            } else {
+                pool.invoke(dispatch);
+            }
+        } finally {
+            extras.parallel = false;
+            if (monitor != null) {
+                MonitoredAction.onDispatchFinished(monitor, System.nanoTime() - started);
+            }
+        }
     }
 
+    // elements are modified from a thread that owns this instance, so they are copied and removals are
+    // reported to AsyncDispatcher. Not reported to a monitor (it is called from owner thread only)
+    @NonNull
     @Override
+    public Future<Void> dispatchAsync(@NonNull Executor executor, @NonNull Action<? super T> action) {
+
+        checkParallel();
+
+        // a weak element can be collected after it was counted, then its entry is left empty
+        final Object[] snapshot = new Object[present()];
+        copyTo(snapshot, 0);
+
+        final Extras extras = extras();
+        if (extras.dispatcher == null) {
+            extras.dispatcher = new AsyncDispatcher();
+        }
+
+        return extras.dispatcher.dispatch(executor, snapshot, action);
+    }
+
+    // copies elements (in iteration order) starting at specified offset, returns offset after
+    // the last copied one. Array must have room for all present elements (see #present)
+    int copyTo(@NonNull Object[] array, int offset) {
+
+        final Object[] elements = this.elements;
+
+        for (int i = 0, count = this.count; i < count; i++) {
+            final T t = unwrap(elements[i]);
+            if (t != null) {
+                array[offset++] = t;
+            }
+        }
+
+        return offset;
+    }
+
+    // number of slots that hold an element (see #unwrap), does not modify anything, so it
+    // can be called at any time (including parallel dispatch)
+    int present() {
+
+        final Object[] elements = this.elements;
+
+        int present = 0;
+
+        for (int i = 0, count = this.count; i < count; i++) {
+            if (unwrap(elements[i]) != null) {
+                present += 1;
+            }
+        }
+
+        return present;
+    }
+
+    // called when a slot is removed (by any means except #clear), subclasses can index elements
+    void onSlotRemoved(@NonNull Object slot) {
+    }
+
+    private void slotRemoved(@NonNull Object slot) {
+
+        onSlotRemoved(slot);
+
+        // pending asynchronous dispatches must not notify removed element
+        final Extras extras = this.extras;
+        if (extras != null
+                && extras.dispatcher != null) {
+            final T t = unwrap(slot);
+            if (t != null) {
+                extras.dispatcher.onRemoved(t);
+            }
+        }
+    }
+
+    // returns element stored in a slot or null if slot is empty
+    @SuppressWarnings("unchecked")
+    @Nullable
+    T unwrap(@Nullable Object slot) {
+        return (T) slot;
+    }
+
+    @SuppressWarnings("unchecked")
     @NonNull
-    public Iterator<T> iterator() {
+    private IteratorImpl push() {
+
+        checkParallel();
+
+        final int depth = this.depth;
+
+        IteratorImpl[] iterators = this.iterators;
+
+        if (iterators == null) {
+            iterators = (IteratorImpl[]) new ListenersImpl<?>.IteratorImpl[1];
+            this.iterators = iterators;
+        } else if (depth == iterators.length) {
+            iterators = Arrays.copyOf(iterators, depth * 2);
+            this.iterators = iterators;
+        }
+
+        IteratorImpl iterator = iterators[depth];
+        if (iterator == null) {
+            iterator = newIterator(depth);
+            iterators[depth] = iterator;
+        }
+
+        this.depth = depth + 1;
+
+        iterator.onStarted();
+
         return iterator;
     }
 
-    private class IteratorImpl implements Iterator<T> {
+    @NonNull
+    private IteratorImpl newIterator(int level) {
+        final DispatchMonitor monitor = monitor();
+        return monitor == null
+                ? new IteratorImpl(level)
+                : new MonitoredIteratorImpl(level, monitor);
+    }
 
-        int index;
-        boolean reversed;
+    @NonNull
+    private Extras extras() {
+        Extras extras = this.extras;
+        if (extras == null) {
+            extras = new Extras(false, false);
+            this.extras = extras;
+        }
+        return extras;
+    }
 
-        @Override
-        public boolean hasNext() {
+    @Nullable
+    private DispatchMonitor monitor() {
+        final Extras extras = this.extras;
+        return extras != null
+                ? extras.monitor
+                : null;
+    }
 
-            // early return if we are not in iteration state
-            if (!isIterating) {
-                return false;
-            }
+    private boolean isDeferRemoval() {
+        final Extras extras = this.extras;
+        return extras != null && extras.deferRemoval;
+    }
 
-            final boolean result;
+    private boolean isWrapped() {
+        final Extras extras = this.extras;
+        return extras != null && extras.wrapped;
+    }
 
-            if (!reversed) {
-                result = index < size();
+    // iteration state and elements cannot be changed whilst parallel dispatch is in progress
+    // (actions are executed on other threads)
+    void checkParallel() {
+        if (isParallel()) {
+            throw new IllegalStateException("Listeners cannot be modified or iterated whilst parallel " +
+                    "dispatch is in progress, use Listeners.createConcurrent()");
+        }
+    }
+
+    boolean isParallel() {
+        final Extras extras = this.extras;
+        return extras != null && extras.parallel;
+    }
+
+    // number of active iterations (level of the next one)
+    int depth() {
+        return depth;
+    }
+
+    // finishes iteration at specified level and all nested ones
+    void finish(int level) {
+        for (int i = level; i < depth; i++) {
+            iterators[i].onFinished();
+        }
+        depth = level;
+        if (level == 0) {
+            if (isDeferRemoval()) {
+                if (size < count) {
+                    compact();
+                }
             } else {
-                result = index > -1;
+                compactIfNeeded();
             }
+        }
+    }
 
-            // finish _natural_ iteration
-            if (!result) {
-                end();
-            }
+    private void removeAt(int index) {
 
-            return result;
+        if (depth > 0) {
+            onRemovedWhilstIterating();
         }
 
-        @Override
-        public T next() {
+        slotRemoved(elements[index]);
 
-            // this check should occur no matter how we iterate (normal|reversed)
-            if (!isIterating
-                    || index < 0
-                    || index >= size()) {
-                throw new NoSuchElementException();
+        final int moved = count - index - 1;
+
+        System.arraycopy(elements, index + 1, elements, index, moved);
+        elements[--count] = null;
+        size -= 1;
+
+        final RegistrationImpl[] registrations = this.registrations;
+        if (registrations != null) {
+
+            final RegistrationImpl registration = registrations[index];
+            if (registration != null) {
+                registration.index = -1;
             }
 
-            final T next;
+            System.arraycopy(registrations, index + 1, registrations, index, moved);
+            registrations[count] = null;
 
-            if (!reversed) {
-                next = list.get(index++);
-            } else {
-                next = list.get(index--);
+            for (int i = index; i < count; i++) {
+                final RegistrationImpl r = registrations[i];
+                if (r != null) {
+                    r.index = i;
+                }
             }
+        }
 
-            return next;
+        // shift position of each active iterator
+        for (int i = 0; i < depth; i++) {
+            iterators[i].onRemoved(index);
         }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        final Extras extras = this.extras;
+        if (extras != null) {
+            final IncrementalDispatchImpl[] passes = extras.passes;
+            for (int i = 0, passesCount = extras.passesCount; i < passesCount; i++) {
+                final IncrementalDispatchImpl pass = passes[i];
+                if (index < pass.index) {
+                    pass.index -= 1;
+                }
+            }
+        }
+    }
+
+    // removes element without shifting others (can be called whilst iterating)
+    private void clearAt(int index) {
+
+        checkParallel();
+
+        if (depth > 0) {
+            onRemovedWhilstIterating();
+        }
+
+        slotRemoved(elements[index]);
+
+        elements[index] = null;
+        size -= 1;
+
+        final RegistrationImpl[] registrations = this.registrations;
+        if (registrations != null) {
+            final RegistrationImpl registration = registrations[index];
+            if (registration != null) {
+                registration.index = -1;
+                registrations[index] = null;
+            }
+        }
+
+        if (depth == 0) {
+            compactIfNeeded();
+        } else {
+            // element found by an iterator could have been removed
+            for (int i = 0; i < depth; i++) {
+                iterators[i].pending = null;
+            }
+        }
+    }
+
+    // removes marked elements and empty slots in a single pass (each kept element is moved at most once).
+    // Active iterators are moved, so they continue with the same element
+    private void removeMarked(@NonNull long[] marks) {
+
+        final Object[] elements = this.elements;
+        final RegistrationImpl[] registrations = this.registrations;
+        final IteratorImpl[] iterators = this.iterators;
+        final Extras extras = this.extras;
+        final IncrementalDispatchImpl[] passes = extras != null ? extras.passes : null;
+        final int passesCount = extras != null ? extras.passesCount : 0;
+        final int count = this.count;
+        final int depth = this.depth;
+
+        // number of kept elements before current one
+        int position = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            // next element to visit by a forward iteration will be at `position`. Updated index is
+            // not greater than `i`, so it won't match any of the next elements
+            for (int j = 0; j < depth; j++) {
+                final IteratorImpl iterator = iterators[j];
+                if (!iterator.reversed && iterator.index == i) {
+                    iterator.index = position;
+                }
+            }
+
+            for (int j = 0; j < passesCount; j++) {
+                final IncrementalDispatchImpl pass = passes[j];
+                if (pass.index == i) {
+                    pass.index = position;
+                }
+            }
+
+            final Object slot = elements[i];
+
+            if (slot == null
+                    || (marks[i >> 6] & (1L << i)) != 0L) {
+
+                if (slot != null) {
+
+                    slotRemoved(slot);
+
+                    if (registrations != null) {
+                        final RegistrationImpl registration = registrations[i];
+                        if (registration != null) {
+                            registration.index = -1;
+                        }
+                    }
+
+                    if (depth > 0) {
+                        onRemovedWhilstIterating();
+                    }
+                }
+
+            } else {
+
+                if (position != i) {
+                    elements[position] = slot;
+                    if (registrations != null) {
+                        final RegistrationImpl registration = registrations[i];
+                        if (registration != null) {
+                            registration.index = position;
+                        }
+                        registrations[position] = registration;
+                    }
+                }
+
+                position += 1;
+            }
+
+            // a reversed iteration visits elements at `i` and below, they all are kept before `position`
+            for (int j = 0; j < depth; j++) {
+                final IteratorImpl iterator = iterators[j];
+                if (iterator.reversed && iterator.index == i) {
+                    iterator.index = position - 1;
+                }
+            }
+        }
+
+        // iterations that have not matched any element (all elements visited)
+        for (int j = 0; j < depth; j++) {
+            final IteratorImpl iterator = iterators[j];
+            iterator.pending = null;
+            if (iterator.index >= count) {
+                iterator.index = iterator.reversed
+                        ? position - 1
+                        : position;
+            }
+        }
+
+        for (int j = 0; j < passesCount; j++) {
+            final IncrementalDispatchImpl pass = passes[j];
+            if (pass.index >= count) {
+                pass.index = position;
+            }
+        }
+
+        Arrays.fill(elements, position, count, null);
+
+        if (registrations != null) {
+            Arrays.fill(registrations, position, count, null);
+        }
+
+        this.count = position;
+        this.size = position;
+    }
+
+    private void grow() {
+
+        // no need to grow if at least a quarter of slots are empty (and will be reused after compaction),
+        // cannot move elements whilst iterating though
+        if ((count - size) >= (count >> 2)
+                && size < count
+                && depth == 0) {
+            compact();
+            return;
+        }
+
+        resize(grownCapacity());
+    }
+
+    // grows at most once, so specified number of elements can be added
+    private void ensureCapacity(int additional) {
+
+        if (count + additional <= elements.length) {
+            return;
+        }
+
+        // empty slots are reused if possible
+        if (size < count
+                && depth == 0) {
+            compact();
+            if (count + additional <= elements.length) {
+                return;
+            }
+        }
+
+        resize(Math.max(count + additional, grownCapacity()));
+    }
+
+    // exact size for one or two elements, then at least default capacity
+    private int grownCapacity() {
+        final int length = elements.length;
+        return length < 2
+                ? length + 1
+                : Math.max(DEFAULT_CAPACITY, length + (length >> 1));
+    }
+
+    private void resize(int capacity) {
+
+        elements = Arrays.copyOf(elements, capacity);
+
+        if (registrations != null) {
+            registrations = Arrays.copyOf(registrations, capacity);
+        }
+    }
+
+    // compaction takes linear time, so in order to keep removal via Registration
+    // constant (amortized) it is done only when at least half of slots are empty
+    private void compactIfNeeded() {
+        if ((count - size) > size) {
+            compact();
+        }
+    }
+
+    // must not be called whilst iterating (suspended incremental passes are moved, the same
+    // as forward iterations in #removeMarked)
+    private void compact() {
+
+        final Object[] elements = this.elements;
+        final RegistrationImpl[] registrations = this.registrations;
+        final Extras extras = this.extras;
+        final IncrementalDispatchImpl[] passes = extras != null ? extras.passes : null;
+        final int passesCount = extras != null ? extras.passesCount : 0;
+        final int count = this.count;
+
+        int position = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            for (int j = 0; j < passesCount; j++) {
+                final IncrementalDispatchImpl pass = passes[j];
+                if (pass.index == i) {
+                    pass.index = position;
+                }
+            }
+
+            final Object element = elements[i];
+            if (element == null) {
+                continue;
+            }
+
+            if (position != i) {
+                elements[position] = element;
+                elements[i] = null;
+                if (registrations != null) {
+                    final RegistrationImpl registration = registrations[i];
+                    if (registration != null) {
+                        registration.index = position;
+                        registrations[position] = registration;
+                        registrations[i] = null;
+                    }
+                }
+            }
+
+            position += 1;
+        }
+
+        for (int j = 0; j < passesCount; j++) {
+            final IncrementalDispatchImpl pass = passes[j];
+            if (pass.index >= count) {
+                pass.index = position;
+            }
+        }
+
+        this.count = position;
+    }
+
+    // a pass is registered with Extras (see #forEachIncrementally)
+    private void removePass(@NonNull IncrementalDispatchImpl pass) {
+
+        final Extras extras = this.extras;
+        final IncrementalDispatchImpl[] passes = extras.passes;
+        final int passesCount = extras.passesCount;
+
+        for (int i = 0; i < passesCount; i++) {
+            if (passes[i] == pass) {
+                System.arraycopy(passes, i + 1, passes, i, passesCount - i - 1);
+                passes[passesCount - 1] = null;
+                extras.passesCount = passesCount - 1;
+                break;
+            }
+        }
+    }
+
+    private void onRemovedWhilstIterating() {
+        final DispatchMonitor monitor = monitor();
+        if (monitor != null) {
+            monitor.onRemovedWhilstIterating();
+        }
+    }
+
+    private class RegistrationImpl implements Registration {
+
+        // current index of element or -1 if it's removed
+        int index;
+
+        RegistrationImpl(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void remove() {
+            if (index > -1) {
+                clearAt(index);
+            }
+        }
+
+        @Override
+        public void close() {
+            remove();
+        }
+    }
+
+    private class ParallelDispatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] elements;
+        private final int from;
+        private final int to;
+        private final Action<? super T> action;
+        private final int threshold;
+
+        ParallelDispatch(
+                @NonNull Object[] elements,
+                int from,
+                int to,
+                @NonNull Action<? super T> action,
+                int threshold) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= threshold) {
+                for (int i = from; i < to; i++) {
+                    final T t = unwrap(elements[i]);
+                    if (t != null) {
+                        action.apply(t);
+                    }
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            final ParallelDispatch right = new ParallelDispatch(elements, middle, to, action, threshold);
+            right.fork();
+
+            // always join, so no range is processed after dispatch has finished (even if an action throws)
+            try {
+                new ParallelDispatch(elements, from, middle, action, threshold).compute();
+            } finally {
+                right.join();
+            }
+        }
+    }
+
+    // Each call to #resume is a regular forward iteration (so elements removed by actions are handled
+    // the same way as by #forEach) that starts at `index`. The index is updated before an element is
+    // notified, so it is kept correct by modifications from the action itself and between calls
+    private class IncrementalDispatchImpl implements IncrementalDispatch {
+
+        private final Action<? super T> action;
+
+        private final boolean open;
+
+        // next element to visit
+        int index;
+
+        boolean finished;
+
+        // if #resume is in progress
+        private boolean resuming;
+
+        IncrementalDispatchImpl(@NonNull Action<? super T> action, boolean open) {
+            this.action = action;
+            this.open = open;
+        }
+
+        @Override
+        public boolean resume(long budgetNanos) {
+
+            if (finished) {
+                return true;
+            }
+
+            if (resuming) {
+                throw new IllegalStateException("IncrementalDispatch cannot be resumed by own action");
+            }
+
+            final DispatchMonitor monitor = monitor();
+            final Action<? super T> action = this.action;
+
+            final IteratorImpl iterator = push();
+            iterator.index = index;
+            iterator.reversed = false;
+
+            final int level = iterator.level;
+            final long started = System.nanoTime();
+
+            resuming = true;
+
+            // if at least one element has been notified
+            boolean notified = false;
+
+            // if all elements have been visited (an open pass is not finished)
+            boolean visited = false;
+
+            try {
+
+                // iteration can be finished by an action (#end or #clear), as well as the pass (#cancel)
+                while (level < depth
+                        && !finished) {
+
+                    final T t = iterator.seek();
+                    if (t == null) {
+                        if (!open) {
+                            cancel();
+                        }
+                        visited = true;
+                        break;
+                    }
+
+                    // budget is checked only if there is an element to notify, so a pass that
+                    // has notified the last element in budget is finished by the same call
+                    if (notified
+                            && System.nanoTime() - started >= budgetNanos) {
+                        break;
+                    }
+
+                    iterator.index += 1;
+                    this.index = iterator.index;
+
+                    notified = true;
+
+                    if (monitor == null) {
+                        action.apply(t);
+                    } else {
+                        final long deliveryStarted = System.nanoTime();
+                        action.apply(t);
+                        monitor.onDelivered(t, System.nanoTime() - deliveryStarted);
+                    }
+                }
+
+            } finally {
+                resuming = false;
+                if (level < depth) {
+                    finish(level);
+                }
+            }
+
+            return finished || visited;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void cancel() {
+            if (!finished) {
+                finished = true;
+                removePass(this);
+            }
+        }
+    }
+
+    private class IteratorImpl implements Iterable<T>, Iterator<T> {
+
+        // position in iterators stack
+        final int level;
+
+        int index;
+        boolean reversed;
+
+        // element found by #hasNext (reversed or wrapped iteration), so #next does not need to look
+        // for it again. Also keeps strong reference to an element until #next is called (a weakly
+        // referenced element can be collected in between). Cleared if any element is removed
+        T pending;
+
+        // copied from Extras (cannot change), so iteration does not read it for each element
+        private final boolean wrapped;
+
+        IteratorImpl(int level) {
+            this.level = level;
+            this.wrapped = isWrapped();
+        }
+
+        @Override
+        @NonNull
+        public Iterator<T> iterator() {
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            // early return if this iteration is not active anymore
+            if (level >= depth) {
+                return false;
+            }
+
+            if (!reversed && !wrapped) {
+
+                // most common case, just skip empty slots
+                final Object[] elements = ListenersImpl.this.elements;
+                final int count = ListenersImpl.this.count;
+
+                int index = this.index;
+
+                while (index < count && elements[index] == null) {
+                    index += 1;
+                }
+
+                this.index = index;
+
+                if (index < count) {
+                    return true;
+                }
+
+                // finish _natural_ iteration, this also finishes nested iterations
+                // that were exited early without a call to `end`
+                finish(level);
+
+                return false;
+            }
+
+            pending = seek();
+
+            final boolean result = pending != null;
+
+            if (!result) {
+                finish(level);
+            }
+
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+
+            // this check should occur no matter how we iterate (normal|reversed)
+            if (level >= depth) {
+                throw new NoSuchElementException();
+            }
+
+            if (!reversed && !wrapped) {
+                // if #hasNext was called, index points to a non-empty slot
+                final int index = this.index;
+                if (index < count) {
+                    final Object element = elements[index];
+                    if (element != null) {
+                        this.index = index + 1;
+                        return (T) element;
+                    }
+                }
+            }
+
+            T next = pending;
+
+            if (next == null) {
+                next = seek();
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+            } else {
+                pending = null;
+            }
+
+            if (!reversed) {
+                index += 1;
+            } else {
+                index -= 1;
+            }
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        // called when iteration at this level is started
+        void onStarted() {
+            pending = null;
+        }
+
+        // called when iteration at this level is finished (naturally, with `end` or `clear`)
+        void onFinished() {
+            pending = null;
+        }
+
+        void onRemoved(int removedIndex) {
+            pending = null;
+            // forward iteration has visited elements before the cursor, reversed one
+            // has not visited the element at the cursor and below it
+            if (removedIndex < index
+                    || (reversed && removedIndex == index)) {
+                index -= 1;
+            }
+        }
+
+        // skips removed (and collected) elements, returns next element (cursor points to it) or null if
+        // there are no more elements. Used by #hasNext/#next as well as by #forEach, #dispatch and
+        // IncrementalDispatch#resume (which move the cursor past returned element themselves)
+        @Nullable
+        T seek() {
+
+            final Object[] elements = ListenersImpl.this.elements;
+
+            int index = this.index;
+            T t = null;
+
+            if (!reversed) {
+
+                final int count = ListenersImpl.this.count;
+
+                // `index < count` (and not `!=`), so a cursor past the end is never dereferenced
+                while (index < count && (t = unwrap(elements[index])) == null) {
+                    index += 1;
+                }
+
+            } else {
+
+                // elements at the end (not visited yet) could have been removed
+                if (index >= count) {
+                    index = count - 1;
+                }
+
+                while (index > -1 && (t = unwrap(elements[index])) == null) {
+                    index -= 1;
+                }
+            }
+
+            this.index = index;
+
+            return t;
+        }
+    }
+
+    // measures time between an element returned by #next and the next call to the iterator
+    private class MonitoredIteratorImpl extends IteratorImpl {
+
+        private final DispatchMonitor monitor;
+
+        private long started;
+
+        // element that is being delivered (returned by #next)
+        private Object delivered;
+        private long deliveredAt;
+
+        MonitoredIteratorImpl(int level, @NonNull DispatchMonitor monitor) {
+            super(level);
+            this.monitor = monitor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            onDeliveryFinished();
+            return super.hasNext();
+        }
+
+        @Override
+        public T next() {
+            onDeliveryFinished();
+            final T next = super.next();
+            delivered = next;
+            deliveredAt = System.nanoTime();
+            return next;
+        }
+
+        @Override
+        void onStarted() {
+            super.onStarted();
+            delivered = null;
+            monitor.onDispatchStarted(size);
+            started = System.nanoTime();
+        }
+
+        @Override
+        void onFinished() {
+            super.onFinished();
+            onDeliveryFinished();
+            monitor.onDispatchFinished(System.nanoTime() - started);
+        }
+
+        private void onDeliveryFinished() {
+            final Object delivered = this.delivered;
+            if (delivered != null) {
+                this.delivered = null;
+                monitor.onDelivered(delivered, System.nanoTime() - deliveredAt);
+            }
+        }
+    }
+
+    // state that is not needed by most instances: flags of special kinds (deferred removal, weak)
+    // and state of incremental passes, monitoring, parallel and asynchronous dispatch
+    private class Extras {
+
+        // if #remove called whilst iterating must not shift elements (element is replaced with `null`
+        // and underlying array is compacted after iteration has finished)
+        final boolean deferRemoval;
+
+        // if elements are stored wrapped (see #unwrap) and can disappear from a non-empty slot
+        final boolean wrapped;
+
+        // passes started with #forEachIncrementally that have not finished yet. A suspended pass is not
+        // an iteration (so elements can be shifted), its position is updated the same way as a position
+        // of a forward iterator. Created with the first pass
+        IncrementalDispatchImpl[] passes;
+
+        int passesCount;
+
+        // if parallel dispatch is in progress (elements are accessed from multiple threads)
+        boolean parallel;
+
+        // if not null all iterators are monitored (see MonitoredIteratorImpl), so iteration
+        // without a monitor does not check it for each element
+        DispatchMonitor monitor;
+
+        // created with the first asynchronous dispatch
+        AsyncDispatcher dispatcher;
+
+        Extras(boolean deferRemoval, boolean wrapped) {
+            this.deferRemoval = deferRemoval;
+            this.wrapped = wrapped;
         }
     }
 }
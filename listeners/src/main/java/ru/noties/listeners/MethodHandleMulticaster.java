@@ -0,0 +1,77 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+// Multicaster that is used when method handles are available (not on Android). Methods of an interface
+// are resolved once (cached per interface class) to method handles of the same type `(Object, Object[])void`,
+// so each element is invoked with `invokeExact` without reflection or adapting arguments per call
+final class MethodHandleMulticaster<T> extends Multicaster<T> {
+
+    private static final MethodType DISPATCH_TYPE = MethodType.methodType(void.class, Object.class, Object[].class);
+
+    private static final ClassValue<Map<Method, MethodHandle>> HANDLES = new ClassValue<Map<Method, MethodHandle>>() {
+        @Override
+        protected Map<Method, MethodHandle> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    // return types are validated by Multicaster#create
+    @NonNull
+    private static Map<Method, MethodHandle> resolve(@NonNull Class<?> type) {
+
+        final Map<Method, MethodHandle> handles = new HashMap<>();
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        // public methods including inherited ones
+        for (Method method : type.getMethods()) {
+
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+
+            // interface can be package-private
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+
+            try {
+                // varargs method must receive own array as is
+                final MethodHandle handle = lookup.unreflect(method)
+                        .asFixedArity()
+                        .asSpreader(Object[].class, method.getParameterTypes().length)
+                        .asType(DISPATCH_TYPE);
+                handles.put(method, handle);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot access method " + type.getName() + "#" + method.getName(), e);
+            }
+        }
+
+        return handles;
+    }
+
+    private final Map<Method, MethodHandle> handles;
+
+    MethodHandleMulticaster(@NonNull Listeners<T> listeners, @NonNull Class<T> type) {
+        super(listeners, type);
+        this.handles = HANDLES.get(type);
+    }
+
+    @Override
+    void dispatch(@NonNull Iterable<T> elements, @NonNull Method method, Object[] arguments) throws Throwable {
+
+        final MethodHandle handle = handles.get(method);
+
+        for (T t : elements) {
+            handle.invokeExact((Object) t, arguments);
+        }
+    }
+}
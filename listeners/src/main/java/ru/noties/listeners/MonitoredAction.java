@@ -0,0 +1,59 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+// reports each delivery of an action that is applied from multiple threads (parallel and async dispatch).
+// Calls to a monitor are synchronized on it, so a monitor that is not thread-safe (DispatchStats) can be used
+final class MonitoredAction<T> implements Listeners.Action<T> {
+
+    private final Listeners.Action<? super T> action;
+    private final DispatchMonitor monitor;
+
+    MonitoredAction(@NonNull Listeners.Action<? super T> action, @NonNull DispatchMonitor monitor) {
+        this.action = action;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void apply(@NonNull T t) {
+        final long started = System.nanoTime();
+        action.apply(t);
+        onDelivered(monitor, t, System.nanoTime() - started);
+    }
+
+    // returns specified action if there is no monitor
+    @NonNull
+    static <T> Listeners.Action<? super T> wrap(
+            @NonNull Listeners.Action<? super T> action,
+            @Nullable DispatchMonitor monitor) {
+        if (monitor == null) {
+            return action;
+        }
+        return new MonitoredAction<>(action, monitor);
+    }
+
+    static void onDispatchStarted(@NonNull DispatchMonitor monitor, int size) {
+        synchronized (monitor) {
+            monitor.onDispatchStarted(size);
+        }
+    }
+
+    static void onDelivered(@NonNull DispatchMonitor monitor, @NonNull Object listener, long nanos) {
+        synchronized (monitor) {
+            monitor.onDelivered(listener, nanos);
+        }
+    }
+
+    static void onDispatchFinished(@NonNull DispatchMonitor monitor, long nanos) {
+        synchronized (monitor) {
+            monitor.onDispatchFinished(nanos);
+        }
+    }
+
+    static void onRemovedWhilstIterating(@NonNull DispatchMonitor monitor) {
+        synchronized (monitor) {
+            monitor.onRemovedWhilstIterating();
+        }
+    }
+}
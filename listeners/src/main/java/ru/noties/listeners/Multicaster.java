@@ -0,0 +1,138 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+// handler of a proxy returned by Listeners#multicaster. Each element is invoked through a method handle
+// resolved once per interface (see MethodHandleMulticaster). Android has no ClassValue (and no method handles
+// before API 26), so there elements are invoked with Method#invoke instead. MethodHandleMulticaster is
+// referenced only when method handles are available, so it is never loaded on Android
+abstract class Multicaster<T> implements InvocationHandler {
+
+    private static final boolean METHOD_HANDLES = isMethodHandlesAvailable();
+
+    @NonNull
+    static <T> T create(@NonNull Listeners<T> listeners, @NonNull Class<T> type) {
+        return create(listeners, type, METHOD_HANDLES);
+    }
+
+    // called directly by tests in order to check the fallback (that is used on Android) on JVM
+    @NonNull
+    static <T> T create(@NonNull Listeners<T> listeners, @NonNull Class<T> type, boolean methodHandles) {
+
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException("Multicaster requires an interface: " + type.getName());
+        }
+
+        // public methods including inherited ones
+        for (Method method : type.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())
+                    && method.getReturnType() != void.class) {
+                throw new IllegalArgumentException("Multicaster interface methods must return void, "
+                        + type.getName() + "#" + method.getName() + " returns " + method.getReturnType().getName());
+            }
+        }
+
+        final Multicaster<T> multicaster = methodHandles
+                ? new MethodHandleMulticaster<>(listeners, type)
+                : new ReflectionMulticaster<>(listeners, type);
+
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, multicaster));
+    }
+
+    // Android reports `Dalvik` (both Dalvik and ART)
+    private static boolean isMethodHandlesAvailable() {
+
+        if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
+            return false;
+        }
+
+        try {
+            Class.forName("java.lang.ClassValue");
+            Class.forName("java.lang.invoke.MethodHandle");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    final Listeners<T> listeners;
+    final Class<T> type;
+
+    Multicaster(@NonNull Listeners<T> listeners, @NonNull Class<T> type) {
+        this.listeners = listeners;
+        this.type = type;
+    }
+
+    // invokes method of the interface on each element, an exception of an element is propagated as is
+    abstract void dispatch(@NonNull Iterable<T> elements, @NonNull Method method, Object[] arguments) throws Throwable;
+
+    @Override
+    public final Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, arguments);
+        }
+
+        boolean completed = false;
+
+        try {
+            dispatch(listeners.begin(), method, arguments);
+            completed = true;
+        } finally {
+            // an element has thrown, iteration must be finished explicitly
+            if (!completed) {
+                listeners.end();
+            }
+        }
+
+        return null;
+    }
+
+    // equals, hashCode and toString of the proxy itself
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] arguments) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == arguments[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Multicaster{" + type.getName() + "}";
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    // used on Android, a proxy passes own (cached) Method instances, so nothing is resolved per call
+    private static class ReflectionMulticaster<T> extends Multicaster<T> {
+
+        ReflectionMulticaster(@NonNull Listeners<T> listeners, @NonNull Class<T> type) {
+            super(listeners, type);
+        }
+
+        @Override
+        void dispatch(@NonNull Iterable<T> elements, @NonNull Method method, Object[] arguments) throws Throwable {
+
+            // interface can be package-private, Method instances are shared by a proxy class,
+            // so it is done once per method
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                    && !method.isAccessible()) {
+                method.setAccessible(true);
+            }
+
+            try {
+                // varargs method receives own array as is (an element of arguments)
+                for (T t : elements) {
+                    method.invoke(t, arguments);
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+/**
+ * {@link Listeners} that keep elements ordered by priority. Elements with higher priority are
+ * iterated first ({@link #begin()}), elements with the same priority are iterated in order of addition.
+ * Elements added without priority ({@link #add(Object)} and {@link #register(Object)})
+ * have {@link #DEFAULT_PRIORITY}.
+ * <p>
+ * An element that is added whilst iterating is presented via iteration only if its priority
+ * is not higher than the priority of current element (for {@link #beginReversed()} - only if it is higher).
+ * Parallel dispatch processes elements with the same priority in parallel, elements with higher
+ * priority are processed first.
+ *
+ * @see Listeners#createPriority()
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class PriorityListeners<T> extends Listeners<T> {
+
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Adds an element with specified priority. Elements with the same priority are stored together,
+     * so addition takes logarithmic time of the number of distinct priorities and no elements are shifted
+     *
+     * @param t        element to add
+     * @param priority of the element, elements with higher priority are iterated first
+     */
+    public abstract void add(@NonNull T t, int priority);
+
+    /**
+     * Adds an element with specified priority and returns {@link Registration} to remove it
+     *
+     * @param t        element to add
+     * @param priority of the element, elements with higher priority are iterated first
+     * @return {@link Registration} of added element
+     * @see #register(Object)
+     */
+    @NonNull
+    public abstract Registration register(@NonNull T t, int priority);
+}
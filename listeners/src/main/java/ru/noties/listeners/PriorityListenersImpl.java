@@ -0,0 +1,920 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Elements with the same priority are stored in a bucket (a regular instance, elements are appended),
+// so insertion takes logarithmic time (lookup of a bucket) and nothing is shifted. Buckets are linked
+// in descending order of priorities, iteration visits them one after another and uses own iteration
+// of each bucket (so modifications of a bucket that is being iterated are handled by the bucket itself).
+// An element added to a bucket that has been visited already is not visited (the same as an element
+// that is placed before the cursor)
+class PriorityListenersImpl<T> extends PriorityListeners<T> {
+
+    // buckets by priority, created on demand
+    private final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+
+    private Bucket highest;
+    private Bucket lowest;
+
+    // bucket that has received the last element, most likely the next one has the same priority
+    // (so no lookup is required). It is never reclaimed
+    private Bucket last;
+
+    // empty buckets are reclaimed when there are more of them than non-empty ones (see #reclaimIfNeeded)
+    private int emptyBuckets;
+
+    // capacity of the first created bucket
+    private int capacity;
+
+    private int size;
+
+    // stack of iterators, an iterator at position `i` is active if `i < depth` (see ListenersImpl)
+    private IteratorImpl[] iterators;
+
+    private int depth;
+
+    // passes started with #forEachIncrementally that have not finished yet
+    private IncrementalDispatchImpl[] passes;
+
+    private int passesCount;
+
+    // if parallel dispatch is in progress (of any bucket)
+    private boolean parallel;
+
+    // buckets are not monitored, all events are reported by this instance
+    private DispatchMonitor monitor;
+
+    // created with the first asynchronous dispatch
+    private AsyncDispatcher dispatcher;
+
+    PriorityListenersImpl(int initialCapacity) {
+        this.capacity = initialCapacity;
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        add(t, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public void add(@NonNull T t, int priority) {
+        checkParallel();
+        bucketForAddition(priority).add(t);
+        size += 1;
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+        return register(t, DEFAULT_PRIORITY);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t, int priority) {
+        checkParallel();
+        final Bucket bucket = bucketForAddition(priority);
+        final Registration registration = bucket.register(t);
+        size += 1;
+        return new RegistrationImpl(bucket, registration);
+    }
+
+    @Override
+    public void remove(@NonNull T t) {
+
+        checkParallel();
+
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            final int size = bucket.size();
+            bucket.remove(t);
+            // only the first occurrence is removed
+            if (bucket.size() < size) {
+                onRemoved(bucket);
+                reclaimIfNeeded();
+                break;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(@NonNull T t) {
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            if (bucket.contains(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<? extends T> collection) {
+
+        checkParallel();
+
+        if (collection.isEmpty()) {
+            return;
+        }
+
+        final Bucket bucket = bucketForAddition(DEFAULT_PRIORITY);
+        final int size = bucket.size();
+        bucket.addAll(collection);
+        this.size += bucket.size() - size;
+    }
+
+    // predicate is tested for all elements before anything is removed (so if it throws nothing is
+    // removed), then each bucket removes marked elements (elements of a bucket are tested in the same order)
+    @Override
+    public int removeIf(@NonNull Predicate<? super T> predicate) {
+
+        checkParallel();
+
+        if (size == 0) {
+            return 0;
+        }
+
+        final Marks<T> marks = new Marks<>(predicate, size);
+
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            bucket.removeIf(marks);
+        }
+
+        if (marks.marked == 0) {
+            return 0;
+        }
+
+        marks.replay();
+
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            if (bucket.removeIf(marks) > 0) {
+                onRemoved(bucket);
+            }
+        }
+
+        reclaimIfNeeded();
+
+        return marks.marked;
+    }
+
+    @Override
+    public void clear() {
+
+        checkParallel();
+
+        for (int i = 0; i < depth; i++) {
+            iterators[i].onFinished();
+        }
+        depth = 0;
+
+        for (int i = 0; i < passesCount; i++) {
+            passes[i].finished = true;
+            passes[i] = null;
+        }
+        passesCount = 0;
+
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            bucket.clear();
+        }
+
+        if (dispatcher != null) {
+            dispatcher.onCleared();
+        }
+
+        // all buckets are empty, only the last one is kept
+        buckets.clear();
+        highest = lowest = last;
+        emptyBuckets = 0;
+
+        if (last != null) {
+            last.higher = null;
+            last.lower = null;
+            buckets.put(last.priority, last);
+            emptyBuckets = 1;
+        }
+
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isIterating() {
+        return depth > 0;
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> begin() {
+        return push(false);
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> beginReversed() {
+        return push(true);
+    }
+
+    @Override
+    public void end() {
+        checkParallel();
+        if (depth > 0) {
+            finish(depth - 1);
+        }
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+
+        final IteratorImpl iterator = push(false);
+        final int level = iterator.level;
+
+        try {
+            // iteration can be finished by an action (#end or #clear)
+            while (iterator.hasNext()) {
+                action.apply(iterator.next());
+            }
+        } finally {
+            if (level < depth) {
+                finish(level);
+            }
+        }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
+
+        final IteratorImpl iterator = push(false);
+        final int level = iterator.level;
+
+        try {
+            while (iterator.hasNext()) {
+                action.apply(iterator.next(), argument);
+            }
+        } finally {
+            if (level < depth) {
+                finish(level);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    @Override
+    public IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action) {
+
+        checkParallel();
+
+        final IncrementalDispatchImpl pass = new IncrementalDispatchImpl(action);
+
+        if (passes == null) {
+            passes = (IncrementalDispatchImpl[]) new PriorityListenersImpl<?>.IncrementalDispatchImpl[1];
+        } else if (passesCount == passes.length) {
+            passes = Arrays.copyOf(passes, passesCount * 2);
+        }
+
+        passes[passesCount++] = pass;
+
+        return pass;
+    }
+
+    @Override
+    public void setDispatchMonitor(@Nullable DispatchMonitor monitor) {
+
+        if (depth > 0) {
+            throw new IllegalStateException("DispatchMonitor cannot be changed whilst iterating");
+        }
+
+        checkParallel();
+
+        this.monitor = monitor;
+    }
+
+    // each bucket is dispatched in parallel, buckets one after another (so elements with higher
+    // priority are processed before elements with lower priority)
+    @Override
+    public void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold) {
+
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0: " + threshold);
+        }
+
+        checkParallel();
+
+        // reported as a single dispatch, deliveries are reported from pool threads
+        final DispatchMonitor monitor = this.monitor;
+        final long started;
+        if (monitor != null) {
+            MonitoredAction.onDispatchStarted(monitor, size());
+            started = System.nanoTime();
+        } else {
+            started = 0L;
+        }
+
+        final Action<? super T> delivery = MonitoredAction.wrap(action, monitor);
+
+        parallel = true;
+
+        try {
+            for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+                bucket.parallelDispatch(delivery, pool, threshold);
+            }
+        } finally {
+            parallel = false;
+            if (monitor != null) {
+                MonitoredAction.onDispatchFinished(monitor, System.nanoTime() - started);
+            }
+        }
+    }
+
+    // see ListenersImpl#dispatchAsync, elements are copied in iteration order, removals are reported by buckets
+    @NonNull
+    @Override
+    public Future<Void> dispatchAsync(@NonNull Executor executor, @NonNull Action<? super T> action) {
+
+        checkParallel();
+
+        final Object[] snapshot = new Object[size];
+        int offset = 0;
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            offset = bucket.copyTo(snapshot, offset);
+        }
+
+        if (dispatcher == null) {
+            dispatcher = new AsyncDispatcher();
+        }
+
+        return dispatcher.dispatch(executor, snapshot, action);
+    }
+
+    @NonNull
+    private Bucket bucketForAddition(int priority) {
+
+        Bucket bucket = last;
+
+        if (bucket == null
+                || bucket.priority != priority) {
+            bucket = buckets.get(priority);
+            if (bucket == null) {
+                bucket = createBucket(priority);
+            }
+            last = bucket;
+        }
+
+        // an element is added right after this call
+        if (bucket.size() == 0) {
+            emptyBuckets -= 1;
+        }
+
+        return bucket;
+    }
+
+    @NonNull
+    private Bucket createBucket(int priority) {
+
+        final Bucket bucket = new Bucket(priority, capacity);
+        capacity = 0;
+
+        final Map.Entry<Integer, Bucket> higher = buckets.higherEntry(priority);
+        final Map.Entry<Integer, Bucket> lower = buckets.lowerEntry(priority);
+
+        buckets.put(priority, bucket);
+
+        if (higher == null) {
+            highest = bucket;
+        } else {
+            bucket.higher = higher.getValue();
+            bucket.higher.lower = bucket;
+        }
+
+        if (lower == null) {
+            lowest = bucket;
+        } else {
+            bucket.lower = lower.getValue();
+            bucket.lower.higher = bucket;
+        }
+
+        emptyBuckets += 1;
+
+        return bucket;
+    }
+
+    // called by a bucket for each removed element (by any means except #clear)
+    private void onElementRemoved() {
+        size -= 1;
+        if (monitor != null
+                && depth > 0) {
+            monitor.onRemovedWhilstIterating();
+        }
+    }
+
+    // must be called after elements have been removed from a bucket
+    private void onRemoved(@NonNull Bucket bucket) {
+        if (bucket.size() == 0) {
+            emptyBuckets += 1;
+        }
+    }
+
+    // reclaiming takes linear time (of number of buckets), so it is done only when there are more
+    // empty buckets than non-empty ones. Buckets are not unlinked whilst iterating (or whilst
+    // a pass is not finished), as an iteration keeps current bucket
+    private void reclaimIfNeeded() {
+        if (emptyBuckets > buckets.size() - emptyBuckets
+                && depth == 0
+                && passesCount == 0) {
+            reclaim();
+        }
+    }
+
+    private void reclaim() {
+
+        Bucket bucket = highest;
+
+        while (bucket != null) {
+
+            final Bucket lower = bucket.lower;
+
+            if (bucket.size() == 0
+                    && bucket != last) {
+
+                buckets.remove(bucket.priority);
+
+                if (bucket.higher == null) {
+                    highest = lower;
+                } else {
+                    bucket.higher.lower = lower;
+                }
+
+                if (lower == null) {
+                    lowest = bucket.higher;
+                } else {
+                    lower.higher = bucket.higher;
+                }
+
+                emptyBuckets -= 1;
+            }
+
+            bucket = lower;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private IteratorImpl push(boolean reversed) {
+
+        checkParallel();
+
+        final int depth = this.depth;
+
+        IteratorImpl[] iterators = this.iterators;
+
+        if (iterators == null) {
+            iterators = (IteratorImpl[]) new PriorityListenersImpl<?>.IteratorImpl[1];
+            this.iterators = iterators;
+        } else if (depth == iterators.length) {
+            iterators = Arrays.copyOf(iterators, depth * 2);
+            this.iterators = iterators;
+        }
+
+        IteratorImpl iterator = iterators[depth];
+        if (iterator == null) {
+            iterator = new IteratorImpl(depth);
+            iterators[depth] = iterator;
+        }
+
+        this.depth = depth + 1;
+
+        iterator.onStarted(reversed);
+
+        return iterator;
+    }
+
+    // finishes iteration at specified level and all nested ones
+    private void finish(int level) {
+        for (int i = level; i < depth; i++) {
+            iterators[i].onFinished();
+        }
+        depth = level;
+        if (level == 0) {
+            reclaimIfNeeded();
+        }
+    }
+
+    private void checkParallel() {
+        if (parallel) {
+            throw new IllegalStateException("Listeners cannot be modified or iterated whilst parallel " +
+                    "dispatch is in progress, use Listeners.createConcurrent()");
+        }
+    }
+
+    private void removePass(@NonNull IncrementalDispatchImpl pass) {
+
+        final IncrementalDispatchImpl[] passes = this.passes;
+        final int passesCount = this.passesCount;
+
+        for (int i = 0; i < passesCount; i++) {
+            if (passes[i] == pass) {
+                System.arraycopy(passes, i + 1, passes, i, passesCount - i - 1);
+                passes[passesCount - 1] = null;
+                this.passesCount = passesCount - 1;
+                break;
+            }
+        }
+
+        reclaimIfNeeded();
+    }
+
+    private class Bucket extends ListenersImpl<T> {
+
+        final int priority;
+
+        // neighbours with higher and lower priorities
+        Bucket higher;
+        Bucket lower;
+
+        Bucket(int priority, int initialCapacity) {
+            super(initialCapacity);
+            this.priority = priority;
+        }
+
+        @Override
+        void onSlotRemoved(@NonNull Object slot) {
+            onElementRemoved();
+            // asynchronous dispatches are executed by the owner (a bucket stores elements as is)
+            if (dispatcher != null) {
+                dispatcher.onRemoved(slot);
+            }
+        }
+    }
+
+    private class RegistrationImpl implements Registration {
+
+        private final Bucket bucket;
+        private final Registration registration;
+
+        RegistrationImpl(@NonNull Bucket bucket, @NonNull Registration registration) {
+            this.bucket = bucket;
+            this.registration = registration;
+        }
+
+        @Override
+        public void remove() {
+
+            checkParallel();
+
+            final int size = bucket.size();
+            registration.remove();
+
+            if (bucket.size() < size) {
+                onRemoved(bucket);
+                reclaimIfNeeded();
+            }
+        }
+
+        @Override
+        public void close() {
+            remove();
+        }
+    }
+
+    // Visits buckets one after another, each bucket is visited with own iteration (started when
+    // the bucket is reached and finished naturally or when this iteration is finished)
+    private class IteratorImpl implements Iterable<T>, Iterator<T> {
+
+        // position in iterators stack
+        final int level;
+
+        private boolean reversed;
+
+        // bucket that is being iterated (null if iteration has not reached the first bucket)
+        // and its iteration (null if the bucket is empty), that has been started at `bucketLevel`
+        Bucket bucket;
+        int bucketLevel;
+        private Iterator<T> iterator;
+
+        // the same as ListenersImpl.MonitoredIteratorImpl, measures time between an element
+        // returned by #next and the next call to the iterator
+        private DispatchMonitor monitor;
+        private long started;
+        private Object delivered;
+        private long deliveredAt;
+
+        IteratorImpl(int level) {
+            this.level = level;
+        }
+
+        @NonNull
+        @Override
+        public Iterator<T> iterator() {
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (monitor != null) {
+                onDeliveryFinished();
+            }
+
+            while (level < depth) {
+
+                final Iterator<T> iterator = this.iterator;
+                if (iterator != null
+                        && iterator.hasNext()) {
+                    return true;
+                }
+
+                // iteration of current bucket has finished, continue with the next one
+                final Bucket bucket = this.bucket;
+                final Bucket next;
+                if (bucket == null) {
+                    next = reversed ? lowest : highest;
+                } else {
+                    next = reversed ? bucket.higher : bucket.lower;
+                }
+
+                if (next == null) {
+                    // finish _natural_ iteration
+                    finish(level);
+                    return false;
+                }
+
+                this.bucket = next;
+                this.bucketLevel = next.depth();
+
+                if (next.size() == 0) {
+                    this.iterator = null;
+                } else {
+                    this.iterator = (reversed ? next.beginReversed() : next.begin()).iterator();
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public T next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final T next = iterator.next();
+
+            if (monitor != null) {
+                delivered = next;
+                deliveredAt = System.nanoTime();
+            }
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        void onStarted(boolean reversed) {
+
+            this.reversed = reversed;
+            this.bucket = null;
+            this.iterator = null;
+
+            final DispatchMonitor monitor = PriorityListenersImpl.this.monitor;
+            this.monitor = monitor;
+
+            if (monitor != null) {
+                delivered = null;
+                monitor.onDispatchStarted(size);
+                started = System.nanoTime();
+            }
+        }
+
+        // called when iteration at this level is finished (naturally, with `end` or `clear`)
+        void onFinished() {
+
+            // iteration of current bucket could have been finished already (naturally
+            // or together with an outer iteration of the same bucket)
+            if (bucket != null
+                    && bucket.depth() > bucketLevel) {
+                bucket.finish(bucketLevel);
+            }
+
+            bucket = null;
+            iterator = null;
+
+            final DispatchMonitor monitor = this.monitor;
+            if (monitor != null) {
+                onDeliveryFinished();
+                monitor.onDispatchFinished(System.nanoTime() - started);
+                this.monitor = null;
+            }
+        }
+
+        private void onDeliveryFinished() {
+            final Object delivered = this.delivered;
+            if (delivered != null) {
+                this.delivered = null;
+                monitor.onDelivered(delivered, System.nanoTime() - deliveredAt);
+            }
+        }
+    }
+
+    // Visits buckets one after another with an open pass of each bucket (see ListenersImpl#forEachIncrementally),
+    // a pass of a bucket is cancelled when all its elements have been visited and there is enough time
+    // to continue with the next bucket. Otherwise it is kept, so elements that are added to the bucket
+    // before the next call are visited (the same as elements added after the position of a pass)
+    private class IncrementalDispatchImpl implements IncrementalDispatch, Action<T> {
+
+        private final Action<? super T> action;
+
+        // bucket that is being visited (null if the first one has not been reached yet) and its pass
+        // (null if the bucket has been visited)
+        private Bucket bucket;
+        private IncrementalDispatch pass;
+
+        boolean finished;
+
+        // if #resume is in progress
+        private boolean resuming;
+
+        // if at least one element has been notified by current call to #resume
+        private boolean notified;
+
+        IncrementalDispatchImpl(@NonNull Action<? super T> action) {
+            this.action = action;
+        }
+
+        @Override
+        public boolean resume(long budgetNanos) {
+
+            if (finished) {
+                return true;
+            }
+
+            if (resuming) {
+                throw new IllegalStateException("IncrementalDispatch cannot be resumed by own action");
+            }
+
+            // each call is an iteration (the same as ListenersImpl), an iteration of a bucket that
+            // is being visited is tracked by the iterator, so it is finished together with this one
+            final IteratorImpl iterator = push(false);
+            final int level = iterator.level;
+            final long started = System.nanoTime();
+
+            resuming = true;
+            notified = false;
+
+            try {
+
+                // iteration can be finished by an action (#end or #clear), as well as the pass (#cancel)
+                while (level < depth
+                        && !finished) {
+
+                    if (pass == null) {
+
+                        Bucket next = bucket == null
+                                ? highest
+                                : bucket.lower;
+
+                        while (next != null && next.size() == 0) {
+                            next = next.lower;
+                        }
+
+                        if (next == null) {
+                            cancel();
+                            break;
+                        }
+
+                        bucket = next;
+                        pass = next.forEachIncrementally(this, true);
+                    }
+
+                    // at least one element is notified by each call
+                    final long budget = notified
+                            ? budgetNanos - (System.nanoTime() - started)
+                            : budgetNanos;
+
+                    iterator.bucket = bucket;
+                    iterator.bucketLevel = bucket.depth();
+
+                    if (!pass.resume(budget)
+                            || finished) {
+                        break;
+                    }
+
+                    // all elements of the bucket have been visited
+                    if (notified
+                            && System.nanoTime() - started >= budgetNanos
+                            && hasElementsAfter(bucket)) {
+                        break;
+                    }
+
+                    pass.cancel();
+                    pass = null;
+                }
+
+            } finally {
+                resuming = false;
+                if (level < depth) {
+                    finish(level);
+                }
+            }
+
+            return finished;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void cancel() {
+            if (!finished) {
+                finished = true;
+                if (pass != null) {
+                    pass.cancel();
+                    pass = null;
+                }
+                removePass(this);
+            }
+        }
+
+        // called by a pass of a bucket
+        @Override
+        public void apply(@NonNull T t) {
+
+            notified = true;
+
+            final DispatchMonitor monitor = PriorityListenersImpl.this.monitor;
+            if (monitor == null) {
+                action.apply(t);
+            } else {
+                final long started = System.nanoTime();
+                action.apply(t);
+                monitor.onDelivered(t, System.nanoTime() - started);
+            }
+        }
+
+        private boolean hasElementsAfter(@NonNull Bucket bucket) {
+            for (Bucket next = bucket.lower; next != null; next = next.lower) {
+                if (next.size() > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Records results of a predicate (tested once for each element), then replays them in the same order
+    private static class Marks<T> implements Predicate<T> {
+
+        private final Predicate<? super T> predicate;
+        private final long[] marks;
+
+        private int position;
+        private boolean replaying;
+
+        int marked;
+
+        Marks(@NonNull Predicate<? super T> predicate, int size) {
+            this.predicate = predicate;
+            this.marks = new long[((size - 1) >> 6) + 1];
+        }
+
+        @Override
+        public boolean test(@NonNull T t) {
+
+            final int position = this.position++;
+
+            if (replaying) {
+                return (marks[position >> 6] & (1L << position)) != 0L;
+            }
+
+            if (predicate.test(t)) {
+                marks[position >> 6] |= 1L << position;
+                marked += 1;
+            }
+
+            return false;
+        }
+
+        void replay() {
+            replaying = true;
+            position = 0;
+        }
+    }
+}
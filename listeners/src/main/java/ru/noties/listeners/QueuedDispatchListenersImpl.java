@@ -0,0 +1,145 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Queues {@link #forEach(Action)} and {@link #dispatch(BiAction, Object)} requested whilst one of
+ * them is delivering (run-to-completion). Requests are stored in a ring buffer that is allocated
+ * with an instance, so queueing does not allocate. Each request has a generation (number of requests
+ * that have triggered it in a row), a request that exceeds the limit is treated as a feedback loop.
+ */
+class QueuedDispatchListenersImpl<T> extends ListenersImpl<T> {
+
+    // marks a request queued with #forEach (argument of #dispatch can be null)
+    private static final Object NO_ARGUMENT = new Object();
+
+    private final int maxQueued;
+
+    // ring buffer, each request occupies the same index in all arrays
+    private final Object[] actions;
+    private final Object[] arguments;
+    private final int[] generations;
+
+    // index of the first queued request
+    private int head;
+
+    // number of queued requests
+    private int queued;
+
+    // if a notification (requested directly or queued) is delivering
+    private boolean dispatching;
+
+    // generation of the notification that is delivering
+    private int generation;
+
+    QueuedDispatchListenersImpl(int maxQueued) {
+        super(0);
+
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("maxQueued must be greater than 0: " + maxQueued);
+        }
+
+        this.maxQueued = maxQueued;
+        this.actions = new Object[maxQueued];
+        this.arguments = new Object[maxQueued];
+        this.generations = new int[maxQueued];
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+
+        if (dispatching) {
+            enqueue(action, NO_ARGUMENT);
+            return;
+        }
+
+        dispatching = true;
+        generation = 0;
+
+        try {
+            super.forEach(action);
+            drain();
+        } finally {
+            finishDispatch();
+        }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
+
+        if (dispatching) {
+            enqueue(action, argument);
+            return;
+        }
+
+        dispatching = true;
+        generation = 0;
+
+        try {
+            super.dispatch(action, argument);
+            drain();
+        } finally {
+            finishDispatch();
+        }
+    }
+
+    private void enqueue(@NonNull Object action, Object argument) {
+
+        if (queued == maxQueued) {
+            throw new IllegalStateException("Cannot queue notification, " + maxQueued + " notifications " +
+                    "are already pending");
+        }
+
+        final int generation = this.generation + 1;
+        if (generation > maxQueued) {
+            throw new IllegalStateException("Cannot queue notification, notifications have triggered each other " +
+                    maxQueued + " times in a row (most likely listeners trigger each other in a loop)");
+        }
+
+        final int index = (head + queued) % maxQueued;
+        actions[index] = action;
+        arguments[index] = argument;
+        generations[index] = generation;
+
+        queued += 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+
+        while (queued > 0) {
+
+            final int index = head;
+            final Object action = actions[index];
+            final Object argument = arguments[index];
+
+            // references are not kept after delivery
+            actions[index] = null;
+            arguments[index] = null;
+
+            head = (index + 1) % maxQueued;
+            queued -= 1;
+
+            generation = generations[index];
+
+            if (argument == NO_ARGUMENT) {
+                super.forEach((Action<? super T>) action);
+            } else {
+                super.dispatch((BiAction<? super T, Object>) action, argument);
+            }
+        }
+    }
+
+    // queue is empty if all notifications were delivered, otherwise pending ones are discarded
+    private void finishDispatch() {
+
+        for (; queued > 0; queued--) {
+            actions[head] = null;
+            arguments[head] = null;
+            head = (head + 1) % maxQueued;
+        }
+
+        head = 0;
+        dispatching = false;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps last notifications in a ring buffer (allocated with an instance, so recording does not allocate)
+ * and applies them to each added element before it is added. A notification is recorded when it starts,
+ * so nested notifications are kept in order they were started. Whilst a notification is delivering it
+ * is not replayed (an element added during delivery receives it via iteration). A notification whose
+ * action has thrown is finished the same way and stays recorded: it is the latest one (for example,
+ * a current state), discarding it would replay a previous (stale) one instead.
+ * <p>
+ * Only #forEach, #dispatch and #parallelDispatch are recorded. An incremental pass and an asynchronous
+ * dispatch are not finished by the call that starts them (and an asynchronous one is finished on
+ * another thread), so they are not recorded.
+ */
+class StickyListenersImpl<T> extends ListenersImpl<T> {
+
+    // marks a notification delivered with #forEach (argument of #dispatch can be null)
+    private static final Object NO_ARGUMENT = new Object();
+
+    private final int replay;
+
+    // ring buffer, notification with sequence number `s` occupies index `s % replay` in all arrays
+    private final Object[] actions;
+    private final Object[] arguments;
+    private final boolean[] delivering;
+
+    // number of recorded notifications (sequence number of the next one)
+    private long recorded;
+
+    // notifications to replay are copied, as an element can trigger notifications whilst replaying
+    // (they are recorded and can replace kept ones). Reused unless replay is nested
+    private final Object[] replayActions;
+    private final Object[] replayArguments;
+    private boolean replaying;
+
+    StickyListenersImpl(int replay) {
+        super(0);
+
+        if (replay < 1) {
+            throw new IllegalArgumentException("replay must be greater than 0: " + replay);
+        }
+
+        this.replay = replay;
+        this.actions = new Object[replay];
+        this.arguments = new Object[replay];
+        this.delivering = new boolean[replay];
+        this.replayActions = new Object[replay];
+        this.replayArguments = new Object[replay];
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        checkParallel();
+        replay(t);
+        super.add(t);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+        checkParallel();
+        replay(t);
+        return super.register(t);
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+        final long sequence = record(action, NO_ARGUMENT);
+        try {
+            super.forEach(action);
+        } finally {
+            finish(sequence);
+        }
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
+        final long sequence = record(action, argument);
+        try {
+            super.dispatch(action, argument);
+        } finally {
+            finish(sequence);
+        }
+    }
+
+    @Override
+    public void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold) {
+        checkParallel();
+        final long sequence = record(action, NO_ARGUMENT);
+        try {
+            super.parallelDispatch(action, pool, threshold);
+        } finally {
+            finish(sequence);
+        }
+    }
+
+    private long record(@NonNull Object action, Object argument) {
+
+        final long sequence = recorded++;
+        final int index = (int) (sequence % replay);
+
+        // the oldest one is replaced
+        actions[index] = action;
+        arguments[index] = argument;
+        delivering[index] = true;
+
+        return sequence;
+    }
+
+    // called when a notification has finished, including one whose action has thrown
+    private void finish(long sequence) {
+
+        // replaced by nested notifications
+        if (sequence < recorded - replay) {
+            return;
+        }
+
+        final int index = (int) (sequence % replay);
+
+        delivering[index] = false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(@NonNull T t) {
+
+        final long recorded = this.recorded;
+        if (recorded == 0L) {
+            return;
+        }
+
+        final boolean nested = replaying;
+
+        final Object[] actions;
+        final Object[] arguments;
+
+        if (nested) {
+            actions = new Object[replay];
+            arguments = new Object[replay];
+        } else {
+            actions = replayActions;
+            arguments = replayArguments;
+        }
+
+        int length = 0;
+
+        for (long sequence = Math.max(0L, recorded - replay); sequence < recorded; sequence++) {
+            final int index = (int) (sequence % replay);
+            final Object action = this.actions[index];
+            if (!delivering[index]) {
+                actions[length] = action;
+                arguments[length] = this.arguments[index];
+                length += 1;
+            }
+        }
+
+        replaying = true;
+
+        try {
+            for (int i = 0; i < length; i++) {
+                final Object argument = arguments[i];
+                if (argument == NO_ARGUMENT) {
+                    ((Action<? super T>) actions[i]).apply(t);
+                } else {
+                    ((BiAction<? super T, Object>) actions[i]).apply(t, argument);
+                }
+            }
+        } finally {
+            replaying = nested;
+            if (!nested) {
+                // do not keep references
+                for (int i = 0; i < length; i++) {
+                    actions[i] = null;
+                    arguments[i] = null;
+                }
+            }
+        }
+    }
+}
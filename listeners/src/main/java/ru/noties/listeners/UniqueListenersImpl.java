@@ -0,0 +1,67 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Contains each element at most once. Each element is stored with a {@link Registration} that is
+ * indexed by identity of an element, so a duplicate is found and an element is removed without scanning
+ * (removal via {@link Registration} does not shift other elements). Index is updated whenever
+ * an element is removed (see {@link #onSlotRemoved(Object)}), including removal via {@link Registration}
+ * obtained by a caller and bulk removal.
+ */
+class UniqueListenersImpl<T> extends ListenersImpl<T> {
+
+    private final Map<Object, Registration> index;
+
+    UniqueListenersImpl(int initialCapacity) {
+        super(initialCapacity);
+        this.index = new IdentityHashMap<>(initialCapacity);
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        register(t);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+
+        Registration registration = index.get(t);
+
+        if (registration == null) {
+            registration = registerSlot(t);
+            index.put(t, registration);
+        }
+
+        return registration;
+    }
+
+    @Override
+    public void remove(@NonNull T t) {
+        // removed from index with #onSlotRemoved
+        final Registration registration = index.get(t);
+        if (registration != null) {
+            registration.remove();
+        }
+    }
+
+    @Override
+    public boolean contains(@NonNull T t) {
+        return index.containsKey(t);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        index.clear();
+    }
+
+    @Override
+    void onSlotRemoved(@NonNull Object slot) {
+        index.remove(slot);
+    }
+}
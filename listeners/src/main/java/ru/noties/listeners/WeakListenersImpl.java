@@ -0,0 +1,135 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds elements via {@link WeakReference}. Each element is stored with a {@link Registration},
+ * so when a reference is cleared (and enqueued) it is removed in constant time without scanning.
+ * Cleared references are purged by modifications, {@link #size()} and when an iteration starts. Until then
+ * they are skipped by iteration (they are treated the same as removed elements). During parallel dispatch
+ * modifications are not allowed, so {@link #size()} does not purge and counts present elements (linear time)
+ * and {@link #contains(Object)} never purges.
+ */
+class WeakListenersImpl<T> extends ListenersImpl<T> {
+
+    private final ReferenceQueue<T> queue;
+
+    WeakListenersImpl(int initialCapacity) {
+        super(initialCapacity, false, true);
+        this.queue = new ReferenceQueue<>();
+    }
+
+    @Override
+    public void add(@NonNull T t) {
+        register(t);
+    }
+
+    @NonNull
+    @Override
+    public Registration register(@NonNull T t) {
+
+        purge();
+
+        final Entry<T> entry = new Entry<>(t, queue);
+        entry.registration = registerSlot(entry);
+
+        return entry.registration;
+    }
+
+    @Override
+    public void remove(@NonNull T t) {
+        purge();
+        super.remove(t);
+    }
+
+    @Override
+    public int removeIf(@NonNull Predicate<? super T> predicate) {
+        purge();
+        return super.removeIf(predicate);
+    }
+
+    // cleared references are not counted. Purge takes constant time for each cleared reference, so
+    // it is constant time unless there are references to purge
+    @Override
+    public int size() {
+
+        if (isParallel()) {
+            return present();
+        }
+
+        purge();
+
+        return super.size();
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> begin() {
+        purge();
+        return super.begin();
+    }
+
+    @NonNull
+    @Override
+    public Iterable<T> beginReversed() {
+        purge();
+        return super.beginReversed();
+    }
+
+    @Override
+    public void forEach(@NonNull Action<? super T> action) {
+        purge();
+        super.forEach(action);
+    }
+
+    @Override
+    public <A> void dispatch(@NonNull BiAction<? super T, ? super A> action, A argument) {
+        purge();
+        super.dispatch(action, argument);
+    }
+
+    @NonNull
+    @Override
+    public IncrementalDispatch forEachIncrementally(@NonNull Action<? super T> action) {
+        purge();
+        return super.forEachIncrementally(action);
+    }
+
+    @Override
+    public void parallelDispatch(@NonNull Action<? super T> action, @NonNull ForkJoinPool pool, int threshold) {
+        purge();
+        super.parallelDispatch(action, pool, threshold);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    T unwrap(@Nullable Object slot) {
+        return slot != null
+                ? ((Entry<T>) slot).get()
+                : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Entry<T> entry;
+        while ((entry = (Entry<T>) queue.poll()) != null) {
+            // no op if element was already removed
+            entry.registration.remove();
+        }
+    }
+
+    private static class Entry<T> extends WeakReference<T> {
+
+        Registration registration;
+
+        Entry(@NonNull T referent, @NonNull ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.noties.listeners;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Java 21+ version (multi-release jar entry), each action of fan-out dispatch runs on own
+// virtual thread, so actions that block on I/O do not occupy platform threads
+final class FanOutExecutor {
+
+    static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private FanOutExecutor() {
+    }
+}
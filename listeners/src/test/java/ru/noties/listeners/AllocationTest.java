@@ -0,0 +1,255 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Measures bytes allocated by the current thread (com.sun.management.ThreadMXBean) for a number of
+// operations after warm up, an operation must allocate nothing (SLACK bytes in total are allowed,
+// so a single allocation inside measured loop, for example by the JVM itself, does not fail a test)
+@RunWith(Parameterized.class)
+public class AllocationTest {
+
+    private static final int WARM_UP = 20000;
+    private static final int RUNS = 20000;
+
+    private static final int SIZE = 10;
+
+    // bytes allowed for all runs of an operation (not per run)
+    private static final long SLACK = 256L;
+
+    private interface Operation {
+        void run(@NonNull Listeners<Object> listeners);
+    }
+
+    private static final Listeners.Action<Object> ACTION = new Listeners.Action<Object>() {
+        @Override
+        public void apply(@NonNull Object o) {
+            o.hashCode();
+        }
+    };
+
+    private static final Listeners.BiAction<Object, Object> BI_ACTION = new Listeners.BiAction<Object, Object>() {
+        @Override
+        public void apply(@NonNull Object o, Object argument) {
+            o.equals(argument);
+        }
+    };
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return ListenersKind.parameters(
+                ListenersKind.DEFAULT,
+                ListenersKind.DEFERRED_REMOVAL,
+                ListenersKind.WEAK,
+                ListenersKind.PRIORITY,
+                ListenersKind.CONCURRENT);
+    }
+
+    private final ListenersKind kind;
+
+    private final Object[] elements = new Object[SIZE];
+
+    // not one of elements, so removal of it does not remove an element
+    private final Object extra = new Object();
+
+    // elements visited by an operation (has capacity for all of them, so it does not allocate)
+    private final List<Object> visited = new ArrayList<>(SIZE * 2);
+
+    private com.sun.management.ThreadMXBean bean;
+
+    public AllocationTest(@NonNull ListenersKind kind) {
+        this.kind = kind;
+    }
+
+    @Before
+    public void before() {
+
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        // not available on all JVMs
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        this.bean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(this.bean.isThreadAllocatedMemorySupported());
+        this.bean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < SIZE; i++) {
+            elements[i] = new Object();
+        }
+    }
+
+    @Test
+    public void begin() {
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.begin()) {
+                    o.hashCode();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void begin_reversed() {
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.beginReversed()) {
+                    o.hashCode();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void begin_nested() {
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.begin()) {
+                    for (Object inner : listeners.beginReversed()) {
+                        inner.hashCode();
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void begin_early_exit() {
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.begin()) {
+                    break;
+                }
+                listeners.end();
+            }
+        });
+    }
+
+    @Test
+    public void for_each_and_dispatch() {
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                listeners.forEach(ACTION);
+                listeners.dispatch(BI_ACTION, listeners);
+            }
+        });
+    }
+
+    // each element removes self, then all are added back (below capacity)
+    @Test
+    public void self_removal() {
+        assumeModificationsDoNotAllocate();
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.begin()) {
+                    listeners.remove(o);
+                }
+                assertEquals(0, listeners.size());
+                for (Object element : elements) {
+                    listeners.add(element);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void self_removal_reversed() {
+        assumeModificationsDoNotAllocate();
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                for (Object o : listeners.beginReversed()) {
+                    listeners.remove(o);
+                }
+                assertEquals(0, listeners.size());
+                for (Object element : elements) {
+                    listeners.add(element);
+                }
+            }
+        });
+    }
+
+    // an element is added whilst iterating (and is visited) and is removed after iteration
+    @Test
+    public void add_below_capacity() {
+        assumeModificationsDoNotAllocate();
+        assertNoAllocations(new Operation() {
+            @Override
+            public void run(@NonNull Listeners<Object> listeners) {
+                listeners.add(extra);
+                listeners.remove(extra);
+                final List<Object> visited = AllocationTest.this.visited;
+                visited.clear();
+                for (Object o : listeners.begin()) {
+                    visited.add(o);
+                    if (o == elements[SIZE - 1]) {
+                        listeners.add(extra);
+                    }
+                }
+                assertEquals(SIZE + 1, visited.size());
+                assertTrue(visited.get(SIZE) == extra);
+                listeners.remove(extra);
+            }
+        });
+    }
+
+    // a weak instance wraps each added element with a reference and a thread-safe one copies
+    // underlying array with each modification, so only iteration is checked for them
+    private void assumeModificationsDoNotAllocate() {
+        Assume.assumeTrue(kind != ListenersKind.WEAK && kind != ListenersKind.CONCURRENT);
+    }
+
+    private void assertNoAllocations(@NonNull Operation operation) {
+
+        final Listeners<Object> listeners = kind.create(SIZE * 2);
+        for (Object element : elements) {
+            listeners.add(element);
+        }
+
+        for (int i = 0; i < WARM_UP; i++) {
+            operation.run(listeners);
+        }
+
+        final long allocated = allocated(operation, listeners);
+
+        assertEquals(SIZE, listeners.size());
+        assertTrue("allocated " + allocated + " bytes for " + RUNS + " runs",
+                allocated <= SLACK);
+    }
+
+    private long allocated(@NonNull Operation operation, @NonNull Listeners<Object> listeners) {
+
+        final long id = Thread.currentThread().getId();
+
+        // the first call can allocate itself
+        bean.getThreadAllocatedBytes(id);
+
+        final long started = bean.getThreadAllocatedBytes(id);
+
+        for (int i = 0; i < RUNS; i++) {
+            operation.run(listeners);
+        }
+
+        return bean.getThreadAllocatedBytes(id) - started;
+    }
+}
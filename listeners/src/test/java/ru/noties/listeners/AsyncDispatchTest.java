@@ -0,0 +1,204 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// an element that is removed after dispatchAsync call, but before its delivery has started,
+// must not be notified by any kind (not thread-safe kinds deliver a copy of elements)
+@RunWith(Parameterized.class)
+public class AsyncDispatchTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return ListenersKind.parameters(ListenersKind.values());
+    }
+
+    private final ListenersKind kind;
+
+    public AsyncDispatchTest(@NonNull ListenersKind kind) {
+        this.kind = kind;
+    }
+
+    @Test
+    public void present_elements_delivered() {
+
+        final Listeners<String> listeners = kind.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final ManualExecutor executor = new ManualExecutor();
+        final List<String> delivered = new ArrayList<>();
+        final Future<Void> future = listeners.dispatchAsync(executor, collect(delivered));
+
+        // added after the call
+        listeners.add("c");
+
+        assertFalse(future.isDone());
+
+        executor.runAll();
+
+        assertTrue(future.isDone());
+        assertEquals(Arrays.asList("a", "b"), delivered);
+    }
+
+    @Test
+    public void removed_before_delivery_not_notified() {
+
+        final Listeners<String> listeners = kind.create();
+        listeners.add("a");
+        final Listeners.Registration registration = listeners.register("b");
+        listeners.add("c");
+        listeners.add("d");
+        listeners.add("e");
+
+        final ManualExecutor executor = new ManualExecutor();
+        final List<String> first = new ArrayList<>();
+        final List<String> second = new ArrayList<>();
+        listeners.dispatchAsync(executor, collect(first));
+        listeners.dispatchAsync(executor, collect(second));
+
+        listeners.remove("a");
+        registration.remove();
+        listeners.removeIf(new Listeners.Predicate<String>() {
+            @Override
+            public boolean test(@NonNull String s) {
+                return "d".equals(s);
+            }
+        });
+
+        // the same element added again is not the one that was present
+        listeners.add("a");
+
+        executor.runAll();
+
+        assertEquals(Arrays.asList("c", "e"), first);
+        assertEquals(Arrays.asList("c", "e"), second);
+    }
+
+    @Test
+    public void removed_whilst_delivering_not_notified() {
+
+        final Listeners<String> listeners = kind.create();
+        listeners.add("a");
+        listeners.add("b");
+        listeners.add("c");
+
+        final ManualExecutor executor = new ManualExecutor();
+        final List<String> delivered = new ArrayList<>();
+        listeners.dispatchAsync(executor, new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                delivered.add(s);
+                if ("a".equals(s)) {
+                    listeners.remove("b");
+                }
+            }
+        });
+
+        // the executor runs on calling thread, so an element can be removed by action
+        executor.runAll();
+
+        assertEquals(Arrays.asList("a", "c"), delivered);
+    }
+
+    @Test
+    public void cleared_before_delivery_not_notified() {
+
+        final Listeners<String> listeners = kind.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final ManualExecutor executor = new ManualExecutor();
+        final List<String> delivered = new ArrayList<>();
+        final Future<Void> future = listeners.dispatchAsync(executor, collect(delivered));
+
+        listeners.clear();
+        listeners.add("c");
+
+        executor.runAll();
+
+        assertTrue(future.isDone());
+        assertEquals(Collections.<String>emptyList(), delivered);
+    }
+
+    @Test
+    public void inline_executor_does_not_recurse() throws Exception {
+
+        final Listeners<String> listeners = kind.create();
+        listeners.add("a");
+
+        final Executor inline = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        };
+
+        final int count = 20000;
+        final List<String> delivered = new ArrayList<>();
+
+        // the first one is pending, so the rest are queued and executed one after another
+        // when it has finished
+        final ManualExecutor executor = new ManualExecutor();
+        listeners.dispatchAsync(executor, collect(delivered));
+
+        Future<Void> last = null;
+        for (int i = 0; i < count; i++) {
+            last = listeners.dispatchAsync(inline, collect(delivered));
+        }
+
+        assertFalse(last.isDone());
+
+        executor.runAll();
+
+        assertTrue(last.isDone());
+        assertEquals(null, last.get());
+        assertEquals(count + 1, delivered.size());
+
+        // not queued anymore, executed inline right away
+        assertTrue(listeners.dispatchAsync(inline, collect(delivered)).isDone());
+        assertEquals(count + 2, delivered.size());
+    }
+
+    @NonNull
+    private static Listeners.Action<String> collect(@NonNull final List<String> delivered) {
+        return new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                delivered.add(s);
+            }
+        };
+    }
+
+    // executes submitted tasks when requested (on calling thread)
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            runnables.add(command);
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.remove(0).run();
+            }
+        }
+    }
+}
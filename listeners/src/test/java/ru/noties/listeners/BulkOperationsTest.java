@@ -0,0 +1,290 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class BulkOperationsTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return ListenersKind.parameters(
+                ListenersKind.DEFAULT,
+                ListenersKind.DEFERRED_REMOVAL,
+                ListenersKind.WEAK,
+                ListenersKind.PRIORITY,
+                ListenersKind.CONCURRENT);
+    }
+
+    private final ListenersKind kind;
+
+    public BulkOperationsTest(@NonNull ListenersKind kind) {
+        this.kind = kind;
+    }
+
+    @Test
+    public void add_all() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.add(0);
+        listeners.addAll(Arrays.asList(1, 2, 3));
+        listeners.addAll(Collections.<Integer>emptyList());
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), elements(listeners));
+    }
+
+    @Test
+    public void add_all_whilst_iterating() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.add(0);
+        listeners.add(1);
+
+        final List<Integer> visited = new ArrayList<>();
+        for (Integer i : listeners.begin()) {
+            visited.add(i);
+            if (i == 0) {
+                listeners.addAll(Arrays.asList(2, 3));
+            }
+        }
+
+        // added elements are visited
+        assertEquals(Arrays.asList(0, 1, 2, 3), visited);
+
+        visited.clear();
+        for (Integer i : listeners.beginReversed()) {
+            visited.add(i);
+            if (i == 3) {
+                listeners.addAll(Arrays.asList(4, 5));
+            }
+        }
+
+        // added elements are not visited
+        assertEquals(Arrays.asList(3, 2, 1, 0), visited);
+        assertEquals(6, listeners.size());
+    }
+
+    @Test
+    public void remove_all() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.addAll(Arrays.asList(0, 1, 2, 1, 3, 4));
+
+        // all additions of the same element
+        assertEquals(3, listeners.removeAll(Arrays.asList(1, 4, 5)));
+        assertEquals(Arrays.asList(0, 2, 3), elements(listeners));
+
+        assertEquals(0, listeners.removeAll(Collections.singleton(7)));
+        assertEquals(3, listeners.size());
+    }
+
+    @Test
+    public void remove_all_large_collection() {
+
+        final Listeners<Integer> listeners = kind.create();
+        final List<Integer> remove = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            listeners.add(i);
+            if (i % 3 != 0) {
+                remove.add(i);
+            }
+        }
+
+        assertEquals(remove.size(), listeners.removeAll(remove));
+
+        int expected = 0;
+        for (Integer i : listeners.begin()) {
+            assertEquals(expected, (int) i);
+            expected += 3;
+        }
+        assertEquals(34, listeners.size());
+    }
+
+    @Test
+    public void retain_all() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.addAll(Arrays.asList(0, 1, 2, 3, 4));
+
+        assertEquals(3, listeners.retainAll(new HashSet<>(Arrays.asList(1, 3, 5))));
+        assertEquals(Arrays.asList(1, 3), elements(listeners));
+    }
+
+    @Test
+    public void remove_if_throws_nothing_removed() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.addAll(Arrays.asList(0, 1, 2));
+
+        try {
+            listeners.removeIf(new Listeners.Predicate<Integer>() {
+                @Override
+                public boolean test(@NonNull Integer integer) {
+                    if (integer == 2) {
+                        throw new IllegalStateException();
+                    }
+                    return true;
+                }
+            });
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2), elements(listeners));
+    }
+
+    @Test
+    public void registrations() {
+
+        final Listeners<Integer> listeners = kind.create();
+        final Listeners.Registration[] registrations = new Listeners.Registration[6];
+        for (int i = 0; i < registrations.length; i++) {
+            registrations[i] = listeners.register(i);
+        }
+
+        listeners.removeAll(Arrays.asList(0, 2, 3));
+
+        // no op
+        registrations[2].remove();
+        assertEquals(3, listeners.size());
+
+        // kept elements are moved, registrations must follow them
+        registrations[4].remove();
+        registrations[1].remove();
+
+        assertEquals(Collections.singletonList(5), elements(listeners));
+    }
+
+    @Test
+    public void remove_all_nested_whilst_iterating() {
+
+        final Listeners<Integer> listeners = kind.create();
+        listeners.addAll(Arrays.asList(0, 1, 2, 3, 4, 5));
+
+        final List<Integer> outer = new ArrayList<>();
+        final List<Integer> inner = new ArrayList<>();
+
+        for (Integer i : listeners.begin()) {
+            outer.add(i);
+            if (i == 1) {
+                for (Integer j : listeners.beginReversed()) {
+                    inner.add(j);
+                    if (j == 4) {
+                        // visited by both, visited by outer, not visited by both
+                        listeners.removeAll(Arrays.asList(5, 0, 2));
+                    }
+                }
+            }
+        }
+
+        assertEquals(Arrays.asList(0, 1, 3, 4), outer);
+        assertEquals(Arrays.asList(5, 4, 3, 1), inner);
+        assertFalse(listeners.isIterating());
+        assertEquals(Arrays.asList(1, 3, 4), elements(listeners));
+    }
+
+    // removes a random subset at a random point of iteration and checks that each element
+    // is visited at most once and that all not removed elements are visited
+    @Test
+    public void remove_if_whilst_iterating_random() {
+
+        final Random random = new Random(42L);
+
+        for (int run = 0; run < 500; run++) {
+            final int size = random.nextInt(20);
+            final boolean reversed = random.nextBoolean();
+            final int removeAt = size > 0 ? random.nextInt(size) : 0;
+
+            final Listeners<Integer> listeners = kind.create();
+            final List<Integer> order = new ArrayList<>();
+
+            // an element removed with a registration right before bulk removal (leaves an empty slot)
+            Integer registered = null;
+            Listeners.Registration registration = null;
+
+            for (int i = 0; i < size; i++) {
+                if (registration == null && random.nextInt(4) == 0) {
+                    registered = i;
+                    registration = listeners.register(i);
+                } else {
+                    listeners.add(i);
+                }
+                order.add(i);
+            }
+
+            if (reversed) {
+                Collections.reverse(order);
+            }
+
+            final Set<Integer> remove = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                if (random.nextInt(3) == 0) {
+                    remove.add(i);
+                }
+            }
+
+            final List<Integer> visited = new ArrayList<>();
+
+            for (Integer i : reversed ? listeners.beginReversed() : listeners.begin()) {
+                if (visited.size() == removeAt) {
+                    if (registration != null) {
+                        registration.remove();
+                    }
+                    listeners.removeIf(new Listeners.Predicate<Integer>() {
+                        @Override
+                        public boolean test(@NonNull Integer integer) {
+                            return remove.contains(integer);
+                        }
+                    });
+                }
+                visited.add(i);
+            }
+
+            final String message = "run: " + run + ", kind: " + kind + ", reversed: " + reversed
+                    + ", order: " + order + ", removed: " + remove + ", at: " + removeAt + ", visited: " + visited;
+
+            // visited before removal, then all not removed
+            final List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < order.size(); i++) {
+                final Integer element = order.get(i);
+                if (i <= removeAt || !remove.contains(element)) {
+                    expected.add(element);
+                }
+            }
+
+            // removed with registration, visited only if it was before the removal point
+            expected.remove(registered);
+            visited.remove(registered);
+
+            assertEquals(message, expected, visited);
+            assertFalse(message, listeners.isIterating());
+        }
+    }
+
+    @NonNull
+    private static List<Integer> elements(@NonNull Listeners<Integer> listeners) {
+        final List<Integer> list = new ArrayList<>();
+        for (Integer i : listeners.begin()) {
+            list.add(i);
+        }
+        return list;
+    }
+}
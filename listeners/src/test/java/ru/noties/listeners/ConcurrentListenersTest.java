@@ -0,0 +1,842 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentListenersTest {
+
+    private static final Listeners.Action<AtomicInteger> INCREMENT = new Listeners.Action<AtomicInteger>() {
+        @Override
+        public void apply(@NonNull AtomicInteger counter) {
+            counter.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void each_element_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            listeners.remove(o);
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void each_element_removes_next() {
+
+        final Object[] objects = new Object[10];
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 0;
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            i += 1;
+            listeners.remove(objects[i]);
+            i += 1;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 0, visited.contains(objects[p]));
+        }
+        assertEquals(5, listeners.size());
+    }
+
+    @Test
+    public void each_element_removes_next_reversed() {
+
+        final Object[] objects = new Object[10];
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 9;
+        for (Object o : listeners.beginReversed()) {
+            visited.add(o);
+            i -= 1;
+            listeners.remove(objects[i]);
+            i -= 1;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 1, visited.contains(objects[p]));
+        }
+    }
+
+    @Test
+    public void add_during_iteration() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+
+        for (Object o : listeners.begin()) {
+            if (++iterations == 20) {
+                break;
+            }
+            listeners.add(new Object());
+        }
+        listeners.end();
+
+        assertEquals(20, iterations);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void add_during_iteration_after_removal() {
+
+        final Object first = new Object();
+        final Object second = new Object();
+        final Object added = new Object();
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        listeners.add(first);
+        listeners.add(second);
+
+        final List<Object> visited = new ArrayList<>();
+
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            if (o == first) {
+                listeners.remove(first);
+                listeners.remove(second);
+                listeners.add(added);
+            }
+        }
+
+        assertEquals(2, visited.size());
+        assertEquals(first, visited.get(0));
+        assertEquals(added, visited.get(1));
+    }
+
+    @Test
+    public void add_during_iteration_reversed() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+
+        for (Object o : listeners.beginReversed()) {
+            listeners.add(new Object());
+            iterations += 1;
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(20, listeners.size());
+    }
+
+    @Test
+    public void clear_whilst_iterating() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int i = 0;
+        for (Object o : listeners.begin()) {
+            if (++i == 5) {
+                listeners.clear();
+            }
+        }
+
+        assertEquals(5, i);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void nested_iteration() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 3; i++) {
+            listeners.add(new Object());
+        }
+
+        int outer = 0;
+        int inner = 0;
+
+        for (Object o : listeners.begin()) {
+            outer += 1;
+            for (Object o2 : listeners.begin()) {
+                inner += 1;
+                if (o2 != o) {
+                    listeners.remove(o2);
+                }
+            }
+        }
+
+        assertEquals(1, outer);
+        assertEquals(3, inner);
+        assertEquals(1, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void iteration_state_is_per_thread() throws Exception {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        listeners.add(new Object());
+
+        final AtomicReference<Boolean> otherThread = new AtomicReference<>();
+
+        for (Object o : listeners.begin()) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    otherThread.set(listeners.isIterating());
+                    // must not finish iteration of another thread
+                    listeners.end();
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(listeners.isIterating());
+        }
+
+        assertFalse(otherThread.get());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void iteration_does_not_block_other_threads() throws Exception {
+
+        final Listeners<CountDownLatch> listeners = Listeners.createConcurrent();
+        final CountDownLatch latch = new CountDownLatch(1);
+        listeners.add(latch);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Boolean> awaited = new AtomicReference<>();
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (CountDownLatch l : listeners.begin()) {
+                    started.countDown();
+                    try {
+                        // blocks inside a listener until another thread finishes own iteration
+                        awaited.set(l.await(10L, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        awaited.set(false);
+                    }
+                }
+            }
+        });
+        thread.start();
+
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+
+        listeners.add(new CountDownLatch(0));
+        for (CountDownLatch l : listeners.begin()) {
+            l.countDown();
+        }
+
+        thread.join();
+
+        assertTrue(awaited.get());
+    }
+
+    @Test
+    public void stress_add_remove_whilst_iterating() throws Exception {
+
+        final int writers = 4;
+        final int readers = 4;
+        final int count = 2000;
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        final CyclicBarrier barrier = new CyclicBarrier(writers + readers);
+        final AtomicInteger writersRunning = new AtomicInteger(writers);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        final List<Object> added = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            final Object o = new Object();
+                            added.add(o);
+                            listeners.add(o);
+                            if (i % 2 == 1) {
+                                listeners.remove(added.get(i - 1));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        writersRunning.decrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+                        while (writersRunning.get() > 0) {
+                            visited.clear();
+                            for (Object o : listeners.begin()) {
+                                // each element is delivered only once per iteration
+                                assertTrue(visited.add(o));
+                            }
+                            assertFalse(listeners.isIterating());
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(writers * count / 2, listeners.size());
+    }
+
+    @Test
+    public void stress_self_removal_from_many_threads() throws Exception {
+
+        final int threadsCount = 4;
+        final int count = 1000;
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < count; i++) {
+            listeners.add(new Object());
+        }
+
+        final Set<Object> delivered = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+        final CyclicBarrier barrier = new CyclicBarrier(threadsCount);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < threadsCount; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+                        for (Object o : listeners.begin()) {
+                            assertTrue(visited.add(o));
+                            delivered.add(o);
+                            listeners.remove(o);
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(0, listeners.size());
+
+        // each element was delivered at least once (to the thread that removed it)
+        assertEquals(count, delivered.size());
+    }
+
+    @Test
+    public void registration_removes_exact_element() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        final Object object = new Object();
+        final Object other = new Object();
+
+        final Listeners.Registration first = listeners.register(object);
+        listeners.add(other);
+        final Listeners.Registration second = listeners.register(object);
+
+        first.remove();
+        // no effect
+        first.remove();
+
+        final List<Object> visited = new ArrayList<>();
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            if (o == object) {
+                second.close();
+            }
+        }
+
+        assertEquals(2, visited.size());
+        assertEquals(other, visited.get(0));
+        assertEquals(object, visited.get(1));
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void for_each() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                visited.add(o);
+            }
+        });
+
+        assertEquals(10, visited.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final int[] iterations = {0};
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                iterations[0] += 1;
+                listeners.remove(o);
+            }
+        });
+
+        assertEquals(10, iterations[0]);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_action_throws() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        try {
+            listeners.forEach(new Listeners.Action<Object>() {
+                @Override
+                public void apply(@NonNull Object o) {
+                    throw new IllegalStateException();
+                }
+            });
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        // iteration is finished
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_end() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final int[] iterations = {0};
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                if (++iterations[0] == 5) {
+                    listeners.end();
+                }
+            }
+        });
+
+        assertEquals(5, iterations[0]);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_nested() {
+
+        final Listeners<Object> listeners = Listeners.createConcurrent();
+        listeners.add(new Object());
+        listeners.add(new Object());
+
+        final int[] iterations = {0};
+
+        for (Object o : listeners.begin()) {
+            listeners.forEach(new Listeners.Action<Object>() {
+                @Override
+                public void apply(@NonNull Object o) {
+                    // early exit of nested iteration, must be finished by forEach
+                    for (Object o2 : listeners.begin()) {
+                        iterations[0] += 1;
+                        break;
+                    }
+                }
+            });
+            assertTrue(listeners.isIterating());
+        }
+
+        assertEquals(4, iterations[0]);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void dispatch() {
+
+        final Listeners<List<Object>> listeners = Listeners.createConcurrent();
+        final List<Object> first = new ArrayList<>();
+        final List<Object> second = new ArrayList<>();
+        listeners.add(first);
+        listeners.add(second);
+
+        final Listeners.BiAction<List<Object>, Object> action = new Listeners.BiAction<List<Object>, Object>() {
+            @Override
+            public void apply(@NonNull List<Object> list, Object argument) {
+                list.add(argument);
+            }
+        };
+
+        final Object argument = new Object();
+        listeners.dispatch(action, argument);
+
+        assertEquals(1, first.size());
+        assertEquals(argument, first.get(0));
+        assertEquals(1, second.size());
+        assertEquals(argument, second.get(0));
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void dispatch_async() throws Exception {
+
+        final Listeners<List<Object>> listeners = Listeners.createConcurrent();
+        final List<Object> first = new ArrayList<>();
+        final List<Object> second = new ArrayList<>();
+        listeners.add(first);
+        listeners.add(second);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            final Future<Void> future = listeners.dispatchAsync(executor, new Listeners.Action<List<Object>>() {
+                @Override
+                public void apply(@NonNull List<Object> list) {
+                    list.add(Thread.currentThread());
+                }
+            });
+
+            assertNull(future.get(10L, TimeUnit.SECONDS));
+            assertTrue(future.isDone());
+            assertFalse(future.isCancelled());
+
+            assertEquals(1, first.size());
+            assertEquals(1, second.size());
+            assertTrue(first.get(0) != Thread.currentThread());
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void dispatch_async_removed_before_delivery_not_notified() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final AtomicInteger third = new AtomicInteger();
+        final AtomicInteger fourth = new AtomicInteger();
+        listeners.add(first);
+        final Listeners.Registration registration = listeners.register(second);
+        listeners.add(third);
+
+        final ManualExecutor executor = new ManualExecutor();
+
+        final Future<Void> future = listeners.dispatchAsync(executor, INCREMENT);
+
+        // not started yet
+        assertFalse(future.isDone());
+
+        registration.remove();
+        listeners.remove(third);
+        // added after dispatch was requested
+        listeners.add(fourth);
+
+        executor.runAll();
+
+        assertTrue(future.isDone());
+        assertEquals(1, first.get());
+        assertEquals(0, second.get());
+        assertEquals(0, third.get());
+        assertEquals(0, fourth.get());
+    }
+
+    @Test
+    public void dispatch_async_removed_during_delivery() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger[] counters = new AtomicInteger[3];
+        for (int i = 0; i < 3; i++) {
+            counters[i] = new AtomicInteger();
+            listeners.add(counters[i]);
+        }
+
+        final ManualExecutor executor = new ManualExecutor();
+
+        listeners.dispatchAsync(executor, new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger counter) {
+                counter.incrementAndGet();
+                // remove the last one
+                listeners.remove(counters[2]);
+            }
+        });
+
+        executor.runAll();
+
+        assertEquals(1, counters[0].get());
+        assertEquals(1, counters[1].get());
+        assertEquals(0, counters[2].get());
+    }
+
+    @Test
+    public void dispatch_async_in_order() throws Exception {
+
+        final Listeners<List<Object>> listeners = Listeners.createConcurrent();
+        final List<Object> list = Collections.synchronizedList(new ArrayList<>());
+        listeners.add(list);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            final int count = 1000;
+
+            Future<Void> last = null;
+
+            for (int i = 0; i < count; i++) {
+                final Integer value = i;
+                last = listeners.dispatchAsync(executor, new Listeners.Action<List<Object>>() {
+                    @Override
+                    public void apply(@NonNull List<Object> l) {
+                        l.add(value);
+                    }
+                });
+            }
+
+            assertNotNull(last);
+            last.get(10L, TimeUnit.SECONDS);
+
+            assertEquals(count, list.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, list.get(i));
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void dispatch_async_cancel() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger counter = new AtomicInteger();
+        listeners.add(counter);
+
+        final ManualExecutor executor = new ManualExecutor();
+
+        final Future<Void> cancelled = listeners.dispatchAsync(executor, INCREMENT);
+        final Future<Void> future = listeners.dispatchAsync(executor, INCREMENT);
+
+        assertTrue(cancelled.cancel(false));
+        assertTrue(cancelled.isCancelled());
+        assertTrue(cancelled.isDone());
+
+        executor.runAll();
+
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(false));
+        assertEquals(1, counter.get());
+
+        try {
+            cancelled.get();
+            assertTrue(false);
+        } catch (CancellationException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void dispatch_async_action_throws() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger counter = new AtomicInteger();
+        listeners.add(new AtomicInteger());
+        listeners.add(counter);
+
+        final ManualExecutor executor = new ManualExecutor();
+
+        final Future<Void> failed = listeners.dispatchAsync(executor, new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger c) {
+                throw new IllegalStateException();
+            }
+        });
+
+        // next dispatch must be executed
+        final Future<Void> future = listeners.dispatchAsync(executor, INCREMENT);
+
+        executor.runAll();
+
+        try {
+            failed.get();
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertNull(future.get());
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void instance_iterated_by_thread_is_collected() {
+
+        // iteration state of a thread must not reference an instance
+        final WeakReference<Listeners<AtomicInteger>> reference = iterateUnreferenced();
+
+        final long end = System.currentTimeMillis() + 10000L;
+        while (reference.get() != null
+                && System.currentTimeMillis() < end) {
+            System.gc();
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        assertNull(reference.get());
+    }
+
+    // instance is created in a separate method, so it's not referenced from a test method frame
+    @NonNull
+    private static WeakReference<Listeners<AtomicInteger>> iterateUnreferenced() {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger counter = new AtomicInteger();
+        listeners.add(counter);
+
+        // nested iterations
+        for (AtomicInteger outer : listeners.begin()) {
+            for (AtomicInteger inner : listeners.beginReversed()) {
+                inner.incrementAndGet();
+            }
+            outer.incrementAndGet();
+        }
+
+        listeners.forEach(INCREMENT);
+
+        assertEquals(3, counter.get());
+        assertFalse(listeners.isIterating());
+
+        return new WeakReference<>(listeners);
+    }
+
+    // executes submitted tasks when requested (on calling thread)
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            runnables.add(command);
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchMonitorTest {
+
+    private static class RecordingMonitor implements DispatchMonitor {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onDispatchStarted(int size) {
+            events.add("started:" + size);
+        }
+
+        @Override
+        public void onDelivered(@NonNull Object listener, long nanos) {
+            assertTrue(nanos >= 0L);
+            events.add("delivered:" + listener);
+        }
+
+        @Override
+        public void onDispatchFinished(long nanos) {
+            assertTrue(nanos >= 0L);
+            events.add("finished");
+        }
+
+        @Override
+        public void onRemovedWhilstIterating() {
+            events.add("removed");
+        }
+    }
+
+    @Test
+    public void begin() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        for (String s : listeners.begin()) {
+            if ("a".equals(s)) {
+                listeners.remove(s);
+            }
+        }
+
+        assertEquals(list("started:2", "removed", "delivered:a", "delivered:b", "finished"), monitor.events);
+    }
+
+    @Test
+    public void begin_end() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        for (String s : listeners.beginReversed()) {
+            break;
+        }
+        listeners.end();
+
+        assertEquals(list("started:2", "delivered:b", "finished"), monitor.events);
+    }
+
+    @Test
+    public void nested() {
+
+        final Listeners<String> listeners = Listeners.createDeferredRemoval();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        for (String s : listeners.begin()) {
+            if ("a".equals(s)) {
+                listeners.forEach(new Listeners.Action<String>() {
+                    @Override
+                    public void apply(@NonNull String s) {
+                        if ("b".equals(s)) {
+                            listeners.remove(s);
+                        }
+                    }
+                });
+            }
+        }
+
+        assertEquals(list(
+                "started:2",
+                "started:2", "delivered:a", "removed", "delivered:b", "finished",
+                "delivered:a",
+                "finished"), monitor.events);
+    }
+
+    @Test
+    public void dispatch_and_clear() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        listeners.dispatch(new Listeners.BiAction<String, Object>() {
+            @Override
+            public void apply(@NonNull String s, Object argument) {
+                listeners.clear();
+            }
+        }, null);
+
+        assertEquals(list("started:2", "finished", "delivered:a"), monitor.events);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void removed_monitor_not_notified() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+        listeners.setDispatchMonitor(null);
+
+        for (String s : listeners.begin()) {
+            listeners.remove(s);
+        }
+
+        assertTrue(monitor.events.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannot_be_changed_whilst_iterating() {
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        for (String s : listeners.begin()) {
+            listeners.setDispatchMonitor(new RecordingMonitor());
+        }
+    }
+
+    @Test
+    public void stats() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object fast = new Object();
+        final Object slow = new Object();
+        listeners.add(fast);
+        listeners.add(slow);
+
+        final List<Object> slowListeners = new ArrayList<>();
+
+        final DispatchStats stats = new DispatchStats(5L, TimeUnit.MILLISECONDS, new DispatchStats.SlowListenerCallback() {
+            @Override
+            public void onSlowListener(@NonNull Object listener, long nanos) {
+                assertTrue(nanos > TimeUnit.MILLISECONDS.toNanos(5L));
+                slowListeners.add(listener);
+            }
+        });
+        listeners.setDispatchMonitor(stats);
+
+        final Listeners.Action<Object> action = new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                if (o == slow) {
+                    try {
+                        Thread.sleep(10L);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+
+        listeners.forEach(action);
+        for (Object o : listeners.begin()) {
+            action.apply(o);
+        }
+
+        assertEquals(2L, stats.dispatchCount());
+        assertTrue(stats.totalDispatchNanos() >= TimeUnit.MILLISECONDS.toNanos(20L));
+        assertEquals(2, stats.sizeHighWaterMark());
+        assertEquals(0L, stats.removedWhilstIterating());
+
+        assertEquals(2, slowListeners.size());
+        assertEquals(slow, slowListeners.get(0));
+        assertEquals(slow, slowListeners.get(1));
+
+        final LatencyHistogram histogram = stats.listenerHistogram(slow);
+        assertNotNull(histogram);
+        assertEquals(2L, histogram.count());
+        assertTrue(histogram.max() >= TimeUnit.MILLISECONDS.toNanos(10L));
+
+        assertNotNull(stats.listenerHistogram(fast));
+        assertNull(stats.listenerHistogram(new Object()));
+
+        stats.reset();
+        assertEquals(0L, stats.dispatchCount());
+        assertNull(stats.listenerHistogram(slow));
+    }
+
+    @Test
+    public void priority() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a");
+        listeners.add("b", 1);
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        for (String s : listeners.begin()) {
+            // no op
+        }
+
+        assertEquals(list("started:2", "delivered:b", "delivered:a", "finished"), monitor.events);
+    }
+
+    @Test
+    public void concurrent() {
+
+        final Listeners<String> listeners = Listeners.createConcurrent();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        for (String s : listeners.begin()) {
+            if ("a".equals(s)) {
+                listeners.remove(s);
+            }
+        }
+
+        assertEquals(list("started:2", "removed", "delivered:a", "delivered:b", "finished"), monitor.events);
+    }
+
+    @Test
+    public void concurrent_dispatch_and_clear() {
+
+        final Listeners<String> listeners = Listeners.createConcurrent();
+        listeners.add("a");
+        listeners.add("b");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        listeners.dispatch(new Listeners.BiAction<String, Object>() {
+            @Override
+            public void apply(@NonNull String s, Object argument) {
+                listeners.clear();
+            }
+        }, null);
+
+        assertEquals(list("started:2", "finished", "delivered:a"), monitor.events);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void concurrent_changed_whilst_iterating() {
+
+        final Listeners<String> listeners = Listeners.createConcurrent();
+        listeners.add("a");
+
+        final RecordingMonitor first = new RecordingMonitor();
+        final RecordingMonitor second = new RecordingMonitor();
+        listeners.setDispatchMonitor(first);
+
+        // started iteration keeps the monitor it was started with
+        for (String s : listeners.begin()) {
+            listeners.setDispatchMonitor(second);
+        }
+
+        listeners.forEach(new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                // no op
+            }
+        });
+
+        assertEquals(list("started:1", "delivered:a", "finished"), first.events);
+        assertEquals(list("started:1", "delivered:a", "finished"), second.events);
+    }
+
+    @Test
+    public void parallel_dispatch() {
+        parallel_dispatch(Listeners.<String>create());
+        parallel_dispatch(Listeners.<String>createConcurrent());
+        parallel_dispatch(Listeners.<String>createPriority());
+    }
+
+    private static void parallel_dispatch(@NonNull Listeners<String> listeners) {
+
+        listeners.add("a");
+        listeners.add("b");
+        listeners.add("c");
+
+        final RecordingMonitor monitor = new RecordingMonitor();
+        listeners.setDispatchMonitor(monitor);
+
+        listeners.parallelDispatch(new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                // no op
+            }
+        }, new ForkJoinPool(2), 1);
+
+        final List<String> events = monitor.events;
+        assertEquals(5, events.size());
+        assertEquals("started:3", events.get(0));
+        assertEquals("finished", events.get(4));
+
+        // order of delivery is not defined
+        final List<String> delivered = new ArrayList<>(events.subList(1, 4));
+        Collections.sort(delivered);
+        assertEquals(list("delivered:a", "delivered:b", "delivered:c"), delivered);
+    }
+
+    @Test
+    public void stats_listeners_by_identity() {
+
+        // equal, but different listeners
+        final List<String> first = new ArrayList<>();
+        final List<String> second = new ArrayList<>();
+        assertEquals(first, second);
+
+        final Listeners<List<String>> listeners = Listeners.create();
+        listeners.add(first);
+        listeners.add(second);
+
+        final DispatchStats stats = new DispatchStats();
+        listeners.setDispatchMonitor(stats);
+
+        listeners.forEach(new Listeners.Action<List<String>>() {
+            @Override
+            public void apply(@NonNull List<String> list) {
+                // no op
+            }
+        });
+
+        final LatencyHistogram firstHistogram = stats.listenerHistogram(first);
+        final LatencyHistogram secondHistogram = stats.listenerHistogram(second);
+        assertNotNull(firstHistogram);
+        assertNotNull(secondHistogram);
+        assertNotSame(firstHistogram, secondHistogram);
+        assertEquals(1L, firstHistogram.count());
+        assertEquals(1L, secondHistogram.count());
+
+        assertNull(stats.listenerHistogram(new ArrayList<String>()));
+    }
+
+    @Test
+    public void stats_many_listeners() {
+
+        // table is resized
+        final Listeners<Object> listeners = Listeners.create();
+        final List<Object> objects = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Object o = new Object();
+            objects.add(o);
+            listeners.add(o);
+        }
+
+        final DispatchStats stats = new DispatchStats();
+        listeners.setDispatchMonitor(stats);
+
+        for (Object o : listeners.begin()) {
+            // no op
+        }
+
+        for (Object o : objects) {
+            final LatencyHistogram histogram = stats.listenerHistogram(o);
+            assertNotNull(histogram);
+            assertEquals(1L, histogram.count());
+        }
+    }
+
+    @NonNull
+    private static List<String> list(String... events) {
+        final List<String> list = new ArrayList<>();
+        for (String event : events) {
+            list.add(event);
+        }
+        return list;
+    }
+}
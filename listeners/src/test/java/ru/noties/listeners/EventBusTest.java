@@ -0,0 +1,139 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBusTest {
+
+    private interface Marker {
+    }
+
+    private interface SubMarker extends Marker {
+    }
+
+    private static class Base {
+    }
+
+    private static class Event extends Base implements SubMarker {
+    }
+
+    private static class Recorder<E> implements EventBus.Subscriber<E> {
+
+        final String name;
+        final List<String> log;
+
+        Recorder(@NonNull String name, @NonNull List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void onEvent(@NonNull E event) {
+            log.add(name);
+        }
+    }
+
+    @Test
+    public void delivered_to_class_and_supertypes() {
+
+        final EventBus bus = EventBus.create();
+        final List<String> log = new ArrayList<>();
+
+        bus.register(Marker.class, new Recorder<Marker>("marker", log));
+        bus.register(Object.class, new Recorder<>("object", log));
+        bus.register(Event.class, new Recorder<Event>("event", log));
+        bus.register(SubMarker.class, new Recorder<SubMarker>("sub_marker", log));
+        bus.register(Base.class, new Recorder<Base>("base", log));
+        bus.register(String.class, new Recorder<String>("string", log));
+
+        bus.post(new Event());
+
+        assertEquals(Arrays.asList("event", "base", "object", "sub_marker", "marker"), log);
+    }
+
+    @Test
+    public void subscriber_registered_after_post_notified() {
+
+        final EventBus bus = EventBus.create();
+        final List<String> log = new ArrayList<>();
+
+        bus.register(Event.class, new Recorder<Event>("event", log));
+        bus.post(new Event());
+
+        // new type, resolved types must be updated
+        bus.register(Base.class, new Recorder<Base>("base", log));
+        // existing type
+        bus.register(Event.class, new Recorder<Event>("event_2", log));
+        bus.post(new Event());
+
+        assertEquals(Arrays.asList("event", "event", "event_2", "base"), log);
+    }
+
+    @Test
+    public void unregister() {
+
+        final EventBus bus = EventBus.create();
+        final List<String> log = new ArrayList<>();
+
+        final Recorder<Event> event = new Recorder<>("event", log);
+        final Listeners.Registration base = bus.register(Base.class, new Recorder<Base>("base", log));
+        bus.register(Event.class, event);
+
+        bus.unregister(Event.class, event);
+        base.remove();
+
+        bus.post(new Event());
+
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    public void unregister_self_whilst_posting() {
+
+        final EventBus bus = EventBus.create();
+        final List<String> log = new ArrayList<>();
+
+        bus.register(Event.class, new EventBus.Subscriber<Event>() {
+            @Override
+            public void onEvent(@NonNull Event event) {
+                log.add("once");
+                bus.unregister(Event.class, this);
+            }
+        });
+        bus.register(Event.class, new Recorder<Event>("always", log));
+
+        bus.post(new Event());
+        bus.post(new Event());
+
+        assertEquals(Arrays.asList("once", "always", "always"), log);
+    }
+
+    @Test
+    public void nested_post() {
+
+        final EventBus bus = EventBus.create();
+        final List<String> log = new ArrayList<>();
+
+        bus.register(Event.class, new Recorder<Event>("event", log));
+        bus.register(String.class, new EventBus.Subscriber<String>() {
+            @Override
+            public void onEvent(@NonNull String event) {
+                log.add(event);
+                bus.post(new Event());
+            }
+        });
+        bus.register(String.class, new Recorder<String>("string", log));
+
+        bus.post("first");
+
+        assertEquals(Arrays.asList("first", "event", "string"), log);
+    }
+}
@@ -0,0 +1,157 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FanOutTest {
+
+    @Test
+    public void actions_run_concurrently() throws Exception {
+
+        final int size = 8;
+        final Listeners<CyclicBarrier> listeners = Listeners.create();
+
+        // each action waits for all others, so it can pass only if all are running at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(size);
+        for (int i = 0; i < size; i++) {
+            listeners.add(barrier);
+        }
+
+        final boolean completed = listeners.fanOut(new Listeners.Action<CyclicBarrier>() {
+            @Override
+            public void apply(@NonNull CyclicBarrier cyclicBarrier) {
+                try {
+                    cyclicBarrier.await(10L, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 20L, TimeUnit.SECONDS);
+
+        assertTrue(completed);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void empty() throws Exception {
+        final Listeners<Object> listeners = Listeners.create();
+        assertTrue(listeners.fanOut(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                throw new RuntimeException();
+            }
+        }, 0L, TimeUnit.MILLISECONDS));
+    }
+
+    // the deadline is reached (FanOut.Await returns false) only after the fast action has finished
+    // and the slow one has started, so the outcome does not depend on timing
+    @Test
+    public void deadline_interrupts_unfinished() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.create();
+        final AtomicInteger fast = new AtomicInteger();
+        final AtomicInteger slow = new AtomicInteger();
+        listeners.add(fast);
+        listeners.add(slow);
+
+        final CountDownLatch fastFinished = new CountDownLatch(1);
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch never = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        final boolean completed = FanOut.dispatch(listeners, new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger counter) {
+                if (counter == slow) {
+                    slowStarted.countDown();
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        return;
+                    }
+                }
+                counter.incrementAndGet();
+                fastFinished.countDown();
+            }
+        }, new FanOut.Await() {
+            @Override
+            public boolean await(@NonNull CountDownLatch latch) throws InterruptedException {
+                fastFinished.await();
+                slowStarted.await();
+                return false;
+            }
+        });
+
+        assertFalse(completed);
+        assertEquals(1, fast.get());
+        assertTrue(interrupted.await(10L, TimeUnit.SECONDS));
+        assertEquals(0, slow.get());
+    }
+
+    @Test
+    public void failures_aggregated() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger[] counters = new AtomicInteger[5];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicInteger(i);
+            listeners.add(counters[i]);
+        }
+
+        try {
+            listeners.fanOut(new Listeners.Action<AtomicInteger>() {
+                @Override
+                public void apply(@NonNull AtomicInteger counter) {
+                    // odd ones fail
+                    if (counter.get() % 2 != 0) {
+                        throw new IllegalStateException(String.valueOf(counter.get()));
+                    }
+                    counter.set(-1);
+                }
+            });
+            assertTrue(false);
+        } catch (FanOutException e) {
+
+            assertEquals(2, e.failures().size());
+            assertEquals("1", e.failures().get(0).getMessage());
+            assertEquals("3", e.failures().get(1).getMessage());
+            assertEquals(e.failures().get(0), e.getCause());
+            assertEquals(1, e.getSuppressed().length);
+
+            // not failed ones have finished
+            assertEquals(-1, counters[0].get());
+            assertEquals(-1, counters[2].get());
+            assertEquals(-1, counters[4].get());
+        }
+    }
+
+    @Test
+    public void action_removes_self() throws Exception {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new AtomicInteger());
+        }
+
+        listeners.fanOut(new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger counter) {
+                counter.incrementAndGet();
+                listeners.remove(counter);
+            }
+        });
+
+        assertEquals(0, listeners.size());
+    }
+}
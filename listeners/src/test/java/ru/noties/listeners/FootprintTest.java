@@ -0,0 +1,108 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+// measures heap retained by an instance of Listeners (elements themselves are not counted,
+// the same listener is added multiple times). Relies on System.gc and Runtime#freeMemory, so
+// it is opt-in (-Dlisteners.footprint=true, gradle: -Pfootprint) and limits have some slack
+public class FootprintTest {
+
+    private static final int INSTANCES = 100000;
+
+    // bytes per instance that measurement can be off by
+    private static final long TOLERANCE = 8L;
+
+    // each value is measured multiple times, the smallest one is taken
+    private static final int MEASUREMENTS = 3;
+
+    @Before
+    public void before() {
+        Assume.assumeTrue(Boolean.getBoolean("listeners.footprint"));
+    }
+
+    @Test
+    public void retained_bytes() throws Exception {
+
+        final long eager = retained(ListenersImpl.DEFAULT_CAPACITY, 0, false);
+
+        final long empty = retained(0, 0, false);
+        final long one = retained(0, 1, false);
+        final long two = retained(0, 2, false);
+        final long three = retained(0, 3, false);
+        final long ten = retained(0, 10, false);
+        final long iterated = retained(0, 1, true);
+
+        // an empty instance is just an object with a few fields
+        assertTrue(String.valueOf(empty), empty <= 48L + TOLERANCE);
+
+        // one or two elements take an array of exact size
+        assertTrue(one + " " + empty, one - empty <= 32L + TOLERANCE);
+        assertTrue(two + " " + one, two - one <= 8L + TOLERANCE);
+
+        // after that default capacity is allocated
+        assertTrue(three + " " + two, three > two);
+        assertTrue(ten + " " + three, ten - three <= 8L + TOLERANCE);
+
+        assertTrue(eager + " " + one, eager > one);
+        assertTrue(iterated + " " + one, iterated > one);
+    }
+
+    // instances are created with ListenersKind.DEFAULT and specified capacity
+    private static long retained(int capacity, int size, boolean iterate) throws Exception {
+        long retained = Long.MAX_VALUE;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            retained = Math.min(retained, measure(capacity, size, iterate));
+        }
+        return retained;
+    }
+
+    private static long measure(int capacity, int size, boolean iterate) throws Exception {
+
+        final Object listener = new Object();
+        final Listeners.Action<Object> action = new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                // no op
+            }
+        };
+
+        final Object[] instances = new Object[INSTANCES];
+
+        final long before = usedMemory();
+
+        for (int i = 0; i < INSTANCES; i++) {
+            final Listeners<Object> listeners = ListenersKind.DEFAULT.create(capacity);
+            for (int j = 0; j < size; j++) {
+                listeners.add(listener);
+            }
+            if (iterate) {
+                listeners.forEach(action);
+            }
+            instances[i] = listeners;
+        }
+
+        final long after = usedMemory();
+
+        // keep instances reachable until measured
+        assertTrue(instances[INSTANCES - 1] != null);
+
+        return Math.round((double) (after - before) / INSTANCES);
+    }
+
+    private static long usedMemory() throws Exception {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20L);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
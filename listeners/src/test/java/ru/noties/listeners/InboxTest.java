@@ -0,0 +1,347 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InboxTest {
+
+    @Test
+    public void applied_on_drain_in_order() {
+
+        final Listeners<String> listeners = Listeners.create();
+        final Inbox<String> inbox = Inbox.create(listeners);
+        final List<String> log = new ArrayList<>();
+
+        inbox.add("a");
+        inbox.add("b");
+        inbox.forEach(new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                log.add("each:" + s);
+            }
+        });
+        inbox.remove("a");
+        inbox.dispatch(new Listeners.BiAction<String, Integer>() {
+            @Override
+            public void apply(@NonNull String s, Integer argument) {
+                log.add(s + argument);
+            }
+        }, 42);
+
+        // nothing is applied until drained
+        assertEquals(0, listeners.size());
+        assertTrue(log.isEmpty());
+
+        assertEquals(5, inbox.drain());
+        assertEquals(Arrays.asList("each:a", "each:b", "b42"), log);
+        assertEquals(1, listeners.size());
+
+        assertEquals(0, inbox.drain());
+    }
+
+    @Test
+    public void registration() throws InterruptedException {
+
+        final Listeners<String> listeners = Listeners.create();
+        final Inbox<String> inbox = Inbox.create(listeners);
+
+        listeners.add("a");
+
+        final Listeners.Registration[] registration = new Listeners.Registration[1];
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registration[0] = inbox.register("a");
+            }
+        });
+        thread.start();
+        thread.join();
+
+        inbox.drain();
+        assertEquals(2, listeners.size());
+
+        // removes exactly own addition
+        registration[0].remove();
+        listeners.remove("a");
+        assertEquals(1, listeners.size());
+
+        inbox.drain();
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void registration_removed_before_drain() {
+
+        final Listeners<String> listeners = Listeners.create();
+        final Inbox<String> inbox = Inbox.create(listeners);
+
+        inbox.register("a").remove();
+        inbox.add("b");
+
+        assertEquals(3, inbox.drain());
+        assertEquals(1, listeners.size());
+        assertTrue(listeners.contains("b"));
+    }
+
+    private static class RecordingExecutor implements Executor {
+
+        final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            runnables.add(command);
+        }
+
+        void runAll() {
+            final List<Runnable> runnables = new ArrayList<>(this.runnables);
+            this.runnables.clear();
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+    }
+
+    @Test
+    public void drain_scheduled_once_for_batch() {
+
+        final Listeners<String> listeners = Listeners.create();
+        final RecordingExecutor executor = new RecordingExecutor();
+        final Inbox<String> inbox = Inbox.create(listeners, executor);
+
+        inbox.add("a");
+        inbox.add("b");
+        inbox.remove("a");
+        assertEquals(1, executor.runnables.size());
+
+        executor.runAll();
+        assertEquals(Collections.singletonList("b"), elements(listeners));
+
+        // inbox is empty, so next command schedules again
+        inbox.add("c");
+        assertEquals(1, executor.runnables.size());
+
+        // drained explicitly, scheduled drain has nothing to do
+        inbox.drain();
+        executor.runAll();
+        assertEquals(Arrays.asList("b", "c"), elements(listeners));
+    }
+
+    @Test
+    public void notification_throws_rest_kept() {
+
+        final Listeners<String> listeners = Listeners.create();
+        final RecordingExecutor executor = new RecordingExecutor();
+        final Inbox<String> inbox = Inbox.create(listeners, executor);
+
+        inbox.add("a");
+        inbox.forEach(new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                throw new IllegalStateException(s);
+            }
+        });
+        inbox.add("b");
+
+        try {
+            executor.runAll();
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertEquals("a", e.getMessage());
+        }
+
+        assertEquals(Collections.singletonList("a"), elements(listeners));
+        assertFalse(listeners.isIterating());
+
+        // rescheduled
+        assertEquals(1, executor.runnables.size());
+        executor.runAll();
+        assertEquals(Arrays.asList("a", "b"), elements(listeners));
+    }
+
+    @Test
+    public void inline_executor_does_not_recurse() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+
+        final Inbox<String> inbox = Inbox.create(listeners, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        });
+
+        final int count = 5000;
+
+        // each throwing notification leaves the rest to a drain that is scheduled with the executor
+        final Listeners.Action<String> enqueue = new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                for (int i = 0; i < count; i++) {
+                    final int value = i;
+                    inbox.forEach(new Listeners.Action<String>() {
+                        @Override
+                        public void apply(@NonNull String s) {
+                            throw new IllegalStateException(String.valueOf(value));
+                        }
+                    });
+                }
+                inbox.add("b");
+            }
+        };
+
+        try {
+            inbox.forEach(enqueue);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertEquals("0", e.getMessage());
+            assertEquals(count - 1, e.getSuppressed().length);
+        }
+
+        assertEquals(Arrays.asList("a", "b"), elements(listeners));
+        assertFalse(listeners.isIterating());
+
+        // inbox is empty, a command is applied right away
+        inbox.add("c");
+        assertEquals(Arrays.asList("a", "b", "c"), elements(listeners));
+    }
+
+    @Test
+    public void multiple_producers() throws InterruptedException {
+
+        final int producers = 4;
+        final int count = 10000;
+
+        final Listeners<Integer> listeners = Listeners.create();
+        final Inbox<Integer> inbox = Inbox.create(listeners);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(producers);
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        for (int p = 0; p < producers; p++) {
+            final int offset = p * count;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            final Integer value = offset + i;
+                            inbox.add(value);
+                            // odd ones are removed right away
+                            if (i % 2 != 0) {
+                                inbox.remove(value);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failed.set(true);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+
+        // owner thread drains whilst producers are adding
+        int drained = 0;
+        while (finished.getCount() > 0) {
+            drained += inbox.drain();
+        }
+        drained += inbox.drain();
+
+        assertFalse(failed.get());
+        assertEquals(producers * (count + count / 2), drained);
+
+        final Set<Integer> expected = new HashSet<>();
+        for (int p = 0; p < producers; p++) {
+            for (int i = 0; i < count; i += 2) {
+                expected.add(p * count + i);
+            }
+        }
+
+        assertEquals(expected, new HashSet<>(elements(listeners)));
+        assertEquals(expected.size(), listeners.size());
+    }
+
+    // owner thread runs only scheduled drains, a drain that meets a command that is not linked yet
+    // must schedule another one (so nothing is left in the inbox) and at most one drain is scheduled
+    @Test
+    public void multiple_producers_scheduled() throws InterruptedException {
+
+        final int producers = 4;
+        final int count = 10000;
+
+        final LinkedBlockingQueue<Runnable> scheduled = new LinkedBlockingQueue<>();
+        final Listeners<Integer> listeners = Listeners.create();
+        final Inbox<Integer> inbox = Inbox.create(listeners, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                scheduled.add(command);
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            final int offset = p * count;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            inbox.add(offset + i);
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+
+        while (listeners.size() < producers * count) {
+            final Runnable drain = scheduled.poll(10L, TimeUnit.SECONDS);
+            assertTrue("drain was not scheduled", drain != null);
+            drain.run();
+            assertTrue(scheduled.size() <= 1);
+        }
+
+        assertTrue(finished.await(10L, TimeUnit.SECONDS));
+        assertEquals(0, inbox.drain());
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @NonNull
+    private static <T> List<T> elements(@NonNull Listeners<T> listeners) {
+        final List<T> list = new ArrayList<>();
+        for (T t : listeners.begin()) {
+            list.add(t);
+        }
+        return list;
+    }
+}
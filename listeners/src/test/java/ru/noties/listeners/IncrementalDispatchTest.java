@@ -0,0 +1,376 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalDispatchTest {
+
+    // each resume with this budget notifies exactly one element
+    private static final long ONE = 0L;
+
+    private static class Recorder implements Listeners.Action<String> {
+
+        final List<String> log = new ArrayList<>();
+
+        @Override
+        public void apply(@NonNull String s) {
+            log.add(s);
+        }
+    }
+
+    @Test
+    public void resumed_until_finished() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            // nothing is delivered until resumed
+            assertTrue(recorder.log.isEmpty());
+
+            assertFalse(dispatch.resume(ONE));
+            assertEquals(Collections.singletonList("a"), recorder.log);
+            assertFalse(listeners.isIterating());
+
+            assertFalse(dispatch.resume(ONE));
+            assertEquals(Arrays.asList("a", "b"), recorder.log);
+
+            // the last element, finished by the same call
+            assertTrue(dispatch.resume(ONE));
+            assertTrue(dispatch.isFinished());
+            assertEquals(Arrays.asList("a", "b", "c"), recorder.log);
+
+            // no op
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(3, recorder.log.size());
+        }
+    }
+
+    @Test
+    public void budget_not_exhausted() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder recorder = new Recorder();
+            assertTrue(listeners.forEachIncrementally(recorder).resume(Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b", "c"), recorder.log);
+        }
+    }
+
+    @Test
+    public void removed_whilst_suspended() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c", "d"));
+            final Listeners.Registration registration = listeners.register("e");
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            dispatch.resume(ONE);
+            dispatch.resume(ONE);
+
+            // visited and not visited ones
+            listeners.remove("a");
+            listeners.remove("c");
+            registration.remove();
+
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b", "d"), recorder.log);
+        }
+    }
+
+    @Test
+    public void removed_in_bulk_whilst_suspended() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            dispatch.resume(ONE);
+            dispatch.resume(ONE);
+
+            listeners.removeAll(Arrays.asList("a", "b", "c"));
+
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b", "d", "e"), recorder.log);
+        }
+    }
+
+    // removal via Registration leaves an empty slot, empty slots are removed later (compaction)
+    @Test
+    public void compacted_whilst_suspended() {
+
+        final Listeners<String> listeners = Listeners.create();
+
+        final List<Listeners.Registration> registrations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            registrations.add(listeners.register(String.valueOf(i)));
+        }
+
+        final Recorder recorder = new Recorder();
+        final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+        for (int i = 0; i < 5; i++) {
+            dispatch.resume(ONE);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            registrations.get(i).remove();
+        }
+
+        assertTrue(dispatch.resume(Long.MAX_VALUE));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "8", "9"), recorder.log);
+    }
+
+    @Test
+    public void added_whilst_suspended() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b"));
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            dispatch.resume(ONE);
+
+            // added elements are visited by the same pass
+            listeners.add("c");
+            listeners.addAll(Arrays.asList("d", "e"));
+
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e"), recorder.log);
+        }
+    }
+
+    @Test
+    public void priority_inserted_whilst_suspended() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 2);
+        listeners.add("b", 1);
+        listeners.add("c", 0);
+
+        final Recorder recorder = new Recorder();
+        final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+        dispatch.resume(ONE);
+        dispatch.resume(ONE);
+
+        // before the position of the pass (not visited) and after it
+        listeners.add("first", 3);
+        listeners.add("last", -1);
+
+        assertTrue(dispatch.resume(Long.MAX_VALUE));
+        assertEquals(Arrays.asList("a", "b", "c", "last"), recorder.log);
+    }
+
+    @Test
+    public void modified_by_action() {
+
+        for (final Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder recorder = new Recorder() {
+                @Override
+                public void apply(@NonNull String s) {
+                    super.apply(s);
+                    // removes self and the next one, adds to the end
+                    if ("a".equals(s)) {
+                        listeners.remove(s);
+                        listeners.remove("b");
+                        listeners.add("d");
+                    }
+                }
+            };
+
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            assertFalse(dispatch.resume(ONE));
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+
+            assertEquals(Arrays.asList("a", "c", "d"), recorder.log);
+            assertEquals(Arrays.asList("c", "d"), elements(listeners));
+        }
+    }
+
+    @Test
+    public void thrown_suspends_after_element() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder recorder = new Recorder() {
+                @Override
+                public void apply(@NonNull String s) {
+                    super.apply(s);
+                    if ("b".equals(s)) {
+                        throw new IllegalStateException(s);
+                    }
+                }
+            };
+
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            try {
+                dispatch.resume(Long.MAX_VALUE);
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                assertEquals("b", e.getMessage());
+            }
+
+            assertFalse(dispatch.isFinished());
+            assertFalse(listeners.isIterating());
+
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b", "c"), recorder.log);
+        }
+    }
+
+    @Test
+    public void cancel() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            dispatch.resume(ONE);
+            dispatch.cancel();
+
+            assertTrue(dispatch.isFinished());
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Collections.singletonList("a"), recorder.log);
+        }
+    }
+
+    @Test
+    public void cancelled_by_action() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Listeners.IncrementalDispatch[] dispatch = new Listeners.IncrementalDispatch[1];
+            final Recorder recorder = new Recorder() {
+                @Override
+                public void apply(@NonNull String s) {
+                    super.apply(s);
+                    dispatch[0].cancel();
+                }
+            };
+
+            dispatch[0] = listeners.forEachIncrementally(recorder);
+
+            assertTrue(dispatch[0].resume(Long.MAX_VALUE));
+            assertEquals(Collections.singletonList("a"), recorder.log);
+        }
+    }
+
+    @Test
+    public void cleared_finishes() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b"));
+
+            final Recorder recorder = new Recorder();
+            final Listeners.IncrementalDispatch dispatch = listeners.forEachIncrementally(recorder);
+
+            dispatch.resume(ONE);
+
+            listeners.clear();
+            listeners.add("c");
+
+            assertTrue(dispatch.resume(Long.MAX_VALUE));
+            assertEquals(Collections.singletonList("a"), recorder.log);
+        }
+    }
+
+    @Test
+    public void multiple_passes() {
+
+        for (Listeners<String> listeners : all()) {
+
+            listeners.addAll(Arrays.asList("a", "b", "c"));
+
+            final Recorder first = new Recorder();
+            final Recorder second = new Recorder();
+
+            final Listeners.IncrementalDispatch one = listeners.forEachIncrementally(first);
+            one.resume(ONE);
+
+            final Listeners.IncrementalDispatch two = listeners.forEachIncrementally(second);
+            two.resume(ONE);
+            two.resume(ONE);
+
+            listeners.remove("b");
+
+            assertTrue(one.resume(Long.MAX_VALUE));
+            assertTrue(two.resume(Long.MAX_VALUE));
+
+            assertEquals(Arrays.asList("a", "c"), first.log);
+            assertEquals(Arrays.asList("a", "b", "c"), second.log);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resumed_by_own_action() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+
+        final Listeners.IncrementalDispatch[] dispatch = new Listeners.IncrementalDispatch[1];
+        dispatch[0] = listeners.forEachIncrementally(new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                dispatch[0].resume(Long.MAX_VALUE);
+            }
+        });
+
+        dispatch[0].resume(Long.MAX_VALUE);
+    }
+
+    @NonNull
+    private static List<Listeners<String>> all() {
+        return Arrays.asList(
+                Listeners.<String>create(),
+                Listeners.<String>createDeferredRemoval(),
+                Listeners.<String>createPriority(),
+                Listeners.<String>createConcurrent()
+        );
+    }
+
+    @NonNull
+    private static List<String> elements(@NonNull Listeners<String> listeners) {
+        final List<String> list = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            list.add(s);
+        }
+        return list;
+    }
+}
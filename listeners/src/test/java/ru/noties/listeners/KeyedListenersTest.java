@@ -0,0 +1,199 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedListenersTest {
+
+    private static class Recorder {
+
+        final String name;
+        final List<String> log;
+
+        Recorder(@NonNull String name, @NonNull List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        void onEvent(int event) {
+            log.add(name + event);
+        }
+    }
+
+    private static final Listeners.BiAction<Recorder, Integer> ON_EVENT = new Listeners.BiAction<Recorder, Integer>() {
+        @Override
+        public void apply(@NonNull Recorder recorder, Integer event) {
+            recorder.onEvent(event);
+        }
+    };
+
+    @Test
+    public void delivered_to_key_only() {
+
+        final KeyedListeners<Long, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(1L, new Recorder("a", log));
+        listeners.add(2L, new Recorder("b", log));
+        listeners.add(1L, new Recorder("c", log));
+
+        listeners.dispatch(1L, ON_EVENT, 1);
+        listeners.dispatch(2L, ON_EVENT, 2);
+        listeners.dispatch(3L, ON_EVENT, 3);
+
+        listeners.forEach(2L, new Listeners.Action<Recorder>() {
+            @Override
+            public void apply(@NonNull Recorder recorder) {
+                recorder.onEvent(4);
+            }
+        });
+
+        assertEquals(Arrays.asList("a1", "c1", "b2", "b4"), log);
+        assertEquals(2, listeners.size(1L));
+        assertEquals(0, listeners.size(3L));
+    }
+
+    @Test
+    public void empty_key_removed() {
+
+        final KeyedListeners<String, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+        final Recorder a = new Recorder("a", log);
+        final Recorder b = new Recorder("b", log);
+
+        listeners.add("first", a);
+        listeners.add("first", b);
+        final Listeners.Registration registration = listeners.register("second", a);
+        listeners.add("third", b);
+
+        assertEquals(3, listeners.keys().size());
+
+        listeners.remove("first", a);
+        assertEquals(3, listeners.keys().size());
+
+        listeners.remove("first", b);
+        registration.remove();
+        listeners.clear("third");
+
+        assertTrue(listeners.keys().isEmpty());
+
+        // removed key is created again
+        listeners.add("first", a);
+        listeners.dispatch("first", ON_EVENT, 1);
+        assertEquals(Collections.singletonList("a1"), log);
+
+        // no op
+        registration.remove();
+        assertEquals(Collections.singleton("first"), listeners.keys());
+    }
+
+    @Test
+    public void removed_self_whilst_dispatching() {
+
+        final KeyedListeners<Integer, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            listeners.add(1, new Recorder(String.valueOf(i), log) {
+                @Override
+                void onEvent(int event) {
+                    super.onEvent(event);
+                    listeners.remove(1, this);
+                    // key is kept until dispatch has finished
+                    assertEquals(Collections.singleton(1), listeners.keys());
+                }
+            });
+        }
+
+        listeners.dispatch(1, ON_EVENT, 0);
+
+        assertEquals(Arrays.asList("00", "10", "20"), log);
+        assertTrue(listeners.keys().isEmpty());
+    }
+
+    @Test
+    public void added_whilst_dispatching_to_emptied_key() {
+
+        final KeyedListeners<Integer, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+        final Recorder b = new Recorder("b", log);
+
+        listeners.add(1, new Recorder("a", log) {
+            @Override
+            void onEvent(int event) {
+                super.onEvent(event);
+                listeners.remove(1, this);
+                listeners.add(1, b);
+            }
+        });
+
+        listeners.dispatch(1, ON_EVENT, 0);
+
+        // added element is delivered (the same bucket)
+        assertEquals(Arrays.asList("a0", "b0"), log);
+        assertEquals(1, listeners.size(1));
+    }
+
+    @Test
+    public void nested_dispatch() {
+
+        final KeyedListeners<Integer, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(1, new Recorder("a", log) {
+            @Override
+            void onEvent(int event) {
+                super.onEvent(event);
+                if (event == 0) {
+                    listeners.dispatch(2, ON_EVENT, 1);
+                    listeners.dispatch(1, ON_EVENT, 1);
+                    listeners.remove(1, this);
+                }
+            }
+        });
+        listeners.add(2, new Recorder("b", log));
+
+        listeners.dispatch(1, ON_EVENT, 0);
+
+        assertEquals(Arrays.asList("a0", "b1", "a1"), log);
+        assertEquals(Collections.singleton(2), listeners.keys());
+    }
+
+    @Test
+    public void clear_whilst_dispatching() {
+
+        final KeyedListeners<Integer, Recorder> listeners = KeyedListeners.create();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(1, new Recorder("a", log) {
+            @Override
+            void onEvent(int event) {
+                super.onEvent(event);
+                listeners.clear();
+            }
+        });
+        listeners.add(1, new Recorder("b", log));
+        listeners.add(2, new Recorder("c", log));
+
+        listeners.dispatch(1, ON_EVENT, 0);
+
+        assertEquals(Collections.singletonList("a0"), log);
+        assertTrue(listeners.keys().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void keys_unmodifiable() {
+        final KeyedListeners<Integer, Recorder> listeners = KeyedListeners.create();
+        listeners.add(1, new Recorder("a", new ArrayList<String>()));
+        listeners.keys().clear();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.noties.listeners;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.count());
+        assertEquals(0L, histogram.max());
+        assertEquals(0L, histogram.valueAtPercentile(50.0D));
+    }
+
+    @Test
+    public void small_values_exact() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10L, histogram.count());
+        assertEquals(10L, histogram.max());
+        assertEquals(5L, histogram.valueAtPercentile(50.0D));
+        assertEquals(9L, histogram.valueAtPercentile(90.0D));
+        assertEquals(10L, histogram.valueAtPercentile(100.0D));
+        assertEquals(1L, histogram.valueAtPercentile(0.0D));
+    }
+
+    @Test
+    public void precision() {
+
+        final long[] values = {
+                17L, 100L, 1000L, 12345L, 1000000L, 987654321L, 60000000000L, Long.MAX_VALUE
+        };
+
+        for (long value : values) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            // lower one, so percentile is not capped with max
+            histogram.record(value - 1);
+            final long reported = histogram.valueAtPercentile(50.0D);
+            assertTrue(value + " " + reported, reported >= value - 1);
+            assertTrue(value + " " + reported, (double) (reported - value + 1) / value < 0.0625D);
+        }
+    }
+
+    @Test
+    public void buckets_continuous() {
+        // each value belongs to a bucket whose highest value is not less than it
+        int previous = -1;
+        for (long value = 0L; value < 100000L; value++) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void percentiles() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000L);
+        }
+        histogram.record(1000000L);
+
+        assertEquals(100L, histogram.count());
+        assertEquals(1000000L, histogram.max());
+        assertTrue(histogram.valueAtPercentile(99.0D) < 1100L);
+        assertEquals(1000000L, histogram.valueAtPercentile(100.0D));
+
+        histogram.reset();
+        assertEquals(0L, histogram.count());
+        assertEquals(0L, histogram.valueAtPercentile(99.0D));
+    }
+}
@@ -0,0 +1,97 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// kinds of Listeners that share the same contract. Tests that check the contract are run against
+// each kind with Parameterized runner (see #parameters), a kind is reported as a test name
+enum ListenersKind {
+
+    DEFAULT {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.create(initialCapacity);
+        }
+    },
+
+    DEFERRED_REMOVAL {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createDeferredRemoval(initialCapacity);
+        }
+    },
+
+    // elements must be strongly referenced by a test
+    WEAK {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createWeak(initialCapacity);
+        }
+    },
+
+    PRIORITY {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createPriority(initialCapacity);
+        }
+    },
+
+    // capacity is not used (the same for the kinds below)
+    CONCURRENT {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createConcurrent();
+        }
+    },
+
+    UNIQUE {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createUnique();
+        }
+    },
+
+    // replays the last notification to an added element
+    STICKY {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createSticky(1);
+        }
+    },
+
+    QUEUED_DISPATCH {
+        @NonNull
+        @Override
+        <T> Listeners<T> create(int initialCapacity) {
+            return Listeners.createQueuedDispatch();
+        }
+    };
+
+    @NonNull
+    abstract <T> Listeners<T> create(int initialCapacity);
+
+    // with lazily allocated capacity (the same as factory methods without arguments)
+    @NonNull
+    <T> Listeners<T> create() {
+        return create(0);
+    }
+
+    @NonNull
+    static Collection<Object[]> parameters(@NonNull ListenersKind... kinds) {
+        final List<Object[]> parameters = new ArrayList<>(kinds.length);
+        for (ListenersKind kind : kinds) {
+            parameters.add(new Object[]{kind});
+        }
+        return parameters;
+    }
+}
@@ -1,17 +1,29 @@
 package ru.noties.listeners;
 
+import android.support.annotation.NonNull;
+
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @SuppressWarnings("unused")
 public class ListenersTest {
@@ -21,18 +33,20 @@ public class ListenersTest {
     public void new_iteration_requested_whilst_previous_not_finished() {
         final Listeners<Object> listeners = Listeners.create();
         listeners.add(new Object());
-        boolean started = false;
+        listeners.add(new Object());
+        int outer = 0;
+        int inner = 0;
         for (Object o1 : listeners.begin()) {
-            started = true;
-            try {
-                for (Object o2 : listeners.begin()) {
-                    assertTrue(false);
-                }
-            } catch (IllegalStateException e) {
-                assertTrue(true);
+            outer += 1;
+            for (Object o2 : listeners.begin()) {
+                inner += 1;
             }
+            // nested iteration must not finish outer one
+            assertTrue(listeners.isIterating());
         }
-        assertTrue(started);
+        assertEquals(2, outer);
+        assertEquals(4, inner);
+        assertFalse(listeners.isIterating());
     }
 
     @Test
@@ -343,18 +357,18 @@ public class ListenersTest {
 
         boolean started = false;
 
+        int inner = 0;
+
         for (Object o1 : listeners.begin()) {
             started = true;
-            try {
-                //noinspection StatementWithEmptyBody
-                for (Object o2 : listeners.beginReversed()) ;
-                assertTrue(false);
-            } catch (IllegalStateException e) {
-                assertTrue(true);
+            for (Object o2 : listeners.beginReversed()) {
+                inner += 1;
             }
         }
 
         assertTrue(started);
+        assertEquals(1, inner);
+        assertFalse(listeners.isIterating());
     }
 
     @Test
@@ -368,14 +382,131 @@ public class ListenersTest {
         //noinspection unused
         for (Object o1 : listeners.beginReversed()) {
             started = true;
-            try {
-                listeners.beginReversed();
-                assertTrue(false);
-            } catch (IllegalStateException e) {
-                assertTrue(true);
-            }
+            // nested iteration is exited early without a call to `end`
+            listeners.beginReversed();
         }
         assertTrue(started);
+
+        // natural end of outer iteration finishes abandoned nested one also
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void nested_iteration_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        boolean nested = false;
+
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            if (!nested) {
+                nested = true;
+                // each element removes self in nested iteration
+                for (Object o2 : listeners.begin()) {
+                    if (o2 != o) {
+                        listeners.remove(o2);
+                    }
+                }
+            }
+        }
+
+        assertEquals(1, visited.size());
+        assertEquals(1, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void nested_iteration_removal_shifts_outer_iteration() {
+
+        final Object[] objects = new Object[10];
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            if (o == objects[4]) {
+                // removes already visited and not yet visited elements
+                for (Object o2 : listeners.beginReversed()) {
+                    if (o2 == objects[1] || o2 == objects[6]) {
+                        listeners.remove(o2);
+                    }
+                }
+            }
+        }
+
+        assertEquals(9, visited.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i != 6, visited.contains(objects[i]));
+        }
+        assertEquals(8, listeners.size());
+    }
+
+    @Test
+    public void nested_iteration_end() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 3; i++) {
+            listeners.add(new Object());
+        }
+
+        int outer = 0;
+        int inner = 0;
+
+        for (Object o : listeners.begin()) {
+            outer += 1;
+            for (Object o2 : listeners.begin()) {
+                inner += 1;
+                break;
+            }
+            // finishes nested iteration only
+            listeners.end();
+            assertTrue(listeners.isIterating());
+        }
+
+        assertEquals(3, outer);
+        assertEquals(3, inner);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void re_entrant_notification() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        listeners.add(new Object());
+        listeners.add(new Object());
+
+        final int[] notifications = {0};
+
+        new Object() {
+
+            int depth;
+
+            void notifyListeners() {
+                depth += 1;
+                for (Object o : listeners.begin()) {
+                    notifications[0] += 1;
+                    if (depth < 3) {
+                        notifyListeners();
+                    }
+                }
+                depth -= 1;
+            }
+        }.notifyListeners();
+
+        // 2 + 2 * 2 + 2 * 2 * 2
+        assertEquals(14, notifications[0]);
+        assertFalse(listeners.isIterating());
     }
 
     @Test
@@ -422,6 +553,27 @@ public class ListenersTest {
         assertEquals(1, listeners.size());
     }
 
+    @Test
+    public void element_removes_element_to_be_visited_next_reversed() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        listeners.add("b");
+        listeners.add("c");
+
+        final StringBuilder builder = new StringBuilder();
+
+        for (String s : listeners.beginReversed()) {
+            builder.append(s);
+            if ("c".equals(s)) {
+                listeners.remove("b");
+            }
+        }
+
+        // `c` must not be visited again
+        assertEquals("ca", builder.toString());
+    }
+
     @Test
     public void each_element_removes_first_reversed() {
 
@@ -435,18 +587,17 @@ public class ListenersTest {
             listeners.add(o);
         }
 
-        int iterations = 0;
+        final Set<Object> visited = new HashSet<>();
 
         for (Object o : listeners.beginReversed()) {
-            if (iterations == 5) {
-                assertEquals(o, list.get(0));
-            }
+            // each element is visited once
+            assertTrue(visited.add(o));
             listeners.remove(list.remove(0));
-            iterations += 1;
         }
 
-        // actually 6 as last item removes self
-        assertEquals(6, iterations);
+        // the 5th element removes the one that would have been visited next, which is the last one
+        assertEquals(5, visited.size());
+        assertEquals(5, listeners.size());
     }
 
     @Test
@@ -579,4 +730,690 @@ public class ListenersTest {
         assertEquals(0, iterations);
         assertFalse(listeners.isIterating());
     }
+
+    @Test
+    public void registration_remove() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Object object = new Object();
+        listeners.add(new Object());
+
+        final Listeners.Registration registration = listeners.register(object);
+        assertEquals(2, listeners.size());
+
+        registration.remove();
+        assertEquals(1, listeners.size());
+
+        for (Object o : listeners.begin()) {
+            assertTrue(o != object);
+        }
+
+        // no effect
+        registration.close();
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void registration_removes_exact_element() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Object object = new Object();
+        final Object other = new Object();
+
+        final Listeners.Registration first = listeners.register(object);
+        listeners.add(other);
+        listeners.register(object);
+
+        first.remove();
+
+        final List<Object> visited = new ArrayList<>();
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+        }
+
+        assertEquals(2, visited.size());
+        assertEquals(other, visited.get(0));
+        assertEquals(object, visited.get(1));
+    }
+
+    @Test
+    public void registration_after_element_removed() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Object object = new Object();
+
+        final Listeners.Registration registration = listeners.register(object);
+        listeners.remove(object);
+        listeners.add(object);
+
+        // registration is not valid anymore, so element added again must stay
+        registration.remove();
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void registration_remove_after_clear() {
+
+        final Listeners<Object> listeners = Listeners.create();
+
+        final Listeners.Registration registration = listeners.register(new Object());
+        listeners.clear();
+        listeners.add(new Object());
+
+        registration.remove();
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void registration_valid_after_removal_of_previous_element() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Object first = new Object();
+        final Object second = new Object();
+
+        listeners.add(first);
+        final Listeners.Registration registration = listeners.register(second);
+
+        // shifts registered element
+        listeners.remove(first);
+
+        registration.remove();
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void registration_each_element_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Map<Object, Listeners.Registration> registrations = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            final Object o = new Object();
+            registrations.put(o, listeners.register(o));
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            registrations.get(o).remove();
+            assertEquals(10 - iterations, listeners.size());
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void registration_each_element_removes_self_reversed() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final Map<Object, Listeners.Registration> registrations = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            final Object o = new Object();
+            registrations.put(o, listeners.register(o));
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.beginReversed()) {
+            iterations += 1;
+            registrations.get(o).remove();
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void registration_each_element_removes_next() {
+
+        final Object[] objects = new Object[10];
+        final Listeners.Registration[] registrations = new Listeners.Registration[10];
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            registrations[i] = listeners.register(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 0;
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            registrations[i + 1].remove();
+            i += 2;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 0, visited.contains(objects[p]));
+        }
+        assertEquals(5, listeners.size());
+    }
+
+    @Test
+    public void registration_each_element_removes_next_reversed() {
+
+        final Object[] objects = new Object[10];
+        final Listeners.Registration[] registrations = new Listeners.Registration[10];
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            registrations[i] = listeners.register(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 9;
+        for (Object o : listeners.beginReversed()) {
+            visited.add(o);
+            registrations[i - 1].remove();
+            i -= 2;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 1, visited.contains(objects[p]));
+        }
+    }
+
+    @Test
+    public void registration_removal_whilst_iterating_and_adding() {
+
+        final Listeners<Object> listeners = Listeners.create(2);
+        final List<Listeners.Registration> registrations = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            registrations.add(listeners.register(new Object()));
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            // removes all previous, adds new one (which will grow underlying array)
+            for (Listeners.Registration registration : registrations) {
+                registration.remove();
+            }
+            registrations.clear();
+            if (iterations < 10) {
+                registrations.add(listeners.register(new Object()));
+            }
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void registration_valid_after_compaction() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        final List<Object> objects = new ArrayList<>();
+        final List<Listeners.Registration> registrations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Object o = new Object();
+            objects.add(o);
+            registrations.add(listeners.register(o));
+        }
+
+        // remove each even
+        for (int i = 0; i < 100; i += 2) {
+            registrations.get(i).remove();
+        }
+
+        // removes enough elements for compaction to take place
+        for (int i = 1; i < 80; i += 2) {
+            registrations.get(i).close();
+        }
+
+        assertEquals(10, listeners.size());
+
+        final List<Object> visited = new ArrayList<>();
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+        }
+        assertEquals(10, visited.size());
+
+        for (int i = 81; i < 100; i += 2) {
+            assertTrue(visited.contains(objects.get(i)));
+            registrations.get(i).remove();
+        }
+
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_each_element_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            listeners.remove(o);
+            assertEquals(10 - iterations, listeners.size());
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+
+        // collection is usable after compaction
+        final Object object = new Object();
+        listeners.add(object);
+        for (Object o : listeners.begin()) {
+            assertEquals(object, o);
+        }
+    }
+
+    @Test
+    public void deferred_removal_each_element_removes_self_reversed() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.beginReversed()) {
+            iterations += 1;
+            listeners.remove(o);
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_each_element_removes_next() {
+
+        final Object[] objects = new Object[10];
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 0;
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            listeners.remove(objects[i + 1]);
+            i += 2;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 0, visited.contains(objects[p]));
+        }
+        assertEquals(5, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_each_element_removes_first_reversed() {
+
+        final List<Object> list = new ArrayList<>(10);
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            final Object o = new Object();
+            list.add(o);
+            listeners.add(o);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        for (Object o : listeners.beginReversed()) {
+            visited.add(o);
+            listeners.remove(list.remove(0));
+        }
+
+        // each element is visited once
+        assertEquals(5, visited.size());
+        assertEquals(5, new HashSet<>(visited).size());
+        assertEquals(5, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_each_element_removes_previous() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int iterations = 0;
+        Object previous = null;
+        for (Object o : listeners.begin()) {
+            if (previous != null) {
+                listeners.remove(previous);
+            }
+            previous = o;
+            iterations += 1;
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_add_during_iteration() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval(2);
+        listeners.add(new Object());
+        listeners.add(new Object());
+
+        int iterations = 0;
+        for (Object o : listeners.begin()) {
+            listeners.remove(o);
+            if (++iterations < 10) {
+                listeners.add(new Object());
+            }
+        }
+
+        assertEquals(11, iterations);
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_early_exit() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        for (Object o : listeners.begin()) {
+            listeners.remove(o);
+            if (listeners.size() == 5) {
+                break;
+            }
+        }
+        listeners.end();
+
+        assertEquals(5, listeners.size());
+
+        int iterations = 0;
+        for (Object o : listeners.beginReversed()) {
+            iterations += 1;
+        }
+        assertEquals(5, iterations);
+    }
+
+    @Test
+    public void deferred_removal_nested() {
+
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        int outer = 0;
+        for (Object o : listeners.begin()) {
+            outer += 1;
+            for (Object o2 : listeners.begin()) {
+                if (o2 != o) {
+                    listeners.remove(o2);
+                }
+            }
+            // still iterating, removed elements must be skipped
+            assertEquals(1, listeners.size());
+        }
+
+        assertEquals(1, outer);
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void deferred_removal_not_iterating() {
+
+        final Object[] objects = new Object[3];
+        final Listeners<Object> listeners = Listeners.createDeferredRemoval();
+        for (int i = 0; i < 3; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        listeners.remove(objects[1]);
+        assertEquals(2, listeners.size());
+
+        final List<Object> visited = new ArrayList<>();
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+        }
+        assertEquals(2, visited.size());
+        assertEquals(objects[0], visited.get(0));
+        assertEquals(objects[2], visited.get(1));
+    }
+
+    @Test
+    public void for_each() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                visited.add(o);
+            }
+        });
+
+        assertEquals(10, visited.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_removes_self() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final int[] iterations = {0};
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                iterations[0] += 1;
+                listeners.remove(o);
+            }
+        });
+
+        assertEquals(10, iterations[0]);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_action_throws() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        try {
+            listeners.forEach(new Listeners.Action<Object>() {
+                @Override
+                public void apply(@NonNull Object o) {
+                    throw new IllegalStateException();
+                }
+            });
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        // iteration is finished
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_end() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new Object());
+        }
+
+        final int[] iterations = {0};
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                if (++iterations[0] == 5) {
+                    listeners.end();
+                }
+            }
+        });
+
+        assertEquals(5, iterations[0]);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void for_each_nested() {
+
+        final Listeners<Object> listeners = Listeners.create();
+        listeners.add(new Object());
+        listeners.add(new Object());
+
+        final int[] iterations = {0};
+
+        for (Object o : listeners.begin()) {
+            listeners.forEach(new Listeners.Action<Object>() {
+                @Override
+                public void apply(@NonNull Object o) {
+                    // early exit of nested iteration, must be finished by forEach
+                    for (Object o2 : listeners.begin()) {
+                        iterations[0] += 1;
+                        break;
+                    }
+                }
+            });
+            assertTrue(listeners.isIterating());
+        }
+
+        assertEquals(4, iterations[0]);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void dispatch() {
+
+        final Listeners<List<Object>> listeners = Listeners.create();
+        final List<Object> first = new ArrayList<>();
+        final List<Object> second = new ArrayList<>();
+        listeners.add(first);
+        listeners.add(second);
+
+        final Listeners.BiAction<List<Object>, Object> action = new Listeners.BiAction<List<Object>, Object>() {
+            @Override
+            public void apply(@NonNull List<Object> list, Object argument) {
+                list.add(argument);
+            }
+        };
+
+        final Object argument = new Object();
+        listeners.dispatch(action, argument);
+
+        assertEquals(1, first.size());
+        assertEquals(argument, first.get(0));
+        assertEquals(1, second.size());
+        assertEquals(argument, second.get(0));
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void dispatch_async_skips_removed() {
+
+        final Listeners<String> listeners = Listeners.create();
+        listeners.add("a");
+        listeners.add("b");
+
+        final List<Runnable> runnables = new ArrayList<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                runnables.add(command);
+            }
+        };
+
+        final List<String> delivered = new ArrayList<>();
+        final Future<Void> future = listeners.dispatchAsync(executor, new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                delivered.add(s);
+            }
+        });
+
+        // elements present at the time of the call are delivered, unless removed
+        listeners.remove("a");
+        listeners.add("c");
+
+        assertFalse(future.isDone());
+        assertEquals(1, runnables.size());
+
+        runnables.remove(0).run();
+
+        assertTrue(future.isDone());
+        assertEquals(Arrays.asList("b"), delivered);
+    }
+
+    @Test
+    public void dispatch_async_in_order() throws Exception {
+
+        final Listeners<String> listeners = Listeners.createWeak();
+        listeners.add("a");
+
+        final List<Runnable> runnables = new ArrayList<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                runnables.add(command);
+            }
+        };
+
+        final List<String> delivered = new ArrayList<>();
+
+        final Future<Void> failed = listeners.dispatchAsync(executor, new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                throw new IllegalStateException(s);
+            }
+        });
+        final Future<Void> second = listeners.dispatchAsync(executor, new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                delivered.add(s);
+            }
+        });
+
+        // the next one is executed after the previous one has finished
+        assertEquals(1, runnables.size());
+        runnables.remove(0).run();
+
+        assertTrue(failed.isDone());
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(1, runnables.size());
+        runnables.remove(0).run();
+
+        assertNull(second.get());
+        assertEquals(Collections.singletonList("a"), delivered);
+    }
 }
@@ -0,0 +1,197 @@
+package ru.noties.listeners;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MulticasterTest {
+
+    // package-private on purpose
+    interface Base {
+        void onBase(long value);
+    }
+
+    interface Listener extends Base {
+
+        void onEvent(int value, String name);
+
+        void onEmpty();
+
+        void onVarargs(String... values);
+
+        void onChecked() throws IOException;
+    }
+
+    private static class Recorder implements Listener {
+
+        final String name;
+        final List<String> log;
+
+        Recorder(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void onBase(long value) {
+            log.add(name + ":base:" + value);
+        }
+
+        @Override
+        public void onEvent(int value, String name) {
+            log.add(this.name + ":" + value + name);
+        }
+
+        @Override
+        public void onEmpty() {
+            log.add(name + ":empty");
+        }
+
+        @Override
+        public void onVarargs(String... values) {
+            log.add(name + ":" + values.length);
+        }
+
+        @Override
+        public void onChecked() throws IOException {
+            log.add(name + ":checked");
+            throw new IOException(name);
+        }
+    }
+
+    @Test
+    public void delivered_to_each() {
+
+        final Listeners<Listener> listeners = Listeners.create();
+        final List<String> log = new ArrayList<>();
+        listeners.add(new Recorder("a", log));
+        listeners.add(new Recorder("b", log));
+
+        final Listener multicaster = listeners.multicaster(Listener.class);
+        multicaster.onEvent(1, "one");
+        multicaster.onEmpty();
+        multicaster.onVarargs("x", "y");
+        multicaster.onBase(42L);
+
+        assertEquals(Arrays.asList(
+                "a:1one", "b:1one",
+                "a:empty", "b:empty",
+                "a:2", "b:2",
+                "a:base:42", "b:base:42"), log);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void modifications_whilst_dispatching() {
+
+        final Listeners<Listener> listeners = Listeners.createConcurrent();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEmpty() {
+                super.onEmpty();
+                listeners.remove(this);
+            }
+        });
+        listeners.add(new Recorder("b", log));
+
+        final Listener multicaster = listeners.multicaster(Listener.class);
+        multicaster.onEmpty();
+        multicaster.onEmpty();
+
+        assertEquals(Arrays.asList("a:empty", "b:empty", "b:empty"), log);
+    }
+
+    @Test
+    public void exception_propagated_iteration_finished() {
+
+        final Listeners<Listener> listeners = Listeners.create();
+        final List<String> log = new ArrayList<>();
+        listeners.add(new Recorder("a", log));
+        listeners.add(new Recorder("b", log));
+
+        try {
+            listeners.multicaster(Listener.class).onChecked();
+            assertTrue(false);
+        } catch (IOException e) {
+            assertEquals("a", e.getMessage());
+        }
+
+        assertEquals(Arrays.asList("a:checked"), log);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void reflection_fallback() {
+
+        // the same as used on Android
+        final Listeners<Listener> listeners = Listeners.create();
+        final List<String> log = new ArrayList<>();
+        listeners.add(new Recorder("a", log));
+        listeners.add(new Recorder("b", log));
+
+        final Listener multicaster = Multicaster.create(listeners, Listener.class, false);
+        multicaster.onEvent(1, "one");
+        multicaster.onEmpty();
+        multicaster.onVarargs("x", "y");
+        multicaster.onBase(42L);
+
+        try {
+            multicaster.onChecked();
+            assertTrue(false);
+        } catch (IOException e) {
+            assertEquals("a", e.getMessage());
+        }
+
+        assertEquals(Arrays.asList(
+                "a:1one", "b:1one",
+                "a:empty", "b:empty",
+                "a:2", "b:2",
+                "a:base:42", "b:base:42",
+                "a:checked"), log);
+        assertEquals(multicaster, multicaster);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void object_methods() {
+
+        final Listeners<Listener> listeners = Listeners.create();
+        listeners.add(new Recorder("a", new ArrayList<String>()));
+
+        final Listener first = listeners.multicaster(Listener.class);
+        final Listener second = listeners.multicaster(Listener.class);
+
+        assertEquals(first, first);
+        assertNotEquals(first, second);
+        assertEquals(System.identityHashCode(first), first.hashCode());
+        assertTrue(first.toString(), first.toString().contains(Listener.class.getName()));
+        assertFalse(listeners.isIterating());
+    }
+
+    private interface NonVoid {
+        boolean onEvent();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void non_void_method() {
+        Listeners.<NonVoid>create().multicaster(NonVoid.class);
+    }
+
+    private static abstract class NotInterface {
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_interface() {
+        Listeners.<NotInterface>create().multicaster(NotInterface.class);
+    }
+}
@@ -0,0 +1,171 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelDispatchTest {
+
+    private static final Listeners.Action<AtomicInteger> INCREMENT = new Listeners.Action<AtomicInteger>() {
+        @Override
+        public void apply(@NonNull AtomicInteger counter) {
+            counter.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void each_element_processed_once() {
+        each_element_processed_once(Listeners.<AtomicInteger>create());
+        each_element_processed_once(Listeners.<AtomicInteger>createWeak());
+        each_element_processed_once(Listeners.<AtomicInteger>createPriority());
+        each_element_processed_once(Listeners.<AtomicInteger>createConcurrent());
+    }
+
+    private static void each_element_processed_once(@NonNull Listeners<AtomicInteger> listeners) {
+
+        final AtomicInteger[] counters = new AtomicInteger[1000];
+        final Listeners.Registration[] registrations = new Listeners.Registration[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicInteger();
+            registrations[i] = listeners.register(counters[i]);
+        }
+
+        // removed elements must be skipped
+        for (int i = 0; i < counters.length; i += 10) {
+            registrations[i].remove();
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // small threshold, so array is split in a lot of ranges
+            listeners.parallelDispatch(INCREMENT, pool, 7);
+            listeners.parallelDispatch(INCREMENT);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < counters.length; i++) {
+            assertEquals(i % 10 == 0 ? 0 : 2, counters[i].get());
+        }
+    }
+
+    @Test
+    public void modification_not_allowed() {
+
+        final Listeners<AtomicInteger> listeners = Listeners.create();
+        for (int i = 0; i < 10; i++) {
+            listeners.add(new AtomicInteger());
+        }
+
+        final AtomicInteger thrown = new AtomicInteger();
+
+        listeners.parallelDispatch(new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger counter) {
+                try {
+                    listeners.remove(counter);
+                } catch (IllegalStateException e) {
+                    thrown.incrementAndGet();
+                }
+                try {
+                    listeners.add(new AtomicInteger());
+                } catch (IllegalStateException e) {
+                    thrown.incrementAndGet();
+                }
+                try {
+                    listeners.begin();
+                } catch (IllegalStateException e) {
+                    thrown.incrementAndGet();
+                }
+                try {
+                    listeners.dispatchAsync(new Executor() {
+                        @Override
+                        public void execute(@NonNull Runnable command) {
+                            command.run();
+                        }
+                    }, INCREMENT);
+                } catch (IllegalStateException e) {
+                    thrown.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(40, thrown.get());
+        assertEquals(10, listeners.size());
+
+        // can be modified after dispatch has finished
+        listeners.add(new AtomicInteger());
+        assertEquals(11, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void action_throws() {
+
+        final Listeners<AtomicInteger> listeners = Listeners.create();
+        for (int i = 0; i < 100; i++) {
+            listeners.add(new AtomicInteger(i));
+        }
+
+        try {
+            listeners.parallelDispatch(new Listeners.Action<AtomicInteger>() {
+                @Override
+                public void apply(@NonNull AtomicInteger counter) {
+                    if (counter.get() == 50) {
+                        throw new IllegalStateException("50");
+                    }
+                }
+            }, new ForkJoinPool(2), 10);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        // dispatch has finished
+        listeners.clear();
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void concurrent_removed_not_delivered_added_not_delivered() {
+
+        final Listeners<AtomicInteger> listeners = Listeners.createConcurrent();
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final AtomicInteger added = new AtomicInteger();
+        listeners.add(first);
+        listeners.add(second);
+
+        // sequential (threshold), so order is defined
+        listeners.parallelDispatch(new Listeners.Action<AtomicInteger>() {
+            @Override
+            public void apply(@NonNull AtomicInteger counter) {
+                counter.incrementAndGet();
+                listeners.remove(second);
+                listeners.add(added);
+            }
+        });
+
+        assertEquals(1, first.get());
+        assertEquals(0, second.get());
+        assertEquals(0, added.get());
+        assertEquals(2, listeners.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threshold_must_be_positive() {
+        Listeners.create().parallelDispatch(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+            }
+        }, new ForkJoinPool(1), 0);
+    }
+}
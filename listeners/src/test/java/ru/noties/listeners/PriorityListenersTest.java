@@ -0,0 +1,356 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PriorityListenersTest {
+
+    @Test
+    public void iterated_in_priority_order() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("low", -10);
+        listeners.add("default");
+        listeners.add("high", 10);
+        listeners.add("highest", 100);
+
+        assertEquals(Arrays.asList("highest", "high", "default", "low"), iterate(listeners));
+        assertEquals(Arrays.asList("low", "default", "high", "highest"), iterateReversed(listeners));
+    }
+
+    @Test
+    public void same_priority_in_order_of_addition() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority(1);
+        listeners.add("1", 1);
+        listeners.add("2", 2);
+        listeners.add("3", 1);
+        listeners.add("4", 2);
+        listeners.add("5", 1);
+
+        assertEquals(Arrays.asList("2", "4", "1", "3", "5"), iterate(listeners));
+    }
+
+    @Test
+    public void many_elements() {
+
+        final PriorityListeners<Integer> listeners = Listeners.createPriority();
+        for (int i = 0; i < 100; i++) {
+            // mix priorities
+            final int value = (i * 37) % 100;
+            listeners.add(value, value);
+        }
+
+        int previous = Integer.MAX_VALUE;
+        for (Integer i : listeners.begin()) {
+            assertTrue(i < previous);
+            previous = i;
+        }
+        assertEquals(100, listeners.size());
+    }
+
+    @Test
+    public void inserted_after_cursor_visited() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 10);
+        listeners.add("b", 0);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            if ("a".equals(s)) {
+                listeners.add("c", 5);
+            }
+        }
+
+        assertEquals(Arrays.asList("a", "c", "b"), visited);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void inserted_before_cursor_not_visited() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 10);
+        listeners.add("b", 0);
+        listeners.add("c", -10);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            if ("b".equals(s)) {
+                listeners.add("d", 20);
+                listeners.add("e", 5);
+            }
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c"), visited);
+        assertEquals(Arrays.asList("d", "a", "e", "b", "c"), iterate(listeners));
+    }
+
+    @Test
+    public void inserted_reversed() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 10);
+        listeners.add("b", 0);
+        listeners.add("c", -10);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.beginReversed()) {
+            visited.add(s);
+            if ("b".equals(s)) {
+                // before cursor (visited later)
+                listeners.add("d", 20);
+                // after cursor (already visited region)
+                listeners.add("e", -20);
+            }
+        }
+
+        assertEquals(Arrays.asList("c", "b", "a", "d"), visited);
+    }
+
+    @Test
+    public void remove_during_iteration() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 3);
+        listeners.add("b", 2);
+        listeners.add("c", 1);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            listeners.remove(s);
+            if ("a".equals(s)) {
+                listeners.add("d", 2);
+            }
+        }
+
+        assertEquals(Arrays.asList("a", "b", "d", "c"), visited);
+        assertEquals(0, listeners.size());
+    }
+
+    @Test
+    public void registration_after_insertions() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        final Listeners.Registration a = listeners.register("a", 1);
+        final Listeners.Registration b = listeners.register("b");
+        listeners.add("c", 2);
+        final Listeners.Registration d = listeners.register("d", 1);
+
+        assertEquals(Arrays.asList("c", "a", "d", "b"), iterate(listeners));
+
+        a.remove();
+        assertEquals(Arrays.asList("c", "d", "b"), iterate(listeners));
+
+        listeners.add("e", 1);
+        b.remove();
+        assertEquals(Arrays.asList("c", "d", "e"), iterate(listeners));
+
+        d.remove();
+        assertEquals(Arrays.asList("c", "e"), iterate(listeners));
+        assertEquals(2, listeners.size());
+    }
+
+    @Test
+    public void registration_removed_whilst_iterating() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        final Listeners.Registration a = listeners.register("a", 1);
+        listeners.add("b", 1);
+        listeners.add("c", 0);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            if ("b".equals(s)) {
+                a.remove();
+                listeners.add("d", 0);
+                listeners.add("e", 5);
+            }
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), visited);
+        assertEquals(Arrays.asList("e", "b", "c", "d"), iterate(listeners));
+    }
+
+    @Test
+    public void remove_if_throws_nothing_removed() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 1);
+        listeners.add("b", 0);
+        listeners.add("c", -1);
+
+        try {
+            listeners.removeIf(new Listeners.Predicate<String>() {
+                @Override
+                public boolean test(@NonNull String s) {
+                    if ("c".equals(s)) {
+                        throw new IllegalStateException();
+                    }
+                    return true;
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(Arrays.asList("a", "b", "c"), iterate(listeners));
+        }
+
+        assertEquals(2, listeners.removeAll(Arrays.asList("a", "c")));
+        assertEquals(Collections.singletonList("b"), iterate(listeners));
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void priority_emptied_whilst_iterating() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 2);
+        listeners.add("b", 1);
+        listeners.add("c", 0);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            if ("a".equals(s)) {
+                // removes all elements with own priority and the next one
+                listeners.remove("a");
+                listeners.remove("b");
+            } else if ("c".equals(s)) {
+                // priorities that have been visited already
+                listeners.add("d", 1);
+                listeners.add("e", 2);
+            }
+        }
+
+        assertEquals(Arrays.asList("a", "c"), visited);
+        assertEquals(Arrays.asList("e", "d", "c"), iterate(listeners));
+        assertEquals(Arrays.asList("c", "d", "e"), iterateReversed(listeners));
+    }
+
+    @Test
+    public void nested_iteration_finished() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("a", 1);
+        listeners.add("b", 0);
+        listeners.add("c", -1);
+
+        final List<String> visited = new ArrayList<>();
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            for (String inner : listeners.beginReversed()) {
+                visited.add(inner);
+                if ("b".equals(inner)) {
+                    break;
+                }
+            }
+            listeners.end();
+        }
+
+        assertEquals(Arrays.asList("a", "c", "b", "b", "c", "b", "c", "c", "b"), visited);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void dispatch_async_in_priority_order() {
+
+        final PriorityListeners<String> listeners = Listeners.createPriority();
+        listeners.add("low", -1);
+        listeners.add("high", 1);
+        listeners.add("default");
+
+        final List<Runnable> runnables = new ArrayList<>();
+        final List<String> delivered = new ArrayList<>();
+
+        listeners.dispatchAsync(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                runnables.add(command);
+            }
+        }, new Listeners.Action<String>() {
+            @Override
+            public void apply(@NonNull String s) {
+                delivered.add(s);
+            }
+        });
+
+        // removed before delivery has started
+        listeners.remove("high");
+        listeners.add("highest", 2);
+
+        runnables.remove(0).run();
+
+        assertEquals(Arrays.asList("default", "low"), delivered);
+    }
+
+    @Test
+    public void add_all_after_same_priority() {
+
+        final PriorityListeners<Integer> listeners = Listeners.createPriority();
+        listeners.add(0, 1);
+        listeners.add(1, -1);
+        listeners.add(2);
+
+        listeners.addAll(Arrays.asList(3, 4));
+
+        // after elements with the same priority
+        assertEquals(Arrays.asList(0, 2, 3, 4, 1), iterate(listeners));
+    }
+
+    @Test
+    public void add_all_whilst_iterating_reversed() {
+
+        final PriorityListeners<Integer> listeners = Listeners.createPriority();
+        listeners.add(0, -1);
+        listeners.add(1, -2);
+        listeners.add(2, -3);
+
+        final List<Integer> visited = new ArrayList<>();
+        for (Integer i : listeners.beginReversed()) {
+            visited.add(i);
+            if (i == 2) {
+                // default priority is higher, so will be visited
+                listeners.addAll(Arrays.asList(3, 4));
+            } else if (i == 0) {
+                // the same, the bucket of default priority has not been reached yet
+                listeners.addAll(Arrays.asList(5, 6));
+            }
+        }
+
+        assertEquals(Arrays.asList(2, 1, 0, 6, 5, 4, 3), visited);
+        assertEquals(Arrays.asList(3, 4, 5, 6, 0, 1, 2), iterate(listeners));
+    }
+
+    private static <T> List<T> iterate(Listeners<T> listeners) {
+        final List<T> list = new ArrayList<>();
+        for (T t : listeners.begin()) {
+            list.add(t);
+        }
+        return list;
+    }
+
+    private static <T> List<T> iterateReversed(Listeners<T> listeners) {
+        final List<T> list = new ArrayList<>();
+        for (T t : listeners.beginReversed()) {
+            list.add(t);
+        }
+        return list;
+    }
+}
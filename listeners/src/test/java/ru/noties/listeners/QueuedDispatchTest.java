@@ -0,0 +1,305 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueuedDispatchTest {
+
+    private interface Listener {
+        void onEvent(@NonNull Listeners<Listener> listeners, int event);
+    }
+
+    private static final Listeners.BiAction<Listener, Object[]> ON_EVENT = new Listeners.BiAction<Listener, Object[]>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void apply(@NonNull Listener listener, Object[] argument) {
+            listener.onEvent((Listeners<Listener>) argument[0], (Integer) argument[1]);
+        }
+    };
+
+    private static void dispatch(@NonNull Listeners<Listener> listeners, int event) {
+        listeners.dispatch(ON_EVENT, new Object[]{listeners, event});
+    }
+
+    private static class Recorder implements Listener {
+
+        final String name;
+        final List<String> log;
+
+        Recorder(@NonNull String name, @NonNull List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+            log.add(name + event);
+        }
+    }
+
+    @Test
+    public void re_entrant_dispatch_queued() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 1) {
+                    dispatch(listeners, 2);
+                    dispatch(listeners, 3);
+                    // no nested iteration
+                    assertEquals(Arrays.asList("a1"), log);
+                }
+            }
+        });
+        listeners.add(new Recorder("b", log));
+
+        dispatch(listeners, 1);
+
+        // each notification is delivered to all listeners before the next one
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3", "b3"), log);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void not_queued_nested() {
+
+        final Listeners<Listener> listeners = Listeners.create();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 1) {
+                    dispatch(listeners, 2);
+                }
+            }
+        });
+        listeners.add(new Recorder("b", log));
+
+        dispatch(listeners, 1);
+
+        assertEquals(Arrays.asList("a1", "a2", "b2", "b1"), log);
+    }
+
+    @Test
+    public void for_each_queued() {
+
+        final Listeners<Object> listeners = Listeners.createQueuedDispatch();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add("a");
+        listeners.add("b");
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                log.add("first:" + o);
+                if ("a".equals(o)) {
+                    listeners.dispatch(new Listeners.BiAction<Object, String>() {
+                        @Override
+                        public void apply(@NonNull Object o, String argument) {
+                            log.add(argument + o);
+                        }
+                    }, null);
+                    listeners.forEach(new Listeners.Action<Object>() {
+                        @Override
+                        public void apply(@NonNull Object o) {
+                            log.add("third:" + o);
+                        }
+                    });
+                }
+            }
+        });
+
+        assertEquals(Arrays.asList("first:a", "first:b", "nulla", "nullb", "third:a", "third:b"), log);
+    }
+
+    @Test
+    public void modifications_reflected_in_queued() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch();
+        final List<String> log = new ArrayList<>();
+        final Listener b = new Recorder("b", log);
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 1) {
+                    dispatch(listeners, 2);
+                    listeners.remove(b);
+                    listeners.add(new Recorder("c", log));
+                }
+            }
+        });
+        listeners.add(b);
+
+        dispatch(listeners, 1);
+
+        assertEquals(Arrays.asList("a1", "c1", "a2", "c2"), log);
+    }
+
+    @Test
+    public void feedback_loop_detected() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch(8);
+        final List<String> log = new ArrayList<>();
+
+        final Listener loop = new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                // a single pending notification at a time
+                dispatch(listeners, event + 1);
+            }
+        };
+        listeners.add(loop);
+
+        try {
+            dispatch(listeners, 0);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("in a row"));
+        }
+
+        // initial one and 8 queued
+        assertEquals(9, log.size());
+        assertFalse(listeners.isIterating());
+
+        // queue is cleared
+        listeners.remove(loop);
+        listeners.add(new Recorder("b", log));
+        log.clear();
+        dispatch(listeners, 0);
+        assertEquals(Arrays.asList("b0"), log);
+    }
+
+    @Test
+    public void too_many_pending() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch(4);
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 0) {
+                    for (int i = 1; i < 6; i++) {
+                        dispatch(listeners, i);
+                    }
+                }
+            }
+        });
+
+        try {
+            dispatch(listeners, 0);
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("pending"));
+        }
+
+        // pending notifications are discarded
+        assertEquals(Arrays.asList("a0"), log);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void queue_wraps() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch(2);
+        final List<String> log = new ArrayList<>();
+
+        // each one queues up to 2 next ones, so head moves around the buffer
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 0) {
+                    dispatch(listeners, 1);
+                    dispatch(listeners, 2);
+                } else if (event == 1) {
+                    dispatch(listeners, 3);
+                }
+            }
+        });
+
+        dispatch(listeners, 0);
+        dispatch(listeners, 0);
+
+        assertEquals(Arrays.asList("a0", "a1", "a2", "a3", "a0", "a1", "a2", "a3"), log);
+    }
+
+    @Test
+    public void exception_discards_queued() {
+
+        final Listeners<Listener> listeners = Listeners.createQueuedDispatch();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            public void onEvent(@NonNull Listeners<Listener> listeners, int event) {
+                super.onEvent(listeners, event);
+                if (event == 0) {
+                    dispatch(listeners, 1);
+                    throw new RuntimeException();
+                }
+            }
+        });
+
+        try {
+            dispatch(listeners, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {
+            assertTrue(true);
+        }
+
+        dispatch(listeners, 2);
+
+        assertEquals(Arrays.asList("a0", "a2"), log);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void begin_not_queued() {
+
+        final Listeners<Object> listeners = Listeners.createQueuedDispatch();
+        final List<String> log = new ArrayList<>();
+
+        listeners.add("a");
+        listeners.add("b");
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                log.add("outer:" + o);
+                if ("a".equals(o)) {
+                    for (Object inner : listeners.begin()) {
+                        log.add("inner:" + inner);
+                    }
+                }
+            }
+        });
+
+        assertEquals(Arrays.asList("outer:a", "inner:a", "inner:b", "outer:b"), log);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void max_queued_must_be_positive() {
+        Listeners.createQueuedDispatch(0);
+    }
+}
@@ -0,0 +1,236 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StickyListenersTest {
+
+    private static class Recorder {
+
+        final String name;
+        final List<String> log;
+
+        Recorder(@NonNull String name, @NonNull List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        void onState(String state) {
+            log.add(name + ":" + state);
+        }
+    }
+
+    private static final Listeners.BiAction<Recorder, String> ON_STATE = new Listeners.BiAction<Recorder, String>() {
+        @Override
+        public void apply(@NonNull Recorder recorder, String state) {
+            recorder.onState(state);
+        }
+    };
+
+    @Test
+    public void last_replayed_to_added() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(2);
+        final List<String> log = new ArrayList<>();
+
+        // nothing to replay
+        listeners.add(new Recorder("a", log));
+
+        listeners.dispatch(ON_STATE, "1");
+        listeners.dispatch(ON_STATE, "2");
+        listeners.dispatch(ON_STATE, null);
+        listeners.forEach(new Listeners.Action<Recorder>() {
+            @Override
+            public void apply(@NonNull Recorder recorder) {
+                recorder.onState("each");
+            }
+        });
+
+        log.clear();
+
+        listeners.add(new Recorder("b", log));
+        listeners.register(new Recorder("c", log));
+
+        // last 2 in order of delivery
+        assertEquals(Arrays.asList("b:null", "b:each", "c:null", "c:each"), log);
+        assertEquals(3, listeners.size());
+    }
+
+    @Test
+    public void added_whilst_dispatching_receives_once() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(4);
+        final List<String> log = new ArrayList<>();
+
+        listeners.dispatch(ON_STATE, "0");
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            void onState(String state) {
+                super.onState(state);
+                if ("1".equals(state)) {
+                    listeners.add(new Recorder("b", log));
+                }
+            }
+        });
+
+        listeners.dispatch(ON_STATE, "1");
+
+        // `b` receives previous one (replay) and current one (iteration) once
+        assertEquals(Arrays.asList("a:0", "a:1", "b:0", "b:1"), log);
+    }
+
+    @Test
+    public void replayed_before_added() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(1);
+        final List<String> log = new ArrayList<>();
+
+        listeners.dispatch(ON_STATE, "0");
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            void onState(String state) {
+                super.onState(state);
+                // not added yet
+                log.add(String.valueOf(listeners.size()));
+                if ("0".equals(state)) {
+                    // recorded, but replay is not affected
+                    listeners.dispatch(ON_STATE, "1");
+                }
+            }
+        });
+
+        assertEquals(Arrays.asList("a:0", "0"), log);
+
+        log.clear();
+        listeners.add(new Recorder("b", log));
+        assertEquals(Collections.singletonList("b:1"), log);
+    }
+
+    @Test
+    public void kept_if_thrown() {
+
+        // the latest one is replayed, not a previous one
+        final Listeners<Recorder> listeners = Listeners.createSticky(1);
+        final List<String> log = new ArrayList<>();
+
+        listeners.dispatch(ON_STATE, "0");
+
+        final Recorder a = new Recorder("a", log) {
+            @Override
+            void onState(String state) {
+                if ("1".equals(state)) {
+                    throw new IllegalStateException(state);
+                }
+            }
+        };
+        listeners.add(a);
+
+        try {
+            listeners.dispatch(ON_STATE, "1");
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertEquals("1", e.getMessage());
+        }
+
+        listeners.remove(a);
+
+        listeners.add(new Recorder("b", log));
+        assertEquals(Collections.singletonList("b:1"), log);
+    }
+
+    @Test
+    public void incremental_and_async_not_recorded() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(2);
+        final List<String> log = new ArrayList<>();
+
+        listeners.dispatch(ON_STATE, "0");
+
+        final Listeners.Action<Recorder> action = new Listeners.Action<Recorder>() {
+            @Override
+            public void apply(@NonNull Recorder recorder) {
+                recorder.onState("not-recorded");
+            }
+        };
+
+        listeners.forEachIncrementally(action).resume(Long.MAX_VALUE);
+        listeners.dispatchAsync(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        }, action);
+
+        listeners.add(new Recorder("a", log));
+        assertEquals(Collections.singletonList("a:0"), log);
+    }
+
+    @Test
+    public void nested_replayed_in_order_of_start() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(3);
+        final List<String> log = new ArrayList<>();
+
+        listeners.add(new Recorder("a", log) {
+            @Override
+            void onState(String state) {
+                if ("outer".equals(state)) {
+                    listeners.dispatch(ON_STATE, "inner");
+                }
+            }
+        });
+
+        // `inner` finishes first
+        listeners.dispatch(ON_STATE, "outer");
+
+        listeners.add(new Recorder("b", log));
+        assertEquals(Arrays.asList("b:outer", "b:inner"), log);
+    }
+
+    @Test
+    public void added_whilst_parallel_dispatch_not_replayed() {
+
+        final Listeners<Recorder> listeners = Listeners.createSticky(1);
+        final List<String> log = new ArrayList<>();
+
+        listeners.dispatch(ON_STATE, "0");
+        listeners.add(new Recorder("a", log));
+        log.clear();
+
+        final List<Exception> thrown = new ArrayList<>();
+
+        listeners.parallelDispatch(new Listeners.Action<Recorder>() {
+            @Override
+            public void apply(@NonNull Recorder recorder) {
+                try {
+                    listeners.add(new Recorder("b", log));
+                } catch (IllegalStateException e) {
+                    thrown.add(e);
+                }
+            }
+        });
+
+        assertEquals(1, thrown.size());
+
+        // nothing is replayed to `b`
+        assertTrue(log.isEmpty());
+        assertEquals(1, listeners.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replay_must_be_positive() {
+        Listeners.createSticky(0);
+    }
+}
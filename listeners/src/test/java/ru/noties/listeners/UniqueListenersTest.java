@@ -0,0 +1,200 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UniqueListenersTest {
+
+    @Test
+    public void duplicate_not_added() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        listeners.add("a");
+        listeners.add("b");
+        listeners.add("a");
+        listeners.addAll(Arrays.asList("c", "b", "c"));
+
+        assertEquals(3, listeners.size());
+        assertEquals(Arrays.asList("a", "b", "c"), elements(listeners));
+    }
+
+    @Test
+    public void compared_by_identity() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        final String first = new String("a");
+        final String second = new String("a");
+
+        listeners.add(first);
+        listeners.add(second);
+        assertEquals(2, listeners.size());
+
+        listeners.remove(second);
+        assertTrue(listeners.contains(first));
+        assertFalse(listeners.contains(second));
+        assertSame(first, elements(listeners).get(0));
+    }
+
+    @Test
+    public void contains() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        assertFalse(listeners.contains("a"));
+
+        listeners.add("a");
+        assertTrue(listeners.contains("a"));
+
+        listeners.remove("a");
+        assertFalse(listeners.contains("a"));
+        assertEquals(0, listeners.size());
+
+        // can be added again
+        listeners.add("a");
+        assertTrue(listeners.contains("a"));
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void contains_not_unique() {
+
+        final List<Listeners<String>> instances = Arrays.asList(
+                Listeners.<String>create(),
+                Listeners.<String>createDeferredRemoval(),
+                Listeners.<String>createWeak(),
+                Listeners.<String>createPriority(),
+                Listeners.<String>createConcurrent());
+
+        for (Listeners<String> listeners : instances) {
+            listeners.add("a");
+            listeners.add("b");
+            assertTrue(listeners.contains("b"));
+            listeners.remove("b");
+            assertFalse(listeners.contains("b"));
+            assertTrue(listeners.contains("a"));
+        }
+    }
+
+    @Test
+    public void register_returns_existing() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        final Listeners.Registration registration = listeners.register("a");
+
+        listeners.add("b");
+        assertSame(registration, listeners.register("a"));
+
+        // index is updated when removed with a registration
+        registration.remove();
+        assertFalse(listeners.contains("a"));
+        assertEquals(Arrays.asList("b"), elements(listeners));
+
+        // removed registration does not remove new addition
+        listeners.add("a");
+        registration.remove();
+        assertEquals(Arrays.asList("b", "a"), elements(listeners));
+    }
+
+    @Test
+    public void bulk_removal_updates_index() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        listeners.addAll(Arrays.asList("a", "b", "c", "d"));
+
+        assertEquals(2, listeners.removeAll(Arrays.asList("a", "c")));
+        assertFalse(listeners.contains("a"));
+        assertFalse(listeners.contains("c"));
+        assertTrue(listeners.contains("b"));
+
+        listeners.add("a");
+        assertEquals(Arrays.asList("b", "d", "a"), elements(listeners));
+
+        listeners.clear();
+        assertFalse(listeners.contains("b"));
+        listeners.add("b");
+        assertEquals(Arrays.asList("b"), elements(listeners));
+    }
+
+    @Test
+    public void remove_whilst_iterating() {
+
+        final Listeners<Integer> listeners = Listeners.createUnique();
+        final Integer[] values = new Integer[10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+            listeners.add(values[i]);
+        }
+
+        final List<Integer> visited = new ArrayList<>();
+
+        for (Integer i : listeners.begin()) {
+            visited.add(i);
+            // self and the next one
+            listeners.remove(i);
+            if (i + 1 < values.length) {
+                listeners.remove(values[i + 1]);
+            }
+        }
+
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), visited);
+        assertEquals(0, listeners.size());
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void remove_whilst_iterating_reversed() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        listeners.addAll(Arrays.asList("a", "b", "c"));
+
+        final List<String> visited = new ArrayList<>();
+
+        for (String s : listeners.beginReversed()) {
+            visited.add(s);
+            if ("c".equals(s)) {
+                listeners.remove("b");
+            }
+        }
+
+        assertEquals(Arrays.asList("c", "a"), visited);
+        assertEquals(Arrays.asList("a", "c"), elements(listeners));
+    }
+
+    @Test
+    public void add_whilst_iterating() {
+
+        final Listeners<String> listeners = Listeners.createUnique();
+        listeners.addAll(Arrays.asList("a", "b"));
+
+        final List<String> visited = new ArrayList<>();
+
+        for (String s : listeners.begin()) {
+            visited.add(s);
+            // visited ones are ignored, new one is delivered
+            listeners.add("a");
+            listeners.add("b");
+            listeners.add("c");
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c"), visited);
+        assertEquals(3, listeners.size());
+    }
+
+    @NonNull
+    private static <T> List<T> elements(@NonNull Listeners<T> listeners) {
+        final List<T> list = new ArrayList<>();
+        for (T t : listeners.begin()) {
+            list.add(t);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,334 @@
+package ru.noties.listeners;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WeakListenersTest {
+
+    @Test
+    public void collected_element_removed() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        listeners.add(object);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+
+        assertEquals(2, listeners.size());
+
+        collect(reference);
+        awaitSize(listeners, 1);
+
+        final List<Object> visited = new ArrayList<>();
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+        }
+
+        assertEquals(1, visited.size());
+        assertEquals(object, visited.get(0));
+    }
+
+    @Test
+    public void collected_element_skipped_during_iteration() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        listeners.add(object);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+
+        int iterations = 0;
+
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            // not referenced element is collected whilst iterating
+            collect(reference);
+        }
+
+        assertEquals(1, iterations);
+        assertFalse(listeners.isIterating());
+
+        awaitSize(listeners, 1);
+    }
+
+    @Test
+    public void collected_element_skipped_during_iteration_reversed() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+        final Object object = new Object();
+        listeners.add(object);
+
+        final List<Object> visited = new ArrayList<>();
+
+        for (Object o : listeners.beginReversed()) {
+            visited.add(o);
+            collect(reference);
+        }
+
+        assertEquals(1, visited.size());
+        assertEquals(object, visited.get(0));
+    }
+
+    @Test
+    public void collected_element_skipped_for_each() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        listeners.add(object);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+
+        final List<Object> visited = new ArrayList<>();
+
+        listeners.forEach(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                visited.add(o);
+                collect(reference);
+            }
+        });
+
+        assertEquals(1, visited.size());
+        assertEquals(object, visited.get(0));
+    }
+
+    @Test
+    public void each_element_removes_self() {
+
+        final List<Object> objects = new ArrayList<>();
+        final Listeners<Object> listeners = Listeners.createWeak();
+        for (int i = 0; i < 10; i++) {
+            final Object o = new Object();
+            objects.add(o);
+            listeners.add(o);
+        }
+
+        int iterations = 0;
+        for (Object o : listeners.begin()) {
+            iterations += 1;
+            listeners.remove(o);
+        }
+
+        assertEquals(10, iterations);
+        assertEquals(0, listeners.size());
+        assertEquals(10, objects.size());
+    }
+
+    @Test
+    public void each_element_removes_next() {
+
+        final Object[] objects = new Object[10];
+        final Listeners<Object> listeners = Listeners.createWeak();
+        for (int i = 0; i < 10; i++) {
+            objects[i] = new Object();
+            listeners.add(objects[i]);
+        }
+
+        final List<Object> visited = new ArrayList<>();
+
+        int i = 0;
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            listeners.remove(objects[i + 1]);
+            i += 2;
+        }
+
+        assertEquals(5, visited.size());
+        for (int p = 0; p < 10; p++) {
+            assertEquals(p % 2 == 0, visited.contains(objects[p]));
+        }
+    }
+
+    @Test
+    public void add_during_iteration() {
+
+        final List<Object> objects = new ArrayList<>();
+        final Listeners<Object> listeners = Listeners.createWeak();
+        for (int i = 0; i < 10; i++) {
+            final Object o = new Object();
+            objects.add(o);
+            listeners.add(o);
+        }
+
+        int iterations = 0;
+
+        for (Object o : listeners.begin()) {
+            if (++iterations == 20) {
+                break;
+            }
+            final Object added = new Object();
+            objects.add(added);
+            listeners.add(added);
+        }
+        listeners.end();
+
+        assertEquals(20, iterations);
+        assertFalse(listeners.isIterating());
+    }
+
+    @Test
+    public void nested_iteration() {
+
+        final List<Object> objects = new ArrayList<>();
+        final Listeners<Object> listeners = Listeners.createWeak();
+        for (int i = 0; i < 3; i++) {
+            final Object o = new Object();
+            objects.add(o);
+            listeners.add(o);
+        }
+
+        int outer = 0;
+        int inner = 0;
+
+        for (Object o : listeners.begin()) {
+            outer += 1;
+            for (Object o2 : listeners.begin()) {
+                inner += 1;
+                if (o2 != o) {
+                    listeners.remove(o2);
+                }
+            }
+        }
+
+        assertEquals(1, outer);
+        assertEquals(3, inner);
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void registration_remove() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        final Listeners.Registration registration = listeners.register(object);
+        assertEquals(1, listeners.size());
+
+        registration.remove();
+        assertEquals(0, listeners.size());
+
+        for (Object o : listeners.begin()) {
+            assertTrue(false);
+        }
+    }
+
+    @Test
+    public void registration_remove_after_collected() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        listeners.add(object);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+        listeners.add(object);
+
+        collect(reference);
+        awaitSize(listeners, 2);
+
+        listeners.remove(object);
+        assertEquals(1, listeners.size());
+    }
+
+    @Test
+    public void size_purges_whilst_iterating() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object first = new Object();
+        final Object last = new Object();
+
+        listeners.add(first);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+        listeners.add(last);
+
+        final List<Object> visited = new ArrayList<>();
+
+        for (Object o : listeners.begin()) {
+            visited.add(o);
+            if (o == first) {
+                // purged by size, iteration continues with the next present element
+                collect(reference);
+                awaitSize(listeners, 2);
+            }
+        }
+
+        assertEquals(Arrays.asList(first, last), visited);
+        assertEquals(2, listeners.size());
+    }
+
+    @Test
+    public void size_does_not_purge() {
+
+        final Listeners<Object> listeners = Listeners.createWeak();
+        final Object object = new Object();
+
+        listeners.add(object);
+        final WeakReference<Object> reference = addUnreferenced(listeners);
+
+        final List<Integer> sizes = new ArrayList<>();
+
+        // elements are processed in order on calling thread (below threshold), the first one
+        // is referenced, the second one is collected whilst parallel dispatch is in progress
+        // (modifications throw, so size must not purge)
+        listeners.parallelDispatch(new Listeners.Action<Object>() {
+            @Override
+            public void apply(@NonNull Object o) {
+                collect(reference);
+                awaitSize(listeners, 1);
+                sizes.add(listeners.size());
+            }
+        });
+
+        assertEquals(1, sizes.size());
+        assertEquals(1, (int) sizes.get(0));
+        assertTrue(listeners.contains(object));
+    }
+
+    // element is created in a separate method, so it's not referenced from a test method frame
+    @NonNull
+    private static WeakReference<Object> addUnreferenced(@NonNull Listeners<Object> listeners) {
+        final Object object = new Object();
+        listeners.add(object);
+        return new WeakReference<>(object);
+    }
+
+    private static void collect(@NonNull WeakReference<?> reference) {
+        final long end = System.currentTimeMillis() + 10000L;
+        while (reference.get() != null
+                && System.currentTimeMillis() < end) {
+            System.gc();
+            sleep();
+        }
+        assertNull(reference.get());
+    }
+
+    // reference is cleared by GC (cleared references are not counted)
+    private static void awaitSize(@NonNull Listeners<?> listeners, int size) {
+        final long end = System.currentTimeMillis() + 10000L;
+        while (listeners.size() != size
+                && System.currentTimeMillis() < end) {
+            System.gc();
+            sleep();
+        }
+        assertEquals(size, listeners.size());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10L);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}